@@ -0,0 +1,115 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Time the creation of many hashed, expiring credentials at startup:
+ * one by one with the constructor, and with SecureString.ofAll.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class BatchBenchmark {
+  /**
+   * Number of credentials.
+   */
+  @Param({ "100000" })
+  public int           count;
+
+  /**
+   * The credentials.
+   */
+  private List<String> input;
+
+
+  /**
+   * Set up the credentials.
+   */
+  @Setup
+  public void setup() {
+    this.input = new ArrayList<String>(this.count);
+    for (int i = 0; i < this.count; i++) {
+      this.input.add(Payloads.ascii(24) + i);
+    }
+  }
+
+
+  /**
+   * Create the credentials one by one.
+   *
+   * @param created Keeps the strings until they are destroyed.
+   * @return The strings.
+   */
+  @Benchmark
+  public SecureString[] constructors(Created created) {
+    final SecureString[] result = new SecureString[this.input.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = new SecureString(this.input.get(i), "UTF-8", 3600000, true);
+    }
+
+    return created.strings = result;
+  }
+
+
+  /**
+   * Create the credentials with ofAll.
+   *
+   * @param created Keeps the strings until they are destroyed.
+   * @return The strings.
+   */
+  @Benchmark
+  public SecureString[] ofAll(Created created) {
+    return created.strings = SecureString.ofAll(this.input, Charset.forName("UTF-8"), 3600000, true);
+  }
+
+
+  /**
+   * The strings created, destroyed after each run.
+   */
+  @State(Scope.Thread)
+  public static class Created {
+    /**
+     * The strings.
+     */
+    SecureString[] strings;
+
+
+    /**
+     * Destroy the strings.
+     */
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+      for (SecureString s : this.strings) {
+        s.destroy();
+      }
+
+      this.strings = null;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringCache;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openjdk.jmh.infra.ThreadParams;
+
+
+/**
+ * Lookups and evicting puts on a SecureStringCache shared by all
+ * threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class CacheBenchmark {
+  /**
+   * Number of entries.
+   */
+  private static final int        SIZE = 10000;
+
+  /**
+   * The cache.
+   */
+  private SecureStringCache<Long> cache;
+
+
+  /**
+   * Fill the cache.
+   */
+  @Setup
+  public void setup() {
+    this.cache = new SecureStringCache<Long>(SIZE, 0);
+    for (long i = 0; i < SIZE; i++) {
+      this.cache.put(i, new SecureString(Payloads.ascii(32), false));
+    }
+  }
+
+
+  /**
+   * Print the status of the cache.
+   */
+  @TearDown
+  public void tearDown() {
+    System.out.println(this.cache.status());
+  }
+
+
+  /**
+   * Look up an entry.
+   *
+   * @param keys The keys of the thread.
+   * @return The entry.
+   */
+  @Benchmark
+  public SecureString get(Keys keys) {
+    keys.i = (keys.i + 31) % SIZE;
+
+    return this.cache.get((long) keys.i);
+  }
+
+
+  /**
+   * Put a new entry, which evicts another one.
+   *
+   * @param keys The keys of the thread.
+   * @return The cache.
+   */
+  @Benchmark
+  public Object putEvicting(Keys keys) {
+    this.cache.put(keys.next++, new SecureString(Payloads.ascii(32), false));
+
+    return this.cache;
+  }
+
+
+  /**
+   * The keys of each thread.
+   */
+  @State(Scope.Thread)
+  public static class Keys {
+    /**
+     * The key looked up last.
+     */
+    int  i;
+
+    /**
+     * The next new key; the threads put disjoint keys.
+     */
+    long next;
+
+
+    /**
+     * Set up the keys.
+     *
+     * @param threads The thread parameters.
+     */
+    @Setup
+    public void setup(ThreadParams threads) {
+      this.i    = 0;
+      this.next = ((long) (threads.getThreadIndex() + 1) << 32);
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringBuilder;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.nio.charset.Charset;
+
+import java.time.Duration;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Hashing and every constructor and the builder, for payloads from 8
+ * bytes to 64 KiB and some character sets. The constructors with a
+ * lifetime register with the expiry scheduler, so these instances are
+ * destroyed right away to keep the scheduler from filling up.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class ConstructBenchmark {
+  /**
+   * Lifetime of the expiring strings, in milliseconds.
+   */
+  private static final long   LIFETIME = 60000;
+
+  /**
+   * Payload size, in chars.
+   */
+  @Param({ "8", "64", "1024", "65536" })
+  public int                  size;
+
+  /**
+   * Character set.
+   */
+  @Param({ "UTF-8", "ISO-8859-1", "UTF-16" })
+  public String               charset;
+
+  /**
+   * The payload.
+   */
+  private String              str;
+
+  /**
+   * The character set.
+   */
+  private Charset             cs;
+
+  /**
+   * Builds hashed strings.
+   */
+  private SecureStringBuilder hashed;
+
+  /**
+   * Builds plain strings.
+   */
+  private SecureStringBuilder plain;
+
+  /**
+   * Builds plain, expiring strings.
+   */
+  private SecureStringBuilder expiry;
+
+
+  /**
+   * Set up the payload and the builders.
+   */
+  @Setup
+  public void setup() {
+    this.str    = Payloads.mixed(this.size);
+    this.cs     = Charset.forName(this.charset);
+    this.hashed = SecureString.builder().charset(this.cs);
+    this.plain  = SecureString.builder().charset(this.cs).hashed(false);
+    this.expiry = SecureString.builder().charset(this.cs).hashed(false).lifetime(Duration.ofMillis(LIFETIME));
+  }
+
+
+  /**
+   * Hash into hex chars.
+   *
+   * @return The hash.
+   */
+  @Benchmark
+  public char[] hash() {
+    return SecureString.hash(this.str, this.cs);
+  }
+
+
+  /**
+   * Hash into a digest.
+   *
+   * @return The digest.
+   */
+  @Benchmark
+  public byte[] digest() {
+    return SecureString.digest(this.str, this.cs);
+  }
+
+
+  /**
+   * new SecureString(str).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStr() {
+    return new SecureString(this.str);
+  }
+
+
+  /**
+   * new SecureString(str, charset).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrCharset() {
+    return new SecureString(this.str, this.charset);
+  }
+
+
+  /**
+   * new SecureString(str, lifetime).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrLifetime() {
+    final SecureString s = new SecureString(this.str, LIFETIME);
+    s.destroy();
+
+    return s;
+  }
+
+
+  /**
+   * new SecureString(str, charset, lifetime).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrCharsetLifetime() {
+    final SecureString s = new SecureString(this.str, this.charset, LIFETIME);
+    s.destroy();
+
+    return s;
+  }
+
+
+  /**
+   * new SecureString(str, hashed).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrHashed() {
+    return new SecureString(this.str, false);
+  }
+
+
+  /**
+   * new SecureString(str, charset, hashed).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrCharsetHashed() {
+    return new SecureString(this.str, this.charset, false);
+  }
+
+
+  /**
+   * new SecureString(str, lifetime, hashed).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrLifetimeHashed() {
+    final SecureString s = new SecureString(this.str, LIFETIME, false);
+    s.destroy();
+
+    return s;
+  }
+
+
+  /**
+   * new SecureString(str, charset, lifetime, hashed).
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString newStrCharsetLifetimeHashed() {
+    final SecureString s = new SecureString(this.str, this.charset, LIFETIME, false);
+    s.destroy();
+
+    return s;
+  }
+
+
+  /**
+   * A hashed string from the builder.
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString builderCharset() {
+    return this.hashed.build(this.str);
+  }
+
+
+  /**
+   * A plain string from the builder.
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString builderCharsetHashed() {
+    return this.plain.build(this.str);
+  }
+
+
+  /**
+   * A plain, expiring string from the builder.
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString builderCharsetLifetimeHashed() {
+    final SecureString s = this.expiry.build(this.str);
+    s.destroy();
+
+    return s;
+  }
+}
@@ -0,0 +1,169 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.nio.charset.Charset;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compare 64 byte digests in constant time against the early exit loop
+ * equals used to run, for equal digests and for digests which differ
+ * in the first byte; and check a password against a hashed string,
+ * with equalsPlain and by way of the hex form. Run with -prof gc for
+ * the heap each check allocates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class EqualsBenchmark {
+  /**
+   * The character set.
+   */
+  private Charset      charset;
+
+  /**
+   * The hashed password.
+   */
+  private SecureString login;
+
+  /**
+   * The password.
+   */
+  private String       password;
+
+
+  /**
+   * Set up the password.
+   */
+  @Setup
+  public void setup() {
+    this.charset  = Charset.forName("UTF-8");
+    this.password = Payloads.ascii(16);
+    this.login    = new SecureString(this.password);
+  }
+
+
+  /**
+   * Compare with an early exit loop.
+   *
+   * @param digests The digests.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean earlyExit(Digests digests) {
+    final byte[] stored = digests.stored;
+    final byte[] with   = digests.with;
+    if (stored.length != with.length) {
+      return false;
+    }
+
+    for (int i = 0; i < stored.length; i++) {
+      if (stored[i] != with[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Compare in constant time.
+   *
+   * @param digests The digests.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean constantTime(Digests digests) {
+    return digests.s.equalsConstantTime(digests.with);
+  }
+
+
+  /**
+   * Check the password by way of the hex form.
+   *
+   * @return The result.
+   */
+  @Benchmark
+  public boolean verifyHex() {
+    final byte[]       hash      = SecureString.digest(this.password, this.charset);
+    final StringBuffer hexString = new StringBuffer();
+    for (int i = 0; i < hash.length; i++) {
+      hexString.append(Integer.toHexString(0x100 | (0xFF & hash[i])).substring(1));
+    }
+
+    return this.login.equals(hexString.toString());
+  }
+
+
+  /**
+   * Check the password with equalsPlain.
+   *
+   * @return The result.
+   */
+  @Benchmark
+  public boolean verifyEqualsPlain() {
+    return this.login.equalsPlain(this.password);
+  }
+
+
+  /**
+   * The digests to compare.
+   */
+  @State(Scope.Benchmark)
+  public static class Digests {
+    /**
+     * Whether the digests are equal, or differ in the first byte.
+     */
+    @Param({ "equal", "firstByteDiffers" })
+    public String input;
+
+    /**
+     * A hashed string.
+     */
+    SecureString  s;
+
+    /**
+     * The digest of the string.
+     */
+    byte[]        stored;
+
+    /**
+     * The digest to compare with.
+     */
+    byte[]        with;
+
+
+    /**
+     * Set up the digests.
+     */
+    @Setup
+    public void setup() {
+      this.s      = new SecureString(Payloads.ascii(32));
+      this.stored = SecureString.digest(Payloads.ascii(32), Charset.forName("UTF-8"));
+      this.with   = this.stored.clone();
+
+      if (!"equal".equals(this.input)) {
+        this.with[0] ^= 1;
+      }
+    }
+  }
+}
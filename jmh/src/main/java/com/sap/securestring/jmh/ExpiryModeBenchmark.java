@@ -0,0 +1,103 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.ExpiryMode;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Time the creation of many timed credentials in each expiry mode; see
+ * BenchExpiryModes, which also records the heap they use and the number
+ * of threads. With platform threads, THREAD mode needs a process limit
+ * which allows that many threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExpiryModeBenchmark {
+  /**
+   * The expiry mode.
+   */
+  @Param({ "SHARED", "THREAD", "LAZY" })
+  public String          mode;
+
+  /**
+   * Number of credentials.
+   */
+  @Param({ "100000" })
+  public int             count;
+
+  /**
+   * The credentials, until they are destroyed.
+   */
+  private SecureString[] live;
+
+
+  /**
+   * Set the expiry mode.
+   */
+  @Setup
+  public void setup() {
+    SecureString.setDefaultExpiryMode(ExpiryMode.valueOf(this.mode));
+  }
+
+
+  /**
+   * Set the expiry mode back.
+   */
+  @TearDown
+  public void tearDown() {
+    SecureString.setDefaultExpiryMode(ExpiryMode.SHARED);
+  }
+
+
+  /**
+   * Create the credentials.
+   *
+   * @return The credentials.
+   */
+  @Benchmark
+  public SecureString[] create() {
+    this.live = new SecureString[this.count];
+    for (int i = 0; i < this.count; i++) {
+      this.live[i] = new SecureString(Payloads.ascii(24), 3600000, false);
+    }
+
+    return this.live;
+  }
+
+
+  /**
+   * Destroy the credentials, and drop the destroyed LAZY ones from the
+   * sweep queue.
+   */
+  @TearDown(Level.Invocation)
+  public void destroy() {
+    for (SecureString s : this.live) {
+      s.destroy();
+    }
+
+    SecureString.sweepExpired();
+
+    this.live = null;
+  }
+}
@@ -0,0 +1,136 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureHashAlgorithm;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.nio.charset.Charset;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compare SecureString.digest, which uses a digest engine per thread,
+ * with looking up a MessageDigest and encoding with String.getBytes on
+ * every call, as hash used to do; then compare the built-in hash
+ * algorithms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class HashBenchmark {
+  /**
+   * Payload size, in chars.
+   */
+  @Param({ "16", "1024" })
+  public int      size;
+
+  /**
+   * The character set.
+   */
+  private Charset charset;
+
+  /**
+   * The payload.
+   */
+  private String  str;
+
+
+  /**
+   * Set up the payload.
+   */
+  @Setup
+  public void setup() {
+    this.charset = Charset.forName("UTF-8");
+    this.str     = Payloads.ascii(this.size);
+  }
+
+
+  /**
+   * Look up a MessageDigest and encode with String.getBytes, as hash
+   * used to do. Always SHA-512.
+   *
+   * @return The digest.
+   * @throws NoSuchAlgorithmException If SHA-512 is not available.
+   */
+  @Benchmark
+  public byte[] legacy() throws NoSuchAlgorithmException {
+    return MessageDigest.getInstance("SHA-512").digest(this.str.getBytes(this.charset));
+  }
+
+
+  /**
+   * Hash with the digest engine of the thread. Always SHA-512.
+   *
+   * @return The digest.
+   */
+  @Benchmark
+  public byte[] engine() {
+    return SecureString.digest(this.str, this.charset);
+  }
+
+
+  /**
+   * Hash with one of the built-in algorithms.
+   *
+   * @param algorithm The algorithm.
+   * @return The digest.
+   */
+  @Benchmark
+  public byte[] algorithm(Algorithm algorithm) {
+    return SecureString.digest(this.str, this.charset, algorithm.hash);
+  }
+
+
+  /**
+   * The algorithm to hash with.
+   */
+  @State(Scope.Benchmark)
+  public static class Algorithm {
+    /**
+     * The name: SHA-512, SHA-256 or PBKDF2.
+     */
+    @Param({ "SHA-512", "SHA-256", "PBKDF2" })
+    public String       name;
+
+    /**
+     * The algorithm.
+     */
+    SecureHashAlgorithm hash;
+
+
+    /**
+     * Set up the algorithm.
+     *
+     * @throws Exception If the salt cannot be encoded.
+     */
+    @Setup
+    public void setup() throws Exception {
+      if ("PBKDF2".equals(this.name)) {
+        this.hash = SecureHashAlgorithm.pbkdf2(10000, "salt".getBytes("UTF-8"));
+      } else if ("SHA-256".equals(this.name)) {
+        this.hash = SecureHashAlgorithm.SHA_256;
+      } else {
+        this.hash = SecureHashAlgorithm.SHA_512;
+      }
+    }
+  }
+}
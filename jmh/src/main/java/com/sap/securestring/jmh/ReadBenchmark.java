@@ -0,0 +1,204 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.ByteBufferConsumer;
+import com.sap.securestring.CharConsumer;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Reads of one string shared by all threads, as a request pool does,
+ * for hashed and plain storage, payloads from 8 bytes to 64 KiB and
+ * some character sets. Also constructs and destroys strings of the
+ * same kind.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class ReadBenchmark {
+  /**
+   * Payload size, in chars.
+   */
+  @Param({ "8", "64", "1024", "65536" })
+  public int           size;
+
+  /**
+   * Character set.
+   */
+  @Param({ "UTF-8", "ISO-8859-1", "UTF-16" })
+  public String        charset;
+
+  /**
+   * Whether the string is hashed.
+   */
+  @Param({ "true", "false" })
+  public boolean       hashed;
+
+  /**
+   * The payload.
+   */
+  private String       str;
+
+  /**
+   * The shared string.
+   */
+  private SecureString s;
+
+  /**
+   * What the shared string equals.
+   */
+  private String       value;
+
+
+  /**
+   * Set up the shared string.
+   */
+  @Setup
+  public void setup() {
+    this.str   = Payloads.mixed(this.size);
+    this.s     = new SecureString(this.str, this.charset, this.hashed);
+    this.value = this.s.toString();
+  }
+
+
+  /**
+   * Destroy the shared string.
+   */
+  @TearDown
+  public void tearDown() {
+    this.s.destroy();
+  }
+
+
+  /**
+   * Compare with a String.
+   *
+   * @return The result.
+   */
+  @Benchmark
+  public boolean equalsString() {
+    return this.s.equals(this.value);
+  }
+
+
+  /**
+   * Copy into a String.
+   *
+   * @return The copy.
+   */
+  @Benchmark
+  public String toStringCopy() {
+    return this.s.toString();
+  }
+
+
+  /**
+   * Borrow the chars.
+   *
+   * @param consumers The consumers of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean withChars(Consumers consumers) {
+    return this.s.withChars(consumers.chars);
+  }
+
+
+  /**
+   * Borrow the bytes.
+   *
+   * @param consumers The consumers of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean withBytes(Consumers consumers) {
+    return this.s.withBytes(consumers.bytes);
+  }
+
+
+  /**
+   * Get the status.
+   *
+   * @return The status.
+   */
+  @Benchmark
+  public String status() {
+    return this.s.status();
+  }
+
+
+  /**
+   * Construct a string of the same kind, and destroy it.
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString constructAndDestroy() {
+    final SecureString d = new SecureString(this.str, this.charset, this.hashed);
+    d.destroy();
+
+    return d;
+  }
+
+
+  /**
+   * Consumers for withChars and withBytes, one pair per thread, which
+   * hand the last char or byte to a blackhole.
+   */
+  @State(Scope.Thread)
+  public static class Consumers {
+    /**
+     * Consumes chars.
+     */
+    CharConsumer<RuntimeException>       chars;
+
+    /**
+     * Consumes bytes.
+     */
+    ByteBufferConsumer<RuntimeException> bytes;
+
+
+    /**
+     * Set up the consumers.
+     *
+     * @param bh The blackhole.
+     */
+    @Setup
+    public void setup(final Blackhole bh) {
+      this.chars = new CharConsumer<RuntimeException>() {
+        public void accept(CharBuffer chars) {
+          bh.consume(chars.get(chars.limit() - 1));
+        }
+      };
+
+      this.bytes = new ByteBufferConsumer<RuntimeException>() {
+        public void accept(ByteBuffer bytes) {
+          bh.consume(bytes.get(bytes.limit() - 1));
+        }
+      };
+    }
+  }
+}
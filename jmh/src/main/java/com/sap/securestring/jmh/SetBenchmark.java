@@ -0,0 +1,288 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureHashAlgorithm;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringSet;
+
+import java.nio.charset.Charset;
+
+import java.util.Random;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Look up API keys in a SecureStringSet, by hash and by key, for keys
+ * which are in the set and keys which are not; with a linear scan of
+ * SecureString.equals over a thousand keys for comparison; and keys
+ * which are not in a revocation list, with and without a filter. See
+ * BenchSet, which also records the heap per key and the rate of false
+ * positives.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class SetBenchmark {
+  /**
+   * Number of keys looked up, in turn.
+   */
+  private static final int     PROBES  = 1 << 16;
+
+  /**
+   * The character set.
+   */
+  private static final Charset CHARSET = Charset.forName("UTF-8");
+
+
+  /**
+   * Look up the digest of a key in the set.
+   *
+   * @param keys The set.
+   * @param probe The probe of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean containsDigestHit(Keys keys, Probe probe) {
+    return keys.set.containsDigest(keys.hits[probe.next()]);
+  }
+
+
+  /**
+   * Look up the digest of a key which is not in the set.
+   *
+   * @param keys The set.
+   * @param probe The probe of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean containsDigestMiss(Keys keys, Probe probe) {
+    return keys.set.containsDigest(keys.misses[probe.next()]);
+  }
+
+
+  /**
+   * Look up a key in the set, hashing it first.
+   *
+   * @param keys The set.
+   * @param probe The probe of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean contains(Keys keys, Probe probe) {
+    return keys.set.contains(keys.keys[probe.next()]);
+  }
+
+
+  /**
+   * Look up a key which is not revoked.
+   *
+   * @param revoked The revocation list.
+   * @param probe The probe of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean filterContainsDigestMiss(Revoked revoked, Probe probe) {
+    return revoked.set.containsDigest(revoked.misses[probe.next()]);
+  }
+
+
+  /**
+   * Find the last of a thousand keys with SecureString.equals.
+   *
+   * @param scan The keys.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean scanEquals(Scan scan) {
+    for (SecureString s : scan.scanned) {
+      if (s.equals(scan.key)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  /**
+   * A set of API keys, and keys to look up.
+   */
+  @State(Scope.Benchmark)
+  public static class Keys {
+    /**
+     * The hash algorithm.
+     */
+    @Param({ "SHA-256", "SHA-512" })
+    public String   algorithm;
+
+    /**
+     * Number of keys.
+     */
+    @Param({ "1000000" })
+    public int      count;
+
+    /**
+     * The set.
+     */
+    SecureStringSet set;
+
+    /**
+     * Keys in the set.
+     */
+    String[]        keys;
+
+    /**
+     * Digests of the keys in the set.
+     */
+    byte[][]        hits;
+
+    /**
+     * Digests of keys which are not in the set.
+     */
+    byte[][]        misses;
+
+
+    /**
+     * Fill the set, and pick the keys.
+     *
+     * @throws Exception If the algorithm is not available.
+     */
+    @Setup
+    public void setup() throws Exception {
+      final SecureHashAlgorithm hash   = "SHA-256".equals(this.algorithm) ? SecureHashAlgorithm.SHA_256 : SecureHashAlgorithm.SHA_512;
+      final Random              random = new Random(42);
+
+      this.set = new SecureStringSet(hash, CHARSET);
+      for (int i = 0; i < this.count; i++) {
+        this.set.addDigest(SecureString.digest("key" + i, CHARSET, hash));
+      }
+
+      this.keys   = new String[PROBES];
+      this.hits   = new byte[PROBES][];
+      this.misses = new byte[PROBES][];
+      for (int i = 0; i < PROBES; i++) {
+        this.keys[i]   = "key" + random.nextInt(this.count);
+        this.hits[i]   = SecureString.digest(this.keys[i], CHARSET, hash);
+        this.misses[i] = SecureString.digest("other" + i, CHARSET, hash);
+      }
+    }
+  }
+
+
+  /**
+   * A revocation list, with or without a filter, and keys which are
+   * not in it.
+   */
+  @State(Scope.Benchmark)
+  public static class Revoked {
+    /**
+     * Number of revoked keys.
+     */
+    @Param({ "1000", "1000000" })
+    public int      revoked;
+
+    /**
+     * Bits of the filter per key; 0 for none.
+     */
+    @Param({ "0", "10" })
+    public int      filterBits;
+
+    /**
+     * The revocation list.
+     */
+    SecureStringSet set;
+
+    /**
+     * Digests of keys which are not revoked.
+     */
+    byte[][]        misses;
+
+
+    /**
+     * Fill the list, and pick the keys.
+     *
+     * @throws Exception If SHA-512 is not available.
+     */
+    @Setup
+    public void setup() throws Exception {
+      final SecureHashAlgorithm hash = SecureHashAlgorithm.SHA_512;
+
+      this.set = new SecureStringSet(hash, CHARSET, this.filterBits);
+      for (int i = 0; i < this.revoked; i++) {
+        this.set.addDigest(SecureString.digest("key" + i, CHARSET, hash));
+      }
+
+      this.misses = new byte[PROBES][];
+      for (int i = 0; i < PROBES; i++) {
+        this.misses[i] = SecureString.digest("valid" + i, CHARSET, hash);
+      }
+    }
+  }
+
+
+  /**
+   * A thousand keys to scan.
+   */
+  @State(Scope.Benchmark)
+  public static class Scan {
+    /**
+     * The keys.
+     */
+    SecureString[] scanned;
+
+    /**
+     * The last key, hashed.
+     */
+    String         key;
+
+
+    /**
+     * Set up the keys.
+     */
+    @Setup
+    public void setup() {
+      this.scanned = new SecureString[1000];
+      for (int i = 0; i < this.scanned.length; i++) {
+        this.scanned[i] = new SecureString("key" + i);
+      }
+
+      this.key = new SecureString("key" + (this.scanned.length - 1)).toString();
+    }
+  }
+
+
+  /**
+   * Which key each thread looks up next.
+   */
+  @State(Scope.Thread)
+  public static class Probe {
+    /**
+     * The index of the key looked up last.
+     */
+    int i;
+
+
+    /**
+     * Get the index of the next key.
+     *
+     * @return The index.
+     */
+    int next() {
+      return this.i = (this.i + 1) & (PROBES - 1);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureStringSlab;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compare secrets in a SecureStringSlab filled with secrets of 16 to
+ * 128 chars; see BenchSlab, which also records the heap per secret.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class SlabBenchmark {
+  /**
+   * Number of secrets.
+   */
+  @Param({ "1000000" })
+  public int               count;
+
+  /**
+   * The secrets, in turn.
+   */
+  private String[]         secrets;
+
+  /**
+   * The slab.
+   */
+  private SecureStringSlab slab;
+
+  /**
+   * Handles of the first secrets.
+   */
+  private long[]           handles;
+
+
+  /**
+   * Fill the slab.
+   */
+  @Setup
+  public void setup() {
+    this.secrets = new String[113];
+    for (int i = 0; i < this.secrets.length; i++) {
+      this.secrets[i] = Payloads.ascii(16 + i);
+    }
+
+    this.slab    = new SecureStringSlab();
+    this.handles = new long[1024];
+    for (int i = 0; i < this.count; i++) {
+      final long handle = this.slab.put(this.secrets[i % this.secrets.length]);
+      if (i < this.handles.length) {
+        this.handles[i] = handle;
+      }
+    }
+  }
+
+
+  /**
+   * Compare one of the first secrets.
+   *
+   * @param probe The probe of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean equalsString(Probe probe) {
+    final int i = probe.i = (probe.i + 1) & 1023;
+
+    return this.slab.equals(this.handles[i], this.secrets[i % this.secrets.length]);
+  }
+
+
+  /**
+   * Which secret each thread compares next.
+   */
+  @State(Scope.Thread)
+  public static class Probe {
+    /**
+     * The index of the secret compared last.
+     */
+    int i;
+  }
+}
@@ -0,0 +1,189 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.CharConsumer;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringBuilder;
+import com.sap.securestring.StorageMode;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.nio.CharBuffer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Construction and reads of plain strings in each storage mode, of
+ * encrypted ones with the decrypted cache on, and of hashed ones. The
+ * time the decrypted cache is kept is set with the parameter
+ * encryptedCache, in milliseconds.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class StorageModeBenchmark {
+  /**
+   * The storage mode, or ENCRYPTED_CACHED or HASHED.
+   */
+  @Param({ "HEAP", "OFF_HEAP", "SLAB", "ENCRYPTED", "ENCRYPTED_CACHED", "HASHED" })
+  public String               mode;
+
+  /**
+   * Payload size, in chars.
+   */
+  @Param({ "32", "1024" })
+  public int                  size;
+
+  /**
+   * Time the decrypted cache is kept for ENCRYPTED_CACHED, in
+   * milliseconds.
+   */
+  @Param({ "5" })
+  public long                 encryptedCache;
+
+  /**
+   * The payload.
+   */
+  private String              str;
+
+  /**
+   * Builds the strings.
+   */
+  private SecureStringBuilder builder;
+
+  /**
+   * The string read.
+   */
+  private SecureString        s;
+
+  /**
+   * What the string equals.
+   */
+  private String              value;
+
+
+  /**
+   * Set up the builder and the string read.
+   */
+  @Setup
+  public void setup() {
+    this.str = Payloads.mixed(this.size);
+
+    if ("HASHED".equals(this.mode)) {
+      this.builder = SecureString.builder();
+    } else if ("ENCRYPTED_CACHED".equals(this.mode)) {
+      this.builder = SecureString.builder().hashed(false).storageMode(StorageMode.ENCRYPTED);
+    } else {
+      this.builder = SecureString.builder().hashed(false).storageMode(StorageMode.valueOf(this.mode));
+    }
+
+    SecureString.setEncryptedCacheTime("ENCRYPTED_CACHED".equals(this.mode) ? this.encryptedCache : 0);
+
+    this.s     = this.builder.build(this.str);
+    this.value = this.s.toString();
+  }
+
+
+  /**
+   * Destroy the string read, and turn the decrypted cache off.
+   */
+  @TearDown
+  public void tearDown() {
+    this.s.destroy();
+
+    SecureString.setEncryptedCacheTime(0);
+  }
+
+
+  /**
+   * Construct a string, and destroy it.
+   *
+   * @return The string.
+   */
+  @Benchmark
+  public SecureString constructAndDestroy() {
+    final SecureString d = this.builder.build(this.str);
+    d.destroy();
+
+    return d;
+  }
+
+
+  /**
+   * Compare with a String.
+   *
+   * @return The result.
+   */
+  @Benchmark
+  public boolean equalsString() {
+    return this.s.equals(this.value);
+  }
+
+
+  /**
+   * Copy into a String.
+   *
+   * @return The copy.
+   */
+  @Benchmark
+  public String toStringCopy() {
+    return this.s.toString();
+  }
+
+
+  /**
+   * Borrow the chars.
+   *
+   * @param consumer The consumer of the thread.
+   * @return The result.
+   */
+  @Benchmark
+  public boolean withChars(Consumer consumer) {
+    return this.s.withChars(consumer.chars);
+  }
+
+
+  /**
+   * A consumer for withChars per thread, which hands the last char to
+   * a blackhole.
+   */
+  @State(Scope.Thread)
+  public static class Consumer {
+    /**
+     * Consumes chars.
+     */
+    CharConsumer<RuntimeException> chars;
+
+
+    /**
+     * Set up the consumer.
+     *
+     * @param bh The blackhole.
+     */
+    @Setup
+    public void setup(final Blackhole bh) {
+      this.chars = new CharConsumer<RuntimeException>() {
+        public void accept(CharBuffer chars) {
+          bh.consume(chars.get(chars.limit() - 1));
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package com.sap.securestring.jmh;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringStore;
+import com.sap.securestring.benchmarks.Payloads;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Rotate credentials in a secrets file, and compare reloading them with
+ * SecureStringStore against reading the whole file again with a
+ * BufferedReader, as applications used to do; each rotation changes 1%
+ * of them. Run with -prof gc for the heap a rotation allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 3, time = 1)
+public class StoreBenchmark {
+  /**
+   * Number of credentials.
+   */
+  @Param({ "10000" })
+  public int                        count;
+
+  /**
+   * Whether to keep the credentials hashed.
+   */
+  @Param({ "true", "false" })
+  public boolean                    hashed;
+
+  /**
+   * The secrets file.
+   */
+  private Path                      file;
+
+  /**
+   * The store.
+   */
+  private SecureStringStore         store;
+
+  /**
+   * The credentials, as read with a BufferedReader.
+   */
+  private Map<String, SecureString> legacy;
+
+  /**
+   * The rotation.
+   */
+  private int                       rotation;
+
+
+  /**
+   * Write the secrets file, and load it both ways.
+   *
+   * @throws IOException If the file cannot be written or read.
+   */
+  @Setup
+  public void setup() throws IOException {
+    this.file     = Files.createTempFile("securestring", ".secrets");
+    this.rotation = 0;
+
+    write();
+
+    this.store  = SecureStringStore.load(this.file, Charset.forName("UTF-8"), this.hashed);
+    this.legacy = legacy();
+  }
+
+
+  /**
+   * Destroy the credentials, and delete the file.
+   *
+   * @throws IOException If the file cannot be deleted.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    this.store.destroy();
+    for (SecureString s : this.legacy.values()) {
+      s.destroy();
+    }
+
+    Files.delete(this.file);
+  }
+
+
+  /**
+   * Rotate the credentials.
+   *
+   * @throws IOException If the file cannot be written.
+   */
+  @Setup(Level.Invocation)
+  public void rotate() throws IOException {
+    this.rotation++;
+
+    write();
+  }
+
+
+  /**
+   * Reload with the store.
+   *
+   * @return The number of records touched.
+   * @throws IOException If the file cannot be read.
+   */
+  @Benchmark
+  public int store() throws IOException {
+    return this.store.reload();
+  }
+
+
+  /**
+   * Read the whole file again.
+   *
+   * @return The credentials.
+   * @throws IOException If the file cannot be read.
+   */
+  @Benchmark
+  public Map<String, SecureString> bufferedReader() throws IOException {
+    for (SecureString s : this.legacy.values()) {
+      s.destroy();
+    }
+
+    return this.legacy = legacy();
+  }
+
+
+  /**
+   * Write the secrets file for the rotation: each rotation changes
+   * every hundredth credential, another one each time.
+   *
+   * @throws IOException If the file cannot be written.
+   */
+  private void write() throws IOException {
+    final String        base = Payloads.ascii(32);
+    final StringBuilder sb   = new StringBuilder();
+    for (int i = 0; i < this.count; i++) {
+      sb.append("credential").append(i).append('=').append(base).append(i).append('.');
+      sb.append(Math.max(this.rotation - Math.floorMod(this.rotation - i, 100), 0)).append('\n');
+    }
+
+    Files.write(this.file, sb.toString().getBytes("UTF-8"));
+  }
+
+
+  /**
+   * Load all credentials with a BufferedReader.
+   *
+   * @return The credentials, by name.
+   * @throws IOException If the file cannot be read.
+   */
+  private Map<String, SecureString> legacy() throws IOException {
+    final Map<String, SecureString> result = new HashMap<String, SecureString>();
+    final BufferedReader            reader = Files.newBufferedReader(this.file);
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        final int eq = line.indexOf('=');
+        if ((eq > 0) && !line.startsWith("#")) {
+          result.put(line.substring(0, eq).trim(), new SecureString(line.substring(eq + 1), this.hashed));
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    return result;
+  }
+}
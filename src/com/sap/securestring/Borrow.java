@@ -0,0 +1,309 @@
+package com.sap.securestring;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import java.util.Arrays;
+
+
+/**
+ * A per thread scratch buffer for lending the content of a SecureString
+ * to a consumer; see SecureString.withChars and withBytes.
+ *
+ * The content is copied into the scratch buffer, and the consumer gets
+ * a read-only view of it, created for that borrow. Once the consumer
+ * returns, the used part is wiped, and the view is emptied; so a view
+ * which was kept anyway shows nothing, and the next borrow does not
+ * show through it. The view still shares the scratch buffer, though,
+ * so one whose limit is reset, or a duplicate taken while it was lent
+ * out, can see later borrows of the thread; views must not be kept.
+ * Bytes are lent out in direct memory, where the
+ * garbage collector does not copy them around; chars are encoded on
+ * the heap first, though, as encoders are much quicker between arrays.
+ * The buffers only grow, and are
+ * reused, so a borrow allocates nothing but its view once they are
+ * large enough; only a borrow within another one, on the same thread,
+ * gets buffers of its own.
+ */
+final class Borrow {
+  /**
+   * Initial size of the buffers, in chars and bytes.
+   */
+  private static final int                SIZE    = 256;
+
+  /**
+   * The scratch buffer of each thread.
+   */
+  private static final ThreadLocal<Borrow> BORROWS = new ThreadLocal<Borrow>();
+
+  /**
+   * Chars lent out.
+   */
+  private char[]                          chars   = new char[SIZE];
+
+  /**
+   * The view on the chars lent out, if any.
+   */
+  private CharBuffer                      charView;
+
+  /**
+   * The chars, to be encoded.
+   */
+  private CharBuffer                      charIn;
+
+  /**
+   * Encoded chars.
+   */
+  private byte[]                          encoded = new byte[SIZE];
+
+  /**
+   * Buffer on the encoded chars.
+   */
+  private ByteBuffer                      out     = ByteBuffer.wrap(this.encoded);
+
+  /**
+   * Bytes lent out, in direct memory.
+   */
+  private ByteBuffer                      bytes   = ByteBuffer.allocateDirect(SIZE);
+
+  /**
+   * The view on the bytes lent out, if any.
+   */
+  private ByteBuffer                      byteView;
+
+  /**
+   * Encoder for the last character set used.
+   */
+  private CharsetEncoder                  encoder = null;
+
+  /**
+   * Number of chars used.
+   */
+  private int                             charsUsed;
+
+  /**
+   * Number of bytes used, encoded or lent out.
+   */
+  private int                             bytesUsed;
+
+  /**
+   * Whether the buffers are lent out.
+   */
+  private boolean                         busy;
+
+
+  /**
+   * Create a scratch buffer.
+   */
+  private Borrow() {
+    this.charIn = CharBuffer.wrap(this.chars);
+  }
+
+
+  /**
+   * Get the scratch buffer of the current thread, or a new one if it
+   * is lent out already. It must be given back with release.
+   *
+   * @return The scratch buffer.
+   */
+  static Borrow get() {
+    Borrow borrow = BORROWS.get();
+    if (borrow == null) {
+      borrow = new Borrow();
+      BORROWS.set(borrow);
+    } else if (borrow.busy) {
+      borrow = new Borrow();
+    }
+
+    borrow.busy = true;
+
+    return borrow;
+  }
+
+
+  /**
+   * Get an array of at least the given number of chars, to be filled.
+   *
+   * @param length The number of chars.
+   * @return The array.
+   */
+  char[] chars(int length) {
+    if (length > this.chars.length) {
+      Arrays.fill(this.chars, 0, this.charsUsed, '\0');
+
+      this.chars  = new char[Math.max(length, this.chars.length * 2)];
+      this.charIn = CharBuffer.wrap(this.chars);
+    }
+
+    this.charsUsed = Math.max(this.charsUsed, length);
+
+    return this.chars;
+  }
+
+
+  /**
+   * Get a new view on the first chars.
+   *
+   * @param length The number of chars.
+   * @return The view.
+   */
+  CharBuffer charView(int length) {
+    this.charView = this.charIn.asReadOnlyBuffer();
+    this.charView.clear();
+    this.charView.limit(length);
+
+    return this.charView;
+  }
+
+
+  /**
+   * Get a new view on some bytes, copied into the scratch buffer.
+   *
+   * @param src The bytes.
+   * @return The view.
+   */
+  ByteBuffer byteView(byte[] src) {
+    bytes(src.length);
+
+    this.bytes.clear();
+    this.bytes.put(src);
+    this.bytesUsed = Math.max(this.bytesUsed, src.length);
+
+    return view(src.length);
+  }
+
+
+  /**
+   * Get a new view on the first chars, encoded with a character set.
+   * Malformed and unmappable chars are replaced, just like
+   * String.getBytes does.
+   *
+   * @param length The number of chars.
+   * @param charset The character set.
+   * @return The view.
+   */
+  ByteBuffer byteView(int length, Charset charset) {
+    if ((this.encoder == null) || !this.encoder.charset().equals(charset)) {
+      this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    encoded((int) Math.ceil(length * (double) this.encoder.maxBytesPerChar()) + 16);
+
+    while (true) {
+      this.charIn.clear();
+      this.charIn.limit(length);
+      this.encoder.reset();
+      this.out.clear();
+
+      CoderResult result = this.encoder.encode(this.charIn, this.out, true);
+      if (!result.isOverflow()) {
+        result = this.encoder.flush(this.out);
+      }
+
+      this.bytesUsed = Math.max(this.bytesUsed, this.out.position());
+      if (!result.isOverflow()) {
+        break;
+      }
+
+      encoded(this.encoded.length * 2);
+    }
+
+    final int n = this.out.position();
+    bytes(n);
+
+    this.bytes.clear();
+    this.bytes.put(this.encoded, 0, n);
+
+    return view(n);
+  }
+
+
+  /**
+   * Create the view on the first bytes.
+   *
+   * @param length The number of bytes.
+   * @return The view.
+   */
+  private ByteBuffer view(int length) {
+    this.byteView = this.bytes.asReadOnlyBuffer();
+    this.byteView.clear();
+    this.byteView.limit(length);
+
+    return this.byteView;
+  }
+
+
+  /**
+   * Give the scratch buffer back: wipe what was used, and empty the
+   * views.
+   */
+  void release() {
+    Arrays.fill(this.chars, 0, this.charsUsed, '\0');
+    Arrays.fill(this.encoded, 0, Math.min(this.bytesUsed, this.encoded.length), (byte) 0);
+
+    /*
+     * The encoded chars are all zeros now, so they wipe the direct
+     * bytes with bulk copies, which is quicker than putting longs.
+     */
+    final int used = Math.min(this.bytesUsed, this.bytes.capacity());
+    this.bytes.clear();
+    while (this.bytes.position() < used) {
+      this.bytes.put(this.encoded, 0, Math.min(used - this.bytes.position(), this.encoded.length));
+    }
+
+    if (this.charView != null) {
+      this.charView.limit(0);
+      this.charView = null;
+    }
+
+    if (this.byteView != null) {
+      this.byteView.limit(0);
+      this.byteView = null;
+    }
+
+    this.charsUsed = 0;
+    this.bytesUsed = 0;
+    this.busy      = false;
+  }
+
+
+  /**
+   * Make sure the encoded chars take at least the given number of
+   * bytes. A smaller array is wiped before it is dropped.
+   *
+   * @param length The number of bytes.
+   */
+  private void encoded(int length) {
+    if (length > this.encoded.length) {
+      Arrays.fill(this.encoded, 0, Math.min(this.bytesUsed, this.encoded.length), (byte) 0);
+
+      this.encoded = new byte[Math.max(length, this.encoded.length * 2)];
+      this.out     = ByteBuffer.wrap(this.encoded);
+    }
+  }
+
+
+  /**
+   * Make sure the bytes take at least the given number. A smaller
+   * buffer is wiped before it is dropped.
+   *
+   * @param length The number of bytes.
+   */
+  private void bytes(int length) {
+    if (length > this.bytes.capacity()) {
+      final ByteBuffer old = this.bytes;
+
+      this.bytes = ByteBuffer.allocateDirect(Math.max(length, old.capacity() * 2));
+
+      final int used = Math.min(this.bytesUsed, old.capacity());
+      for (int i = 0; i < used; i++) {
+        old.put(i, (byte) 0);
+      }
+    }
+  }
+}
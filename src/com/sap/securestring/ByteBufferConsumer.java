@@ -0,0 +1,21 @@
+package com.sap.securestring;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Borrows the bytes of a SecureString; see SecureString.withBytes.
+ *
+ * @param <E> The exception the consumer may throw.
+ */
+@FunctionalInterface
+public interface ByteBufferConsumer<E extends Exception> {
+  /**
+   * Use the bytes. The buffer is read-only, and only valid until this
+   * method returns; it must not be kept.
+   *
+   * @param bytes The bytes, from position to limit.
+   * @throws E If the consumer fails.
+   */
+  public void accept(ByteBuffer bytes) throws E;
+}
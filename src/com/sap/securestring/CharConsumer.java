@@ -0,0 +1,21 @@
+package com.sap.securestring;
+
+import java.nio.CharBuffer;
+
+
+/**
+ * Borrows the chars of a SecureString; see SecureString.withChars.
+ *
+ * @param <E> The exception the consumer may throw.
+ */
+@FunctionalInterface
+public interface CharConsumer<E extends Exception> {
+  /**
+   * Use the chars. The buffer is read-only, and only valid until this
+   * method returns; it must not be kept.
+   *
+   * @param chars The chars, from position to limit.
+   * @throws E If the consumer fails.
+   */
+  public void accept(CharBuffer chars) throws E;
+}
@@ -0,0 +1,149 @@
+package com.sap.securestring;
+
+/**
+ * Comparisons which take the same time wherever the inputs differ.
+ *
+ * None of the loops exit early or branch on the data; the differences
+ * are folded into one int with XOR and OR. Loops of that shape over
+ * arrays are simple enough for the JIT to unroll and vectorize. Only
+ * the lengths, which are not secret, decide how long a comparison
+ * takes.
+ */
+final class ConstantTime {
+  /**
+   * Nothing to create.
+   */
+  private ConstantTime() {}
+
+
+  /**
+   * Compare two byte arrays.
+   *
+   * @param a The first array.
+   * @param b The second array.
+   * @return True if equals, else false.
+   */
+  static boolean equals(byte[] a, byte[] b) {
+    return (a.length == b.length) && (diff(a, 0, b, 0, a.length) == 0);
+  }
+
+
+  /**
+   * Compare two ranges of bytes.
+   *
+   * @param a The first array.
+   * @param aFrom Where to start in the first array.
+   * @param b The second array.
+   * @param bFrom Where to start in the second array.
+   * @param length The number of bytes to compare.
+   * @return 0 if equals, else some other value.
+   */
+  static int diff(byte[] a, int aFrom, byte[] b, int bFrom, int length) {
+    int d = 0;
+    for (int i = 0; i < length; i++) {
+      d |= a[aFrom + i] ^ b[bFrom + i];
+    }
+
+    return d;
+  }
+
+
+  /**
+   * Compare two char arrays.
+   *
+   * @param a The first array.
+   * @param b The second array.
+   * @return True if equals, else false.
+   */
+  static boolean equals(char[] a, char[] b) {
+    if (a.length != b.length) {
+      return false;
+    }
+
+    int d = 0;
+    for (int i = 0; i < a.length; i++) {
+      d |= a[i] ^ b[i];
+    }
+
+    return d == 0;
+  }
+
+
+  /**
+   * Compare a char array with a string.
+   *
+   * @param a The array.
+   * @param b The string.
+   * @return True if equals, else false.
+   */
+  static boolean equals(char[] a, CharSequence b) {
+    if (a.length != b.length()) {
+      return false;
+    }
+
+    int d = 0;
+    for (int i = 0; i < a.length; i++) {
+      d |= a[i] ^ b.charAt(i);
+    }
+
+    return d == 0;
+  }
+
+
+  /**
+   * Compare a digest with its lower case hex form, without a lookup
+   * table indexed by the secret.
+   *
+   * @param digest The digest.
+   * @param hex The hex form.
+   * @return True if equals, else false.
+   */
+  static boolean equalsHex(byte[] digest, CharSequence hex) {
+    if (digest.length * 2 != hex.length()) {
+      return false;
+    }
+
+    int d = 0;
+    for (int i = 0; i < digest.length; i++) {
+      d |= hexDigit((digest[i] >> 4) & 0xF) ^ hex.charAt(2 * i);
+      d |= hexDigit(digest[i] & 0xF) ^ hex.charAt(2 * i + 1);
+    }
+
+    return d == 0;
+  }
+
+
+  /**
+   * Compare a digest with its lower case hex form; see
+   * equalsHex(byte[], CharSequence).
+   *
+   * @param digest The digest.
+   * @param hex The hex form.
+   * @return True if equals, else false.
+   */
+  static boolean equalsHex(byte[] digest, char[] hex) {
+    if (digest.length * 2 != hex.length) {
+      return false;
+    }
+
+    int d = 0;
+    for (int i = 0; i < digest.length; i++) {
+      d |= hexDigit((digest[i] >> 4) & 0xF) ^ hex[2 * i];
+      d |= hexDigit(digest[i] & 0xF) ^ hex[2 * i + 1];
+    }
+
+    return d == 0;
+  }
+
+
+  /**
+   * The lower case hex digit for a nibble, without branching: 10 to 15
+   * get the 39 chars between '9' and 'a' added.
+   *
+   * @param nibble The nibble, 0 to 15.
+   * @return The hex digit.
+   */
+  private static int hexDigit(int nibble) {
+    return '0' + nibble + (((9 - nibble) >> 31) & 39);
+  }
+}
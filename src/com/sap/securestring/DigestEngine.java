@@ -0,0 +1,495 @@
+package com.sap.securestring;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.channels.ReadableByteChannel;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+
+
+/**
+ * A reusable, per thread hashing engine.
+ *
+ * Looking up a MessageDigest goes through the (synchronized) provider
+ * lookup every time, and String.getBytes allocates a fresh copy of the
+ * encoded secret. The engine keeps one MessageDigest per thread and
+ * algorithm, and encodes strings chunk by chunk into a fixed buffer,
+ * which is wiped after each use.
+ */
+final class DigestEngine {
+  /**
+   * Size of the char buffer; strings are encoded in chunks of this size.
+   */
+  private static final int                       CHUNK   = 1024;
+
+  /**
+   * The digest.
+   */
+  private final MessageDigest                    md;
+
+  /**
+   * Chars to be encoded.
+   */
+  private final char[]                           chars   = new char[CHUNK];
+
+  /**
+   * Buffer on the chars.
+   */
+  private final CharBuffer                       in      = CharBuffer.wrap(this.chars);
+
+  /**
+   * A hash to be compared; wiped after each use.
+   */
+  private final byte[]                           hash;
+
+  /**
+   * Encoded bytes to be digested.
+   */
+  private final byte[]                           bytes   = new byte[CHUNK * 4];
+
+  /**
+   * Buffer on the bytes.
+   */
+  private final ByteBuffer                       out     = ByteBuffer.wrap(this.bytes);
+
+  /**
+   * Encoder for the last character set used.
+   */
+  private CharsetEncoder                         encoder = null;
+
+  /**
+   * The algorithm.
+   */
+  private final SecureHashAlgorithm              algorithm;
+
+  /**
+   * When the current hash started, if metrics are enabled.
+   */
+  private long                                   start;
+
+  /**
+   * Number of bytes fed into the digest by the current hash.
+   */
+  private long                                   fed;
+
+  /**
+   * Number of chars used since the last wipe.
+   */
+  private int                                    charsUsed;
+
+  /**
+   * Number of bytes used since the last wipe.
+   */
+  private int                                    bytesUsed;
+
+
+  /**
+   * Create an engine.
+   *
+   * @param algorithm The algorithm.
+   * @throws NoSuchAlgorithmException If the algorithm is not available.
+   */
+  private DigestEngine(SecureHashAlgorithm algorithm) throws NoSuchAlgorithmException {
+    this.algorithm = algorithm;
+    this.md        = algorithm.newDigest();
+    this.hash      = new byte[this.md.getDigestLength()];
+  }
+
+
+  /**
+   * Get the engine of the current thread for an algorithm.
+   *
+   * @param algorithm The algorithm.
+   * @return The engine.
+   * @throws NoSuchAlgorithmException If the algorithm is not available.
+   */
+  static DigestEngine get(SecureHashAlgorithm algorithm) throws NoSuchAlgorithmException {
+    DigestEngine engine = algorithm.engines.get();
+    if (engine == null) {
+      engine = new DigestEngine(algorithm);
+      algorithm.engines.set(engine);
+    }
+
+    return engine;
+  }
+
+
+  /**
+   * Get the length of the hashes.
+   *
+   * @return The length, in bytes.
+   */
+  int length() {
+    return this.hash.length;
+  }
+
+
+  /**
+   * Hash a string. This gives the same result as hashing
+   * str.getBytes(charset), without creating that copy.
+   *
+   * @param str The string.
+   * @param charset The character set.
+   * @return The hash.
+   */
+  byte[] digest(String str, Charset charset) {
+    begin();
+
+    try {
+      update(str, null, str.length(), charset);
+
+      return this.md.digest();
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Hash a string into the given array, without allocating anything.
+   *
+   * @param str The string.
+   * @param charset The character set.
+   * @param into Where to put the hash; must take all of it.
+   */
+  void digest(String str, Charset charset, byte[] into) {
+    begin();
+
+    try {
+      update(str, null, str.length(), charset);
+
+      this.md.digest(into, 0, into.length);
+    } catch (DigestException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Hash chars into the given array; see digest(String, Charset,
+   * byte[]).
+   *
+   * @param chars The chars.
+   * @param charset The character set.
+   * @param into Where to put the hash; must take all of it.
+   */
+  void digest(char[] chars, Charset charset, byte[] into) {
+    begin();
+
+    try {
+      update(null, chars, chars.length, charset);
+
+      this.md.digest(into, 0, into.length);
+    } catch (DigestException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Check whether a string hashes to the given digest, comparing in
+   * constant time. Nothing is allocated.
+   *
+   * @param str The string.
+   * @param charset The character set.
+   * @param expected The digest.
+   * @return True if the hash of the string is the digest.
+   */
+  boolean matches(String str, Charset charset, byte[] expected) {
+    begin();
+
+    try {
+      update(str, null, str.length(), charset);
+
+      return matches(expected);
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Check whether chars hash to the given digest; see
+   * matches(String, ...).
+   *
+   * @param chars The chars.
+   * @param charset The character set.
+   * @param expected The digest.
+   * @return True if the hash of the chars is the digest.
+   */
+  boolean matches(char[] chars, Charset charset, byte[] expected) {
+    begin();
+
+    try {
+      update(null, chars, chars.length, charset);
+
+      return matches(expected);
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Finish the digest into the hash buffer, and compare it.
+   *
+   * @param expected The digest.
+   * @return True if the digest is the expected one.
+   */
+  private boolean matches(byte[] expected) {
+    try {
+      this.md.digest(this.hash, 0, this.hash.length);
+    } catch (DigestException e) {
+      throw new IllegalStateException(e.getMessage());
+    }
+
+    return ConstantTime.equals(this.hash, expected);
+  }
+
+
+  /**
+   * Hash the remaining chars of a buffer, without changing its
+   * position. This gives the same result as hashing the string of
+   * those chars.
+   *
+   * @param src The chars.
+   * @param charset The character set.
+   * @return The hash.
+   */
+  byte[] digest(CharBuffer src, Charset charset) {
+    begin();
+
+    try {
+      final CharsetEncoder encoder = encoder(charset);
+      final CharBuffer     in      = src.duplicate();
+
+      this.out.clear();
+      while (encoder.encode(in, this.out, true).isOverflow()) {
+        drain();
+      }
+
+      while (encoder.flush(this.out).isOverflow()) {
+        drain();
+      }
+
+      drain();
+
+      return this.md.digest();
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Hash the remaining bytes of a buffer, e.g. a mapped file. The
+   * bytes are copied through the fixed buffer of the engine, which is
+   * wiped afterwards; the buffer is left at its limit.
+   *
+   * @param src The bytes.
+   * @param into Where to put the hash; must take all of it.
+   */
+  void digest(ByteBuffer src, byte[] into) {
+    begin();
+
+    try {
+      while (src.hasRemaining()) {
+        final int n = Math.min(src.remaining(), this.bytes.length);
+        src.get(this.bytes, 0, n);
+        this.bytesUsed = Math.max(this.bytesUsed, n);
+        this.fed      += n;
+        this.md.update(this.bytes, 0, n);
+      }
+
+      this.md.digest(into, 0, into.length);
+    } catch (DigestException e) {
+      throw new IllegalArgumentException(e.getMessage());
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Hash all bytes read from a channel, up to its end.
+   *
+   * @param channel The channel.
+   * @return The hash.
+   * @throws IOException If reading fails.
+   */
+  byte[] digest(ReadableByteChannel channel) throws IOException {
+    begin();
+
+    try {
+      this.out.clear();
+      while (channel.read(this.out) >= 0) {
+        drain();
+      }
+
+      drain();
+
+      return this.md.digest();
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Hash all bytes read from a stream, up to its end.
+   *
+   * @param stream The stream.
+   * @return The hash.
+   * @throws IOException If reading fails.
+   */
+  byte[] digest(InputStream stream) throws IOException {
+    begin();
+
+    try {
+      int n;
+      while ((n = stream.read(this.bytes, 0, this.bytes.length)) >= 0) {
+        this.bytesUsed = Math.max(this.bytesUsed, n);
+        this.fed      += n;
+        this.md.update(this.bytes, 0, n);
+      }
+
+      return this.md.digest();
+    } finally {
+      done();
+    }
+  }
+
+
+  /**
+   * Encode a string, or an array of chars, and feed it into the
+   * digest.
+   *
+   * @param str The string; null to use the array.
+   * @param array The array, if there is no string.
+   * @param l The number of chars.
+   * @param charset The character set.
+   */
+  private void update(String str, char[] array, int l, Charset charset) {
+    final CharsetEncoder encoder = encoder(charset);
+    int                  pos     = 0;
+
+    this.in.clear();
+    this.out.clear();
+    while (true) {
+      final int n = Math.min(this.in.remaining(), l - pos);
+      if (str != null) {
+        str.getChars(pos, pos + n, this.chars, this.in.position());
+      } else {
+        System.arraycopy(array, pos, this.chars, this.in.position(), n);
+      }
+
+      this.in.position(this.in.position() + n);
+      this.charsUsed = Math.max(this.charsUsed, this.in.position());
+      pos           += n;
+
+      this.in.flip();
+
+      final boolean last = pos == l;
+      while (encoder.encode(this.in, this.out, last).isOverflow()) {
+        drain();
+      }
+
+      if (last) {
+        break;
+      }
+
+      /*
+       * Keeps a dangling high surrogate for the next chunk.
+       */
+      this.in.compact();
+    }
+
+    while (encoder.flush(this.out).isOverflow()) {
+      drain();
+    }
+
+    drain();
+  }
+
+
+  /**
+   * Feed the encoded bytes into the digest.
+   */
+  private void drain() {
+    final int n = this.out.position();
+    this.bytesUsed = Math.max(this.bytesUsed, n);
+    this.fed      += n;
+    this.md.update(this.bytes, 0, n);
+    this.out.clear();
+  }
+
+
+  /**
+   * Start a hash.
+   */
+  private void begin() {
+    if (SecureStringMetrics.ENABLED) {
+      this.start = System.nanoTime();
+    }
+
+    this.fed = 0;
+  }
+
+
+  /**
+   * Finish a hash: reset the digest, wipe the buffers, and record the
+   * hash if metrics are enabled.
+   */
+  private void done() {
+    this.md.reset();
+    wipe();
+
+    if (SecureStringMetrics.ENABLED) {
+      SecureStringMetrics.hash(this.algorithm, this.fed, this.start);
+    }
+  }
+
+
+  /**
+   * Wipe whatever part of the buffers was used.
+   */
+  private void wipe() {
+    Arrays.fill(this.hash, (byte) 0);
+    Arrays.fill(this.chars, 0, this.charsUsed, '\0');
+    Arrays.fill(this.bytes, 0, this.bytesUsed, (byte) 0);
+    this.charsUsed = 0;
+    this.bytesUsed = 0;
+  }
+
+
+  /**
+   * Get a reset encoder for the character set. Malformed and unmappable
+   * input is replaced, just like String.getBytes does.
+   *
+   * @param charset The character set.
+   * @return The encoder.
+   */
+  private CharsetEncoder encoder(Charset charset) {
+    if ((this.encoder == null) || !this.encoder.charset().equals(charset)) {
+      this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    return this.encoder.reset();
+  }
+}
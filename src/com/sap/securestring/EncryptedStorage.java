@@ -0,0 +1,513 @@
+package com.sap.securestring;
+
+import java.lang.invoke.VarHandle;
+
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import java.util.Arrays;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import javax.crypto.spec.GCMParameterSpec;
+
+
+/**
+ * Storage encrypted with AES/GCM, under a key which is made up when the
+ * first string is encrypted, and never leaves the process.
+ *
+ * The chars are encrypted as UTF-16, two bytes each, so the storage
+ * takes their length plus a 16 byte tag. Each string gets its own IV: a
+ * random prefix of the process, and a counter. Reads decrypt into a
+ * per thread scratch buffer, which is wiped right after; the Cipher is
+ * kept per thread, too, and uses the AES and GHASH instructions of the
+ * CPU where the runtime has them.
+ *
+ * For strings read very often, the decrypted chars can be cached for a
+ * short time (see SecureString.setEncryptedCacheTime); the expiry
+ * scheduler wipes the cache once the time is over. Readers of the cache
+ * do not lock; like SecureString, they read, then check that the cache
+ * was not dropped in the meantime, and decrypt if it was.
+ */
+final class EncryptedStorage extends Storage {
+  /**
+   * Length of the GCM tag, in bytes.
+   */
+  private static final int     TAG       = 16;
+
+  /**
+   * How long decrypted chars are cached, in nanoseconds; 0 for not at
+   * all. It can be set with the system property
+   * com.sap.securestring.encrypted.cache, in milliseconds.
+   */
+  private static volatile long cacheTime = TimeUnit.MILLISECONDS.toNanos(Long.getLong("com.sap.securestring.encrypted.cache", 0));
+
+  /**
+   * The cipher and scratch buffers of each thread.
+   */
+  private static final ThreadLocal<Crypt> CRYPTS = new ThreadLocal<Crypt>();
+
+  /**
+   * The encrypted chars, followed by the tag.
+   */
+  private final byte[]         sealed;
+
+  /**
+   * The counter part of the IV.
+   */
+  private final long           nonce;
+
+  /**
+   * The number of chars.
+   */
+  private final int            length;
+
+  /**
+   * The cached chars, or null.
+   */
+  private volatile char[]      cached;
+
+  /**
+   * Wipes the cache, once it is due; created with the first cache.
+   */
+  private Cache                cache;
+
+  /**
+   * Whether the storage was wiped; then nothing is cached anymore.
+   */
+  private boolean              wiped;
+
+
+  /**
+   * Create the storage, encrypting the string.
+   *
+   * @param str The string, or any other chars.
+   * @throws IllegalStateException If the string cannot be encrypted.
+   */
+  EncryptedStorage(CharSequence str) {
+    this.length = str.length();
+    this.nonce  = Key.COUNTER.incrementAndGet();
+    this.sealed = new byte[this.length * 2 + TAG];
+
+    final Crypt  c     = Crypt.get();
+    final int    n     = this.length * 2;
+    final byte[] plain = c.bytes(n);
+
+    try {
+      for (int i = 0; i < this.length; i++) {
+        final char ch = str.charAt(i);
+        plain[2 * i]     = (byte) (ch >>> 8);
+        plain[2 * i + 1] = (byte) ch;
+      }
+
+      c.init(Cipher.ENCRYPT_MODE, this.nonce);
+      c.cipher.doFinal(plain, 0, n, this.sealed, 0);
+    } catch (GeneralSecurityException e) {
+      /*
+       * The secret would be lost for good, as no read could decrypt
+       * it; better fail right away.
+       */
+      throw new IllegalStateException("Cannot encrypt: " + e.getMessage(), e);
+    } finally {
+      Arrays.fill(plain, 0, n, (byte) 0);
+    }
+  }
+
+
+  /**
+   * Get how long decrypted chars are cached.
+   *
+   * @return The time, in milliseconds; 0 if they are not cached.
+   */
+  static long getCacheTime() {
+    return TimeUnit.NANOSECONDS.toMillis(cacheTime);
+  }
+
+
+  /**
+   * Set how long decrypted chars are cached. This affects all
+   * encrypted strings from their next read on.
+   *
+   * @param millis The time, in milliseconds; 0 for not at all.
+   */
+  static void setCacheTime(long millis) {
+    cacheTime = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+  }
+
+
+  int length() {
+    return this.length;
+  }
+
+
+  char charAt(int index) {
+    final Crypt  c     = Crypt.get();
+    final char[] chars = c.chars(this.length);
+
+    try {
+      getChars(chars, this.length);
+
+      return chars[index];
+    } finally {
+      Arrays.fill(chars, 0, this.length, '\0');
+    }
+  }
+
+
+  void getChars(char[] into, int length) {
+    final char[] c = this.cached;
+    if (c != null) {
+      System.arraycopy(c, 0, into, 0, length);
+      if (cacheValid(c)) {
+        return;
+      }
+    }
+
+    decrypt(into, length);
+    cache(into);
+  }
+
+
+  boolean contentEquals(CharSequence with) {
+    if (this.length != with.length()) {
+      return false;
+    }
+
+    final char[] c = this.cached;
+    if (c != null) {
+      final boolean result = ConstantTime.equals(c, with);
+      if (cacheValid(c)) {
+        return result;
+      }
+    }
+
+    final char[] chars = Crypt.get().chars(this.length);
+    try {
+      decrypt(chars, this.length);
+      cache(chars);
+
+      int d = 0;
+      for (int i = 0; i < this.length; i++) {
+        d |= chars[i] ^ with.charAt(i);
+      }
+
+      return d == 0;
+    } finally {
+      Arrays.fill(chars, 0, this.length, '\0');
+    }
+  }
+
+
+  boolean contentEquals(char[] with) {
+    if (this.length != with.length) {
+      return false;
+    }
+
+    final char[] c = this.cached;
+    if (c != null) {
+      final boolean result = ConstantTime.equals(c, with);
+      if (cacheValid(c)) {
+        return result;
+      }
+    }
+
+    final char[] chars = Crypt.get().chars(this.length);
+    try {
+      decrypt(chars, this.length);
+      cache(chars);
+
+      int d = 0;
+      for (int i = 0; i < this.length; i++) {
+        d |= chars[i] ^ with[i];
+      }
+
+      return d == 0;
+    } finally {
+      Arrays.fill(chars, 0, this.length, '\0');
+    }
+  }
+
+
+  public String toString() {
+    final char[] c = this.cached;
+    if (c != null) {
+      final String result = new String(c);
+      if (cacheValid(c)) {
+        return result;
+      }
+    }
+
+    final char[] chars = Crypt.get().chars(this.length);
+    try {
+      decrypt(chars, this.length);
+      cache(chars);
+
+      return new String(chars, 0, this.length);
+    } finally {
+      Arrays.fill(chars, 0, this.length, '\0');
+    }
+  }
+
+
+  /**
+   * Wipe the encrypted chars, and the cache.
+   */
+  void wipe() {
+    synchronized (this) {
+      this.wiped = true;
+      dropCache();
+    }
+
+    Arrays.fill(this.sealed, (byte) 0);
+  }
+
+
+  /**
+   * Decrypt the chars. If the storage was wiped in the meantime, the
+   * tag does not match anymore, and the chars are zeros.
+   *
+   * @param into Where to put the chars.
+   * @param length The number of chars.
+   */
+  private void decrypt(char[] into, int length) {
+    final Crypt  c     = Crypt.get();
+    final byte[] plain = c.bytes(this.sealed.length);
+
+    try {
+      c.init(Cipher.DECRYPT_MODE, this.nonce);
+      c.cipher.doFinal(this.sealed, 0, this.sealed.length, plain, 0);
+
+      for (int i = 0; i < length; i++) {
+        into[i] = (char) (((plain[2 * i] & 0xFF) << 8) | (plain[2 * i + 1] & 0xFF));
+      }
+    } catch (AEADBadTagException e) {
+      Arrays.fill(into, 0, length, '\0');
+    } catch (GeneralSecurityException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+      Arrays.fill(into, 0, length, '\0');
+    } finally {
+      Arrays.fill(plain, 0, this.sealed.length, (byte) 0);
+    }
+  }
+
+
+  /**
+   * Check, after reading the cache, that it was not dropped in the
+   * meantime.
+   *
+   * @param c The cache which was read.
+   * @return True if what was read is valid.
+   */
+  private boolean cacheValid(char[] c) {
+    VarHandle.loadLoadFence();
+
+    return this.cached == c;
+  }
+
+
+  /**
+   * Cache decrypted chars, if caching is on and nothing is cached yet.
+   *
+   * @param chars The chars; at least length of them.
+   */
+  private void cache(char[] chars) {
+    final long time = cacheTime;
+    if ((time == 0) || (this.cached != null)) {
+      return;
+    }
+
+    synchronized (this) {
+      if (this.wiped || (this.cached != null)) {
+        return;
+      }
+
+      if (this.cache == null) {
+        this.cache = new Cache();
+      }
+
+      this.cached = Arrays.copyOf(chars, this.length);
+    }
+
+    ExpiryScheduler.getInstance().schedule(this.cache, System.nanoTime() + time);
+  }
+
+
+  /**
+   * Drop the cache, and wipe it. Must hold the lock of the storage.
+   */
+  private void dropCache() {
+    final char[] c = this.cached;
+    if (c != null) {
+      this.cached = null;
+      Arrays.fill(c, '\0');
+    }
+
+    if (this.cache != null) {
+      ExpiryScheduler.getInstance().cancel(this.cache);
+    }
+  }
+
+
+  /**
+   * Entry of the cache with the expiry scheduler.
+   */
+  private final class Cache extends ExpiryScheduler.Task {
+    /**
+     * Drop the cache, once it is due.
+     */
+    protected void expire() {
+      synchronized (EncryptedStorage.this) {
+        dropCache();
+      }
+    }
+  }
+
+
+  /**
+   * The key of the process, and the IVs.
+   */
+  private static final class Key {
+    /**
+     * The key.
+     */
+    static final SecretKey  KEY;
+
+    /**
+     * The random prefix of all IVs.
+     */
+    static final int        SALT;
+
+    /**
+     * The counter part of the IVs; each string takes one.
+     */
+    static final AtomicLong COUNTER = new AtomicLong();
+
+    static {
+      try {
+        final KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+
+        KEY  = generator.generateKey();
+        SALT = new SecureRandom().nextInt();
+      } catch (NoSuchAlgorithmException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
+  }
+
+
+  /**
+   * The cipher and scratch buffers of a thread.
+   */
+  private static final class Crypt {
+    /**
+     * The cipher.
+     */
+    final Cipher cipher;
+
+    /**
+     * The IV.
+     */
+    final byte[] iv    = new byte[12];
+
+    /**
+     * Scratch bytes.
+     */
+    byte[]       bytes = new byte[256];
+
+    /**
+     * Scratch chars.
+     */
+    char[]       chars = new char[128];
+
+
+    /**
+     * Create the cipher.
+     *
+     * @throws GeneralSecurityException If AES/GCM is not available.
+     */
+    private Crypt() throws GeneralSecurityException {
+      this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+
+      this.iv[0] = (byte) (Key.SALT >>> 24);
+      this.iv[1] = (byte) (Key.SALT >>> 16);
+      this.iv[2] = (byte) (Key.SALT >>> 8);
+      this.iv[3] = (byte) Key.SALT;
+    }
+
+
+    /**
+     * Get the cipher and scratch buffers of the current thread.
+     *
+     * @return The cipher and scratch buffers.
+     */
+    static Crypt get() {
+      Crypt crypt = CRYPTS.get();
+      if (crypt == null) {
+        try {
+          crypt = new Crypt();
+        } catch (GeneralSecurityException e) {
+          throw new IllegalStateException(e.getMessage());
+        }
+
+        CRYPTS.set(crypt);
+      }
+
+      return crypt;
+    }
+
+
+    /**
+     * Set the cipher up for a string.
+     *
+     * @param mode Cipher.ENCRYPT_MODE or DECRYPT_MODE.
+     * @param nonce The counter part of the IV of the string.
+     * @throws GeneralSecurityException If the cipher fails.
+     */
+    void init(int mode, long nonce) throws GeneralSecurityException {
+      for (int i = 0; i < 8; i++) {
+        this.iv[4 + i] = (byte) (nonce >>> (56 - 8 * i));
+      }
+
+      this.cipher.init(mode, Key.KEY, new GCMParameterSpec(TAG * 8, this.iv));
+    }
+
+
+    /**
+     * Get at least the given number of scratch bytes. A smaller array
+     * is dropped; it is all zeros, as users wipe what they used.
+     *
+     * @param length The number of bytes.
+     * @return The bytes.
+     */
+    byte[] bytes(int length) {
+      if (length > this.bytes.length) {
+        this.bytes = new byte[Math.max(length, this.bytes.length * 2)];
+      }
+
+      return this.bytes;
+    }
+
+
+    /**
+     * Get at least the given number of scratch chars; see bytes.
+     *
+     * @param length The number of chars.
+     * @return The chars.
+     */
+    char[] chars(int length) {
+      if (length > this.chars.length) {
+        this.chars = new char[Math.max(length, this.chars.length * 2)];
+      }
+
+      return this.chars;
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.sap.securestring;
+
+/**
+ * How expiring SecureStrings are wiped once their lifetime is over.
+ */
+public enum ExpiryMode {
+  /**
+   * All strings share one scheduler thread, which wipes each string at
+   * its deadline.
+   */
+  SHARED,
+
+  /**
+   * Each string has its own updater thread, which parks until the
+   * deadline. The thread is virtual where the runtime supports virtual
+   * threads, else it is a daemon platform thread.
+   */
+  THREAD,
+
+  /**
+   * No thread at all: each access checks the deadline, and the first
+   * access after it wipes the string. Strings which are never read
+   * again are wiped by SecureString.sweepExpired, a little of which
+   * runs each time a lazy string is created.
+   */
+  LAZY
+}
@@ -0,0 +1,452 @@
+package com.sap.securestring;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Process-wide expiry engine for SecureString objects.
+ *
+ * Instead of one polling thread per expiring string, all deadlines are
+ * kept in a hierarchical timing wheel which is driven by a single daemon
+ * thread. The thread only wakes up when a non-empty bucket becomes due,
+ * so the work done tracks the number of actual expirations rather than
+ * the number of live instances.
+ */
+final class ExpiryScheduler {
+  /**
+   * Tick of the innermost wheel, in nanoseconds.
+   */
+  private static final long            TICK       = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * Number of buckets per wheel.
+   */
+  private static final int             WHEEL_SIZE = 64;
+
+  /**
+   * The one and only scheduler.
+   */
+  private static final ExpiryScheduler INSTANCE   = new ExpiryScheduler();
+
+  /**
+   * Buckets which hold at least one task, ordered by their expiration.
+   */
+  private final DelayQueue<Bucket>     queue      = new DelayQueue<Bucket>();
+
+  /**
+   * Origin of the scheduler clock, so that the wheel works on small
+   * non-negative times.
+   */
+  private final long                   origin     = System.nanoTime();
+
+  /**
+   * The innermost wheel; coarser wheels are created on demand.
+   */
+  private final Wheel                  wheel      = new Wheel(TICK, 0);
+
+  /**
+   * The worker thread, started with the first task.
+   */
+  private Thread                       worker     = null;
+
+
+  /**
+   * Only one scheduler per process.
+   */
+  private ExpiryScheduler() {}
+
+
+  /**
+   * Get the process-wide scheduler.
+   *
+   * @return The scheduler.
+   */
+  static ExpiryScheduler getInstance() {
+    return INSTANCE;
+  }
+
+
+  /**
+   * Schedule a task, replacing any deadline it was scheduled with before.
+   * If the deadline has already passed, the task is expired right away
+   * on the calling thread.
+   *
+   * @param task The task.
+   * @param deadline The deadline, in terms of System.nanoTime().
+   */
+  void schedule(Task task, long deadline) {
+    final boolean queued;
+
+    synchronized (this) {
+      queued = add(task, deadline);
+    }
+
+    if (!queued) {
+      task.expire();
+    }
+  }
+
+
+  /**
+   * Schedule many tasks with the same deadline, taking the scheduler
+   * lock only once. Tasks which are due right away are expired on the
+   * calling thread.
+   *
+   * @param tasks The tasks.
+   * @param deadline The deadline, in terms of System.nanoTime().
+   */
+  void scheduleAll(Task[] tasks, long deadline) {
+    final List<Task> due = new ArrayList<Task>();
+
+    synchronized (this) {
+      for (int i = 0; i < tasks.length; i++) {
+        if (!add(tasks[i], deadline)) {
+          due.add(tasks[i]);
+        }
+      }
+    }
+
+    final int l = due.size();
+    for (int i = 0; i < l; i++) {
+      due.get(i).expire();
+    }
+  }
+
+
+  /**
+   * File a task into the wheel, and start the worker if needed. Must
+   * hold the scheduler lock.
+   *
+   * @param task The task.
+   * @param deadline The deadline, in terms of System.nanoTime().
+   * @return False if the task is already due.
+   */
+  private boolean add(Task task, long deadline) {
+    /*
+     * Round the deadline up to a full tick, so that
+     * buckets, which fire at the start of their tick,
+     * never expire a task early.
+     */
+    task.unlink();
+    task.deadline = deadline - this.origin + TICK - 1;
+
+    final boolean queued = this.wheel.add(task);
+
+    if (queued && (this.worker == null)) {
+      this.worker = new Worker();
+      this.worker.start();
+    }
+
+    return queued;
+  }
+
+
+  /**
+   * Remove a task from the scheduler. Does nothing if the task is not
+   * scheduled.
+   *
+   * @param task The task.
+   */
+  synchronized void cancel(Task task) {
+    task.unlink();
+  }
+
+
+  /**
+   * Current time on the scheduler clock.
+   *
+   * @return The time, in nanoseconds.
+   */
+  private long now() {
+    return System.nanoTime() - this.origin;
+  }
+
+
+  /**
+   * Something that can be scheduled for expiry. Tasks are linked into
+   * their bucket directly, so that cancelling one does not need a search.
+   */
+  abstract static class Task {
+    /**
+     * The deadline on the scheduler clock.
+     */
+    private long   deadline;
+
+    /**
+     * The bucket holding the task, or null if not scheduled.
+     */
+    private Bucket bucket;
+
+    /**
+     * Previous task in the bucket.
+     */
+    private Task   prev;
+
+    /**
+     * Next task in the bucket.
+     */
+    private Task   next;
+
+
+    /**
+     * Called once the deadline has passed. This is called without any
+     * scheduler lock held, so the task may reschedule itself.
+     */
+    protected abstract void expire();
+
+
+    /**
+     * Remove the task from its bucket, if any.
+     */
+    private void unlink() {
+      if (this.bucket != null) {
+        this.prev.next = this.next;
+        this.next.prev = this.prev;
+        this.prev      = null;
+        this.next      = null;
+        this.bucket    = null;
+      }
+    }
+  }
+
+
+  /**
+   * A circular list of tasks which expire within the same tick of a wheel.
+   */
+  private final class Bucket implements Delayed {
+    /**
+     * Sentinel of the task list.
+     */
+    private final Task    head       = new Task() {
+      protected void expire() {}
+    };
+
+    /**
+     * Expiration of the bucket on the scheduler clock, or -1 if it is
+     * not in the delay queue.
+     */
+    private volatile long expiration = -1;
+
+
+    /**
+     * Create an empty bucket.
+     */
+    Bucket() {
+      this.head.prev = this.head;
+      this.head.next = this.head;
+    }
+
+
+    /**
+     * Add a task to the bucket.
+     *
+     * @param task The task.
+     */
+    void add(Task task) {
+      task.bucket         = this;
+      task.next           = this.head;
+      task.prev           = this.head.prev;
+      this.head.prev.next = task;
+      this.head.prev      = task;
+    }
+
+
+    /**
+     * Set the expiration of the bucket.
+     *
+     * @param expiration The expiration.
+     * @return True if the expiration changed, i.e. the bucket has to be
+     * (re-)queued.
+     */
+    boolean setExpiration(long expiration) {
+      final long old = this.expiration;
+      this.expiration = expiration;
+
+      return old != expiration;
+    }
+
+
+    /**
+     * Take all tasks out of the bucket and hand them back to the wheel,
+     * which either files them into a finer bucket or reports them as due.
+     *
+     * @param due Receives the tasks which are due.
+     */
+    void flush(List<Task> due) {
+      this.expiration = -1;
+
+      Task task = this.head.next;
+      while (task != this.head) {
+        final Task next = task.next;
+        task.unlink();
+        if (!ExpiryScheduler.this.wheel.add(task)) {
+          due.add(task);
+        }
+
+        task = next;
+      }
+    }
+
+
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(this.expiration - now(), TimeUnit.NANOSECONDS);
+    }
+
+
+    public int compareTo(Delayed other) {
+      return Long.compare(this.expiration, ((Bucket) other).expiration);
+    }
+  }
+
+
+  /**
+   * One level of the hierarchical timing wheel. Each level covers
+   * WHEEL_SIZE ticks of the level below; deadlines beyond that are
+   * passed on to the next coarser wheel.
+   */
+  private final class Wheel {
+    /**
+     * Duration of one bucket.
+     */
+    private final long     tick;
+
+    /**
+     * Duration covered by the whole wheel.
+     */
+    private final long     interval;
+
+    /**
+     * The buckets.
+     */
+    private final Bucket[] buckets     = new Bucket[WHEEL_SIZE];
+
+    /**
+     * Current time of the wheel, rounded down to its tick.
+     */
+    private long           currentTime;
+
+    /**
+     * The next coarser wheel, if already needed.
+     */
+    private Wheel          overflow    = null;
+
+
+    /**
+     * Create a wheel.
+     *
+     * @param tick Duration of one bucket.
+     * @param startTime Start time of the wheel.
+     */
+    Wheel(long tick, long startTime) {
+      this.tick        = tick;
+      this.interval    = tick * WHEEL_SIZE;
+      this.currentTime = startTime - (startTime % tick);
+      for (int i = 0; i < WHEEL_SIZE; i++) {
+        this.buckets[i] = new Bucket();
+      }
+    }
+
+
+    /**
+     * File a task into the matching bucket.
+     *
+     * @param task The task.
+     * @return False if the task is already due.
+     */
+    boolean add(Task task) {
+      final long deadline = task.deadline;
+
+      if (deadline < this.currentTime + this.tick) {
+        return false;
+      }
+
+      if (deadline < this.currentTime + this.interval) {
+        final long   id     = deadline / this.tick;
+        final Bucket bucket = this.buckets[(int) (id % WHEEL_SIZE)];
+        bucket.add(task);
+        if (bucket.setExpiration(id * this.tick)) {
+          ExpiryScheduler.this.queue.offer(bucket);
+        }
+
+        return true;
+      }
+
+      if (this.overflow == null) {
+        this.overflow = new Wheel(this.interval, this.currentTime);
+      }
+
+      return this.overflow.add(task);
+    }
+
+
+    /**
+     * Advance the wheel, and all coarser wheels, to the given time.
+     *
+     * @param time The time.
+     */
+    void advance(long time) {
+      if (time >= this.currentTime + this.tick) {
+        this.currentTime = time - (time % this.tick);
+        if (this.overflow != null) {
+          this.overflow.advance(this.currentTime);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * The single thread driving the wheel.
+   */
+  private final class Worker extends Thread {
+    /**
+     * Create the worker.
+     */
+    Worker() {
+      super("SecureString Expiry");
+      setDaemon(true);
+    }
+
+
+    /**
+     * Wait for the next due bucket, cascade its tasks and expire those
+     * which are due.
+     */
+    public void run() {
+      final List<Task> due = new ArrayList<Task>();
+
+      while (true) {
+        Bucket bucket;
+        try {
+          bucket = ExpiryScheduler.this.queue.take();
+        } catch (InterruptedException ie) {
+          continue;
+        }
+
+        synchronized (ExpiryScheduler.this) {
+          while (bucket != null) {
+            ExpiryScheduler.this.wheel.advance(bucket.expiration);
+            bucket.flush(due);
+            bucket = ExpiryScheduler.this.queue.poll();
+          }
+        }
+
+        final int l = due.size();
+        for (int i = 0; i < l; i++) {
+          try {
+            due.get(i).expire();
+          } catch (RuntimeException e) {
+            System.err.println("! Caught Exception: " + e.getMessage());
+          }
+        }
+
+        due.clear();
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package com.sap.securestring;
+
+/**
+ * Storage in a char[] on the heap.
+ */
+final class HeapStorage extends Storage {
+  /**
+   * The chars.
+   */
+  private final char[] chars;
+
+
+  /**
+   * Create the storage. The array is taken over, not copied.
+   *
+   * @param chars The chars.
+   */
+  HeapStorage(char[] chars) {
+    this.chars = chars;
+  }
+
+
+  int length() {
+    return this.chars.length;
+  }
+
+
+  char charAt(int index) {
+    return this.chars[index];
+  }
+
+
+  void getChars(char[] into, int length) {
+    System.arraycopy(this.chars, 0, into, 0, length);
+  }
+
+
+  boolean contentEquals(CharSequence with) {
+    return ConstantTime.equals(this.chars, with);
+  }
+
+
+  boolean contentEquals(char[] with) {
+    return ConstantTime.equals(this.chars, with);
+  }
+
+
+  public String toString() {
+    return new String(this.chars);
+  }
+
+
+  void wipe() {
+    final int l = this.chars.length;
+    for (int i = 0; i < l; i++) {
+      this.chars[i] = '\0'; // kidding
+    }
+  }
+}
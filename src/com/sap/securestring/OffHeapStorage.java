@@ -0,0 +1,77 @@
+package com.sap.securestring;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * Storage in direct memory, outside of the Java heap.
+ *
+ * The garbage collector never moves or copies the chars, so wiping them
+ * really removes the only copy. The memory is zeroed on wipe; it is
+ * released by the buffer's cleaner once the storage is unreachable, as
+ * freeing it right away could crash a reader racing with destroy.
+ */
+final class OffHeapStorage extends Storage {
+  /**
+   * The chars, two bytes each.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * The number of chars.
+   */
+  private final int        length;
+
+
+  /**
+   * Create the storage, copying the string into direct memory.
+   *
+   * @param str The string, or any other chars.
+   */
+  OffHeapStorage(CharSequence str) {
+    this.length = str.length();
+    this.buffer = ByteBuffer.allocateDirect(this.length * 2).order(ByteOrder.nativeOrder());
+    for (int i = 0; i < this.length; i++) {
+      this.buffer.putChar(i * 2, str.charAt(i));
+    }
+  }
+
+
+  int length() {
+    return this.length;
+  }
+
+
+  char charAt(int index) {
+    return this.buffer.getChar(index * 2);
+  }
+
+
+  public String toString() {
+    final char[] chars = new char[this.length];
+    for (int i = 0; i < this.length; i++) {
+      chars[i] = this.buffer.getChar(i * 2);
+    }
+
+    final String result = new String(chars);
+    for (int i = 0; i < this.length; i++) {
+      chars[i] = '\0';
+    }
+
+    return result;
+  }
+
+
+  void wipe() {
+    final int capacity = this.buffer.capacity();
+    int       i        = 0;
+    for (; i + 8 <= capacity; i += 8) {
+      this.buffer.putLong(i, 0L);
+    }
+
+    for (; i < capacity; i++) {
+      this.buffer.put(i, (byte) 0);
+    }
+  }
+}
@@ -0,0 +1,325 @@
+package com.sap.securestring;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import java.util.Arrays;
+
+
+/**
+ * How hashed SecureStrings are hashed.
+ *
+ * An algorithm hands out MessageDigests; each thread gets one of its
+ * own, which it reuses, so an algorithm should be created once and
+ * then shared. The built-in algorithms are SHA-512 (the default) and
+ * SHA-256 for quick lookups, and PBKDF2 for stored passwords. Any other
+ * digest the Java runtime knows can be used with of, and an algorithm
+ * of your own can be plugged in by extending this class.
+ *
+ * A hashed SecureString remembers the algorithm it was hashed with, so
+ * equalsPlain hashes the candidate the same way.
+ *
+ * A PBKDF2 algorithm hashes everything with the one salt it was created
+ * with. Use it for one credential only: get a fresh salt from newSalt,
+ * store it next to the hash, and create the algorithm from it again to
+ * check a password later. Shared across credentials, equal passwords
+ * would get equal hashes.
+ */
+public abstract class SecureHashAlgorithm {
+  /**
+   * SHA-512. This is the default.
+   */
+  public static final SecureHashAlgorithm       SHA_512 = of("SHA-512");
+
+  /**
+   * SHA-256, which is quicker for short strings, in particular where
+   * the runtime uses the SHA extensions of the processor.
+   */
+  public static final SecureHashAlgorithm       SHA_256 = of("SHA-256");
+
+  /**
+   * Length of the salts from newSalt, in bytes.
+   */
+  private static final int                      SALT    = 16;
+
+  /**
+   * Source of the salts.
+   */
+  private static final SecureRandom             RANDOM  = new SecureRandom();
+
+  /**
+   * The digest engine of each thread.
+   */
+  final ThreadLocal<DigestEngine>               engines = new ThreadLocal<DigestEngine>();
+
+
+  /**
+   * Get the name of the algorithm.
+   *
+   * @return The name.
+   */
+  public abstract String getName();
+
+
+  /**
+   * Create a digest for the algorithm. It is only ever used by one
+   * thread, and reset after each use.
+   *
+   * @return The digest.
+   * @throws NoSuchAlgorithmException If the algorithm is not available.
+   */
+  protected abstract MessageDigest newDigest() throws NoSuchAlgorithmException;
+
+
+  /**
+   * Get the name of the algorithm.
+   *
+   * @return The name.
+   */
+  public String toString() {
+    return getName();
+  }
+
+
+  /**
+   * Get an algorithm for a digest of the Java runtime, e.g. SHA-384 or
+   * SHA3-256.
+   *
+   * @param name The name of the digest.
+   * @return The algorithm.
+   */
+  public static SecureHashAlgorithm of(final String name) {
+    return new SecureHashAlgorithm() {
+      public String getName() {
+        return name;
+      }
+
+      protected MessageDigest newDigest() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance(name);
+      }
+    };
+  }
+
+
+  /**
+   * Get a random salt for PBKDF2, 16 bytes long.
+   *
+   * @return The salt.
+   */
+  public static byte[] newSalt() {
+    final byte[] salt = new byte[SALT];
+    RANDOM.nextBytes(salt);
+
+    return salt;
+  }
+
+
+  /**
+   * Get PBKDF2 with HMAC SHA-256, as a slow hash for stored passwords.
+   * The key is as long as the hash, 32 bytes.
+   *
+   * The salt is used for everything hashed with the algorithm, so it
+   * must belong to one credential, and be stored with its hash; see
+   * newSalt.
+   *
+   * @param iterations The number of iterations.
+   * @param salt The salt of the credential.
+   * @return The algorithm.
+   */
+  public static SecureHashAlgorithm pbkdf2(final int iterations, byte[] salt) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("Iterations must be positive: " + iterations);
+    }
+
+    if (salt.length == 0) {
+      throw new IllegalArgumentException("Salt must not be empty");
+    }
+
+    final byte[] s = salt.clone();
+
+    return new SecureHashAlgorithm() {
+      public String getName() {
+        return "PBKDF2WithHmacSHA256/" + iterations;
+      }
+
+      protected MessageDigest newDigest() throws NoSuchAlgorithmException {
+        return new Pbkdf2(iterations, s);
+      }
+    };
+  }
+
+
+  /**
+   * PBKDF2 with HMAC SHA-256, as a MessageDigest. The password is the
+   * key of the HMAC, which is needed as a whole before anything can be
+   * hashed; so the input is collected, and wiped on reset.
+   */
+  private static final class Pbkdf2 extends MessageDigest {
+    /**
+     * Block size of SHA-256.
+     */
+    private static final int    BLOCK       = 64;
+
+    /**
+     * Index of the one block of the key, as appended to the salt.
+     */
+    private static final byte[] BLOCK_INDEX = { 0, 0, 0, 1 };
+
+    /**
+     * The number of iterations.
+     */
+    private final int           iterations;
+
+    /**
+     * The salt.
+     */
+    private final byte[]        salt;
+
+    /**
+     * The hash of the HMAC.
+     */
+    private final MessageDigest sha;
+
+    /**
+     * Inner pad of the HMAC.
+     */
+    private final byte[]        ipad        = new byte[BLOCK];
+
+    /**
+     * Outer pad of the HMAC.
+     */
+    private final byte[]        opad        = new byte[BLOCK];
+
+    /**
+     * Result of the current iteration.
+     */
+    private final byte[]        u           = new byte[32];
+
+    /**
+     * The password collected so far.
+     */
+    private byte[]              password    = new byte[BLOCK];
+
+    /**
+     * Length of the password.
+     */
+    private int                 length      = 0;
+
+
+    /**
+     * Create the digest.
+     *
+     * @param iterations The number of iterations.
+     * @param salt The salt.
+     * @throws NoSuchAlgorithmException If SHA-256 is not available.
+     */
+    Pbkdf2(int iterations, byte[] salt) throws NoSuchAlgorithmException {
+      super("PBKDF2WithHmacSHA256");
+      this.iterations = iterations;
+      this.salt       = salt;
+      this.sha        = MessageDigest.getInstance("SHA-256");
+    }
+
+
+    protected int engineGetDigestLength() {
+      return this.u.length;
+    }
+
+
+    protected void engineUpdate(byte input) {
+      engineUpdate(new byte[] { input }, 0, 1);
+    }
+
+
+    protected void engineUpdate(byte[] input, int offset, int len) {
+      if (this.length + len > this.password.length) {
+        final byte[] old = this.password;
+        this.password = Arrays.copyOf(old, Math.max(this.length + len, old.length * 2));
+        Arrays.fill(old, (byte) 0);
+      }
+
+      System.arraycopy(input, offset, this.password, this.length, len);
+      this.length += len;
+    }
+
+
+    protected byte[] engineDigest() {
+      final byte[] t = new byte[this.u.length];
+
+      try {
+        /*
+         * Keys longer than a block are hashed first.
+         */
+        if (this.length > BLOCK) {
+          this.sha.update(this.password, 0, this.length);
+          this.sha.digest(this.u, 0, this.u.length);
+          pads(this.u, this.u.length);
+        } else {
+          pads(this.password, this.length);
+        }
+
+        this.sha.update(this.ipad);
+        this.sha.update(this.salt);
+        this.sha.update(BLOCK_INDEX);
+        this.sha.digest(this.u, 0, this.u.length);
+        outer();
+        System.arraycopy(this.u, 0, t, 0, t.length);
+
+        for (int i = 1; i < this.iterations; i++) {
+          this.sha.update(this.ipad);
+          this.sha.update(this.u);
+          this.sha.digest(this.u, 0, this.u.length);
+          outer();
+          for (int j = 0; j < t.length; j++) {
+            t[j] ^= this.u[j];
+          }
+        }
+      } catch (DigestException e) {
+        throw new IllegalStateException(e.getMessage());
+      } finally {
+        engineReset();
+      }
+
+      return t;
+    }
+
+
+    protected void engineReset() {
+      Arrays.fill(this.password, 0, this.length, (byte) 0);
+      Arrays.fill(this.ipad, (byte) 0);
+      Arrays.fill(this.opad, (byte) 0);
+      Arrays.fill(this.u, (byte) 0);
+      this.length = 0;
+      this.sha.reset();
+    }
+
+
+    /**
+     * Set up the pads of the HMAC for a key.
+     *
+     * @param key The key.
+     * @param l The length of the key.
+     */
+    private void pads(byte[] key, int l) {
+      for (int i = 0; i < BLOCK; i++) {
+        final byte k = (i < l) ? key[i] : 0;
+        this.ipad[i] = (byte) (k ^ 0x36);
+        this.opad[i] = (byte) (k ^ 0x5c);
+      }
+    }
+
+
+    /**
+     * Finish an HMAC: hash the outer pad and the inner hash.
+     *
+     * @throws DigestException If the result does not fit.
+     */
+    private void outer() throws DigestException {
+      this.sha.update(this.opad);
+      this.sha.update(this.u);
+      this.sha.digest(this.u, 0, this.u.length);
+    }
+  }
+}
@@ -1,27 +1,161 @@
 package com.sap.securestring;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.channels.ReadableByteChannel;
+
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import java.util.stream.Stream;
+
 
 public class SecureString {
   /**
-   * Internal char[] representation of the
-   * String or its hash.
+   * Upper bound for lifetimes, in milliseconds, so that
+   * deadlines stay well within the range of System.nanoTime().
+   */
+  private static final long MAX_LIFETIME = TimeUnit.DAYS.toMillis(100 * 365);
+
+  /**
+   * Lookup table for hex encoding.
+   */
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * Lifecycle: the string can be read.
+   */
+  private static final int LIVE      = 0;
+
+  /**
+   * Lifecycle: the string is being wiped.
+   */
+  private static final int EXPIRING  = 1;
+
+  /**
+   * Lifecycle: the string has been wiped.
+   */
+  private static final int DESTROYED = 2;
+
+  /**
+   * Access to the lifecycle state.
+   */
+  private static final VarHandle STATE;
+
+  static {
+    try {
+      STATE = MethodHandles.lookup().findVarHandle(SecureString.class, "state", int.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * The lifecycle state. It only ever moves forward, from LIVE over
+   * EXPIRING to DESTROYED, which lets readers go without a lock: they
+   * read the string, then check that it is still LIVE.
+   */
+  private volatile int  state          = LIVE;
+
+  /**
+   * Storage used for plain strings, unless configured otherwise. It
+   * can be set with the system property com.sap.securestring.storage.
+   */
+  private static volatile StorageMode defaultStorageMode = StorageMode.valueOf(System.getProperty("com.sap.securestring.storage", StorageMode.HEAP.name()));
+
+  /**
+   * How expiring strings are wiped, unless configured otherwise. It can
+   * be set with the system property com.sap.securestring.expiry.
+   */
+  private static volatile ExpiryMode defaultExpiryMode = ExpiryMode.valueOf(System.getProperty("com.sap.securestring.expiry", ExpiryMode.SHARED.name()));
+
+  /**
+   * How hashed strings are hashed, unless configured otherwise. It can
+   * be set with the system property com.sap.securestring.hash, to the
+   * name of any digest of the Java runtime.
+   */
+  private static volatile SecureHashAlgorithm defaultHashAlgorithm = (System.getProperty("com.sap.securestring.hash") == null) ? SecureHashAlgorithm.SHA_512 : SecureHashAlgorithm.of(System.getProperty("com.sap.securestring.hash"));
+
+  /**
+   * Where hashAsync hashes; null for the default executor.
+   */
+  private static volatile Executor hashExecutor = null;
+
+  /**
+   * Lazily expiring strings, until they are wiped or found destroyed;
+   * see sweepExpired.
+   */
+  private static final ConcurrentLinkedQueue<SecureString> LAZY = new ConcurrentLinkedQueue<SecureString>();
+
+  /**
+   * Number of strings in LAZY, as its size() has to count them.
+   */
+  private static final AtomicInteger LAZY_COUNT = new AtomicInteger();
+
+  /**
+   * Number of lazy strings each one created looks at. More than one,
+   * so that the sweep gets ahead of the strings added.
    */
-  private char[]        string;
+  private static final int LAZY_SWEEP = 2;
 
   /**
-   * The Updater Thread.
+   * Empty storage, which replaces the storage of a destroyed string.
    */
-  private StringUpdater updater        = null;
+  private static final Storage EMPTY = new HeapStorage(new char[0]);
+
+  /**
+   * Internal representation of the
+   * String, if it was not hashed.
+   */
+  private Storage       string;
+
+  /**
+   * Internal representation of the hash of
+   * the String, if it was hashed.
+   */
+  private byte[]        digest;
+
+  /**
+   * The entry with the shared expiry scheduler.
+   */
+  private Expiry        expiry         = null;
+
+  /**
+   * The updater thread, if the string has its own; see ExpiryMode.THREAD.
+   */
+  private Thread        updater        = null;
+
+  /**
+   * Whether the string checks its expiry on access; see ExpiryMode.LAZY.
+   */
+  private boolean       lazy           = false;
 
   /**
    * Update interval for the String, in milliseconds.
@@ -30,14 +164,27 @@ public class SecureString {
 
 
   /**
-   * The creation time for the Object.
+   * The creation time for the Object, in terms of System.nanoTime().
+   */
+  private long          creationTime   = System.nanoTime();
+
+  /**
+   * The wall clock creation time for the Object, in milliseconds. Only
+   * used for reporting.
+   */
+  private long          creationDate   = System.currentTimeMillis();
+
+  /**
+   * The expiry time for the Object, in terms of System.nanoTime(). With
+   * sliding expiry, readers push it forward without a lock.
    */
-  private Date          creationTime   = new Date();
+  private volatile long expiryTime     = this.creationTime;
 
   /**
-   * The expiry time for the Object.
+   * Idle time after which a sliding string expires, in nanoseconds; 0
+   * if the expiry time is fixed.
    */
-  private Date          expiryTime     = new Date();
+  private long          idleTime       = 0;
 
   /**
    * Whether or not an object may life forever. Creating a String with a
@@ -51,14 +198,6 @@ public class SecureString {
   private long          lifeTime       = -1;
 
 
-  /**
-   * Whether the updater thread was started.
-   * The updater thread should only be started
-   * if there are any entries that have a timeout.
-   */
-  private boolean       updaterStarted = false;
-
-
   /**
    * Set to true to get some output.
    */
@@ -69,11 +208,16 @@ public class SecureString {
    */
   private boolean       hashed         = false;
 
+  /**
+   * The algorithm the string was hashed with.
+   */
+  private SecureHashAlgorithm algorithm = defaultHashAlgorithm;
+
 
   /**
    * Encoding to use.
    */
-  private Charset       charset        = Charset.forName("UTF-8");
+  private Charset       charset        = StandardCharsets.UTF_8;
 
 
   /**
@@ -97,7 +241,9 @@ public class SecureString {
     this();
     this.livesForever = true;
     this.hashed       = true;
-    this.string       = hash(str);
+    this.digest       = digest(str);
+
+    created();
   }
 
 
@@ -114,7 +260,9 @@ public class SecureString {
     this.charset      = Charset.forName(charset);
     this.livesForever = true;
     this.hashed       = true;
-    this.string       = hash(str);
+    this.digest       = digest(str);
+
+    created();
   }
 
 
@@ -127,21 +275,19 @@ public class SecureString {
    * It uses the UTF-8 character set.
    *
    * @param str The string.
-   * @param lifetime The lifetime.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
    */
   public SecureString(String str, long lifetime) {
     this();
-    this.hashed = true;
-    this.string = hash(str);
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = true;
+    this.digest       = digest(str);
     if (lifetime >= 0) {
-      this.updater = new StringUpdater();
-      this.updater.setDaemon(true);
-      this.updater.setParent(this);
-      //this.updater.start(); // not until string expires
-      this.livesForever = false;
-      this.expiryTime.setTime(Calendar.getInstance().getTime().getTime() + (lifeTime * 1000));
-      startUpdater();
+      expireAfter(lifetime);
     }
+
+    created();
   }
 
 
@@ -153,22 +299,20 @@ public class SecureString {
    *
    * @param str The string.
    * @param charset The character set.
-   * @param lifetime The lifetime.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
    */
   public SecureString(String str, String charset, long lifetime) {
     this();
-    this.charset = Charset.forName(charset);
-    this.hashed  = true;
-    this.string  = hash(str);
+    this.charset      = Charset.forName(charset);
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = true;
+    this.digest       = digest(str);
     if (lifetime >= 0) {
-      this.updater = new StringUpdater();
-      this.updater.setDaemon(true);
-      this.updater.setParent(this);
-      //this.updater.start(); // not until string expires
-      this.livesForever = false;
-      this.expiryTime.setTime(Calendar.getInstance().getTime().getTime() + (lifeTime * 1000));
-      startUpdater();
+      expireAfter(lifetime);
     }
+
+    created();
   }
 
 
@@ -185,10 +329,12 @@ public class SecureString {
     this.livesForever = true;
     this.hashed       = hashed;
     if (hashed) {
-      this.string = hash(str);
+      this.digest = digest(str);
     } else {
-      this.string = str.toCharArray();
+      this.string = Storage.of(str, defaultStorageMode);
     }
+
+    created();
   }
 
 
@@ -205,10 +351,12 @@ public class SecureString {
     this.livesForever = true;
     this.hashed       = hashed;
     if (hashed) {
-      this.string = hash(str);
+      this.digest = digest(str);
     } else {
-      this.string = str.toCharArray();
+      this.string = Storage.of(str, defaultStorageMode);
     }
+
+    created();
   }
 
 
@@ -219,28 +367,25 @@ public class SecureString {
    * It uses the UTF-8 character set.
    *
    * @param str The string.
-   * @param lifetime The lifetime.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
    * @param hashed Whether to keep it hashed.
    */
   public SecureString(String str, long lifetime, boolean hashed) {
     this();
-    this.lifeTime = lifetime;
-    if (lifetime >= 0) {
-      this.updater = new StringUpdater();
-      this.updater.setDaemon(true);
-      this.updater.setParent(this);
-      //this.updater.start(); // not until string expires
-      this.livesForever = false;
-      this.expiryTime.setTime(Calendar.getInstance().getTime().getTime() + (lifetime));
-      startUpdater();
-    }
-
-    this.hashed = hashed;
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = hashed;
     if (hashed) {
-      this.string = hash(str);
+      this.digest = digest(str);
     } else {
-      this.string = str.toCharArray();
+      this.string = Storage.of(str, defaultStorageMode);
     }
+
+    if (lifetime >= 0) {
+      expireAfter(lifetime);
+    }
+
+    created();
   }
 
 
@@ -250,248 +395,1396 @@ public class SecureString {
    *
    * @param str The string.
    * @param charset The character set.
-   * @param lifetime The lifetime.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
    * @param hashed Whether to keep it hashed.
    */
   public SecureString(String str, String charset, long lifetime, boolean hashed) {
     this();
-    this.charset  = Charset.forName(charset);
-    this.lifeTime = lifetime;
-    if (lifetime >= 0) {
-      this.updater = new StringUpdater();
-      this.updater.setDaemon(true);
-      this.updater.setParent(this);
-      //this.updater.start(); // not until string expires
-      this.livesForever = false;
-      this.expiryTime.setTime(Calendar.getInstance().getTime().getTime() + (lifetime));
-      startUpdater();
-    }
-
-    this.hashed = hashed;
+    this.charset      = Charset.forName(charset);
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = hashed;
     if (hashed) {
-      this.string = hash(str);
+      this.digest = digest(str);
     } else {
-      this.string = str.toCharArray();
+      this.string = Storage.of(str, defaultStorageMode);
+    }
+
+    if (lifetime >= 0) {
+      expireAfter(lifetime);
     }
+
+    created();
   }
 
 
   /**
-   * Get a quick status.
+   * A hashed string, with a hash algorithm of its
+   * own, e.g. PBKDF2 for a password which is to be
+   * stored.
    *
-   * @return Status.
+   * @param str The string.
+   * @param charset The character set.
+   * @param lifetime The lifetime; < 0 to live forever.
+   * @param algorithm The hash algorithm.
    */
-  public String status() {
-    final StringBuffer sb = new StringBuffer();
-
-    sb.append("Value: " + this);
-    sb.append(", Creation Time: " + this.creationTime);
-    sb.append(", Expiry Time: " + this.expiryTime);
-    sb.append(", Expired: " + expired());
+  public SecureString(String str, String charset, long lifetime, SecureHashAlgorithm algorithm) {
+    this();
+    this.charset      = Charset.forName(charset);
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = true;
+    this.algorithm    = algorithm;
+    this.digest       = digest(str);
+    if (lifetime >= 0) {
+      expireAfter(lifetime);
+    }
 
-    return sb.toString();
+    created();
   }
 
 
   /**
-   * Set to debug mode.
+   * Used by ofAll: creates the string, but leaves setting
+   * its expiry time, scheduling its expiry and recording its
+   * creation to the caller.
    *
-   * @param debug true to debug.
+   * @param str The string.
+   * @param charset The character set.
+   * @param hashed Whether to keep it hashed.
+   * @param lifetime The lifetime; < 0 to live forever.
    */
-  public void setDebug(boolean debug) {
-    this.debug = debug;
+  private SecureString(String str, Charset charset, boolean hashed, long lifetime) {
+    this();
+    this.charset      = charset;
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = hashed;
+    if (hashed) {
+      this.digest = digest(str);
+    } else {
+      this.string = Storage.of(str, defaultStorageMode);
+    }
+
+    if (lifetime >= 0) {
+      this.expiry = new Expiry();
+    }
   }
 
 
   /**
-   * Get the Update Interval in ms.
+   * Used by the streaming factories and SecureStringStore:
+   * creates a hashed string from its digest.
    *
-   * @return The Update Interval in ms.
+   * @param digest The digest.
+   * @param algorithm The algorithm of the digest.
+   * @param charset The character set the input was encoded with.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
    */
-  public long getUpdateInterval() {
-    return this.updateInterval;
+  SecureString(byte[] digest, SecureHashAlgorithm algorithm, Charset charset, long lifetime) {
+    this();
+    this.algorithm    = algorithm;
+    this.charset      = charset;
+    this.lifeTime     = lifetime;
+    this.livesForever = true;
+    this.hashed       = true;
+    this.digest       = digest;
+    if (lifetime >= 0) {
+      expireAfter(lifetime);
+    }
+
+    created();
   }
 
 
   /**
-   * Set the Update Interval in ms.
+   * Create many strings at once, e.g. when loading
+   * credentials at startup. The strings are hashed in
+   * parallel on the common ForkJoinPool, and all of
+   * them are registered with the expiry scheduler in
+   * one go. The lifetime counts from when the last one
+   * is hashed.
    *
-   * @param updateInterval the Update Interval in ms.
+   * @param strs The strings.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds, the same for all
+   * strings; < 0 to live forever.
+   * @param hashed Whether to keep them hashed.
+   * @return The SecureStrings, in the order of the collection.
    */
-  public void setUpdateInterval(long updateInterval) {
-    this.updateInterval = updateInterval;
+  public static SecureString[] ofAll(Collection<String> strs, Charset charset, long lifetime, boolean hashed) {
+    final String[]       input  = strs.toArray(new String[strs.size()]);
+    final SecureString[] result = new SecureString[input.length];
+
+    ForkJoinPool.commonPool().invoke(new Batch(input, result, 0, input.length, charset, hashed, lifetime));
+
+    final long expiry = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(Math.max(lifetime, 0), MAX_LIFETIME));
+    for (int i = 0; i < result.length; i++) {
+      if (lifetime >= 0) {
+        result[i].expiryTime = expiry;
+      }
+
+      result[i].created();
+    }
+
+    if ((lifetime >= 0) && (defaultExpiryMode == ExpiryMode.THREAD)) {
+      for (int i = 0; i < result.length; i++) {
+        result[i].startUpdater();
+      }
+    } else if ((lifetime >= 0) && (defaultExpiryMode == ExpiryMode.LAZY)) {
+      for (int i = 0; i < result.length; i++) {
+        result[i].expireLazily();
+      }
+    } else if (lifetime >= 0) {
+      final Expiry[] tasks = new Expiry[result.length];
+      for (int i = 0; i < result.length; i++) {
+        tasks[i] = result[i].expiry;
+      }
+
+      ExpiryScheduler.getInstance().scheduleAll(tasks, expiry);
+    }
+
+    return result;
   }
 
 
   /**
-   * Check whether string was hashed
+   * Create many strings at once; see ofAll(Collection, ...).
    *
-   * @return true if hashed, else false
+   * @param strs The strings.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds, the same for all
+   * strings; < 0 to live forever.
+   * @param hashed Whether to keep them hashed.
+   * @return The SecureStrings, in the order of the stream.
    */
-  public boolean isHashed() {
-    return this.hashed;
+  public static SecureString[] ofAll(Stream<String> strs, Charset charset, long lifetime, boolean hashed) {
+    return ofAll(Arrays.asList(strs.toArray(String[]::new)), charset, lifetime, hashed);
   }
 
 
   /**
-   * Some quick'n'dirty fail-early equals.
+   * Used by SecureStringStore: creates a plain string
+   * from its storage.
    *
-   * If we are hashing, we're expecting
-   * the parameter to be a hash as
-   * produced by our hash function.
-   *
-   * @param with To compare with.
-   * @return True if equals, else false.
+   * @param string The storage.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
    */
-  public boolean equals(String with) {
-    final char[] b = with.toCharArray();
-
-    final int    l = b.length;
-
-    if (this.string == null) {
-      return false;
-    }
-
-    final char[] a = this.hashed ? this.toString().toCharArray() : this.string;
-
-    if (a.length != l) {
-      return false;
-    }
-
-    for (int i = 0; i < l; i++) {
-      try {
-        if (a[i] != b[i]) {
-          return false;
-        }
-      } catch (ArrayIndexOutOfBoundsException e) {
-        // concurrent modification setting to 0
-        return false;
-      }
+  SecureString(Storage string, Charset charset, long lifetime) {
+    this();
+    this.charset      = charset;
+    this.lifeTime     = lifetime;
+    this.livesForever = true;
+    this.string       = string;
+    if (lifetime >= 0) {
+      expireAfter(lifetime);
     }
 
-    return true;
+    created();
   }
 
 
   /**
-   * Destroy the string and stop the update thread. Call this method when the
-   * string is no longer needed, to avoid wasting memory and cpu time. If you
-   * attempt to use the string after calling the destroy method, a null pointer
-   * exception will be thrown.
+   * Used by SecureStringBuilder: creates a string
+   * from its digest or its storage, as configured.
+   *
+   * @param digest The digest; null if the string is not hashed.
+   * @param string The storage, if the string is not hashed.
+   * @param algorithm The algorithm of the digest.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @param expiryMode How the string is wiped once it expires.
+   * @param sliding Whether the lifetime is an idle timeout.
    */
-  public synchronized void destroy() {
-    if (this.debug) {
-      System.out.println("Destroying: " + new Date() + " " + this.expired());
+  SecureString(byte[] digest, Storage string, SecureHashAlgorithm algorithm, Charset charset, long lifetime, ExpiryMode expiryMode, boolean sliding) {
+    this();
+    this.algorithm    = algorithm;
+    this.charset      = charset;
+    this.lifeTime     = lifetime;
+    this.livesForever = lifetime < 0;
+    this.hashed       = digest != null;
+    this.digest       = digest;
+    this.string       = string;
+    if (lifetime >= 0) {
+      expireAfter(lifetime, expiryMode);
+      setSliding(sliding);
     }
 
-    if (this.string != null) {
-      final int l = this.string.length;
-      for (int i = 0; i < l; i++) {
-        string[i] = '\0'; // kidding
-      }
+    created();
+  }
 
-      string = new char[0];
-    }
 
-    try {
-      this.updater.setActive(false);
-      this.updater.setDaemon(false);
-      this.updater.interrupt();
-      this.updater = null;
-    } catch (IllegalThreadStateException e) {}
+  /**
+   * Get a builder, to create strings with a
+   * configuration which is resolved only once;
+   * see SecureStringBuilder.
+   *
+   * @return The builder.
+   */
+  public static SecureStringBuilder builder() {
+    return new SecureStringBuilder();
   }
 
 
   /**
-   * Some hash function.
+   * Create a hashed string from chars, without ever
+   * creating a String of them. The chars are encoded
+   * and hashed in small chunks; the array is left as
+   * it is, so the caller should wipe it.
    *
-   * @param str
-   * @return The hashed for the string.
+   * @param chars The chars.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The SecureString.
    */
-  public char[] hash(String str) {
-    return SecureString.hash(str, this.charset);
+  public static SecureString fromChars(char[] chars, Charset charset, long lifetime) {
+    return fromChars(CharBuffer.wrap(chars), charset, lifetime);
   }
 
 
   /**
-   * Some hash function.
+   * Create a hashed string from the remaining chars of
+   * a buffer; see fromChars(char[], ...). The position
+   * of the buffer is not changed.
    *
-   * @param str
-   * @param charset The character set. If you want to use this function,
-   * you can create the character set like
-   * <pre>
-   *   final java.nio.charset.Charset charset = Charset.forName("UTF-8");
-   * </pre>
-   * @return The hashed for the string.
+   * @param chars The chars.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The SecureString.
    */
-  public static char[] hash(String str, Charset charset) {
+  public static SecureString fromChars(CharBuffer chars, Charset charset, long lifetime) {
+    byte[] digest = new byte[0];
     try {
-      final MessageDigest md = MessageDigest.getInstance("SHA-512");
-      md.update(str.getBytes(charset));
-
-      final byte[] hash   = md.digest();
-      final int    l      = hash.length;
-      final char[] result = new char[l];
-      for (int i = 0; i < l; i++) {
-        result[i] = (char) hash[i];
-      }
-
-      return result;
+      digest = DigestEngine.get(defaultHashAlgorithm).digest(chars, charset);
     } catch (NoSuchAlgorithmException e) {
       System.err.println("! Caught Exception: " + e.getMessage());
     }
 
-    return new char[0];
+    return new SecureString(digest, defaultHashAlgorithm, charset, lifetime);
   }
 
 
   /**
-   * A toString that re-encodes the char
-   * array into a String, and if it was
-   * hashed, generates some hex string.
+   * Create a hashed string from all bytes of a channel,
+   * e.g. a key file. The bytes are hashed as they are
+   * read, through a fixed buffer which is wiped
+   * afterwards, so memory use does not grow with the
+   * input. The channel is not closed.
+   *
+   * @param channel The channel.
+   * @param charset The character set the bytes are encoded with; used
+   * when comparing with a String later on.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The SecureString.
+   * @throws IOException If reading fails.
    */
-  public synchronized String toString() {
-    if (this.string == null) {
-      return "";
-    }
-
-    if (this.hashed) {
-      final StringBuffer hexString = new StringBuffer();
-      final int          l         = this.string.length;
-      for (int i = 0; i < l; i++) {
-        if ((0xff & this.string[i]) < 0x10) {
-          hexString.append("0" + Integer.toHexString((0xFF & this.string[i])));
-        } else {
-          hexString.append(Integer.toHexString(0xFF & this.string[i]));
-        }
-      }
-
-      return hexString.toString();
+  public static SecureString fromChannel(ReadableByteChannel channel, Charset charset, long lifetime) throws IOException {
+    byte[] digest = new byte[0];
+    try {
+      digest = DigestEngine.get(defaultHashAlgorithm).digest(channel);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
     }
 
-    return new String(this.string);
+    return new SecureString(digest, defaultHashAlgorithm, charset, lifetime);
   }
 
 
   /**
-   * Start the updater thread. This should only
-   * be done if the string expires,
-   * i.e. it has a lifetime >=0.
+   * Create a hashed string from all bytes of a stream;
+   * see fromChannel. The stream is not closed.
+   *
+   * @param stream The stream.
+   * @param charset The character set the bytes are encoded with; used
+   * when comparing with a String later on.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The SecureString.
+   * @throws IOException If reading fails.
    */
-  private void startUpdater() {
-    if (!this.updaterStarted) {
-      updater.start();
-      this.updaterStarted = true;
+  public static SecureString fromStream(InputStream stream, Charset charset, long lifetime) throws IOException {
+    byte[] digest = new byte[0];
+    try {
+      digest = DigestEngine.get(defaultHashAlgorithm).digest(stream);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
     }
+
+    return new SecureString(digest, defaultHashAlgorithm, charset, lifetime);
   }
 
 
   /**
-   * Get the lifetime for the object in the cache.
+   * Hash a string on the hash executor, so that the
+   * calling thread, e.g. an event loop, does not
+   * block; see setHashExecutor. It is hashed with
+   * the default hash algorithm.
    *
-   * @return The lifetime, in milliseconds.
-   */
-  protected long getLifeTime() {
+   * If the executor is saturated, the future fails
+   * with a RejectedExecutionException right away,
+   * so the caller can back off.
+   *
+   * @param str The string.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The hashed SecureString, once it is ready.
+   */
+  public static CompletableFuture<SecureString> hashAsync(String str, Charset charset, long lifetime) {
+    return hashAsync(str, charset, lifetime, defaultHashAlgorithm);
+  }
+
+
+  /**
+   * Hash a string on the hash executor, with the
+   * given algorithm; see hashAsync(String, ...).
+   *
+   * @param str The string.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @param algorithm The hash algorithm.
+   * @return The hashed SecureString, once it is ready.
+   */
+  public static CompletableFuture<SecureString> hashAsync(final String str, final Charset charset, final long lifetime, final SecureHashAlgorithm algorithm) {
+    return async(new HashTask() {
+      public SecureString hash() throws Exception {
+        return new SecureString(DigestEngine.get(algorithm).digest(str, charset), algorithm, charset, lifetime);
+      }
+    });
+  }
+
+
+  /**
+   * Hash chars on the hash executor, with the given
+   * algorithm; see hashAsync(String, ...). The array
+   * must be left alone until the future is done; it
+   * can be wiped afterwards.
+   *
+   * @param chars The chars.
+   * @param charset The character set.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @param algorithm The hash algorithm.
+   * @return The hashed SecureString, once it is ready.
+   */
+  public static CompletableFuture<SecureString> hashAsync(final char[] chars, final Charset charset, final long lifetime, final SecureHashAlgorithm algorithm) {
+    return async(new HashTask() {
+      public SecureString hash() throws Exception {
+        return new SecureString(DigestEngine.get(algorithm).digest(CharBuffer.wrap(chars), charset), algorithm, charset, lifetime);
+      }
+    });
+  }
+
+
+  /**
+   * Hash all bytes of a channel on the hash executor,
+   * e.g. a large key file; see fromChannel and
+   * hashAsync(String, ...). The channel is not closed.
+   *
+   * @param channel The channel.
+   * @param charset The character set the bytes are encoded with.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The hashed SecureString, once it is ready.
+   */
+  public static CompletableFuture<SecureString> hashAsync(final ReadableByteChannel channel, final Charset charset, final long lifetime) {
+    final SecureHashAlgorithm algorithm = defaultHashAlgorithm;
+
+    return async(new HashTask() {
+      public SecureString hash() throws Exception {
+        return new SecureString(DigestEngine.get(algorithm).digest(channel), algorithm, charset, lifetime);
+      }
+    });
+  }
+
+
+  /**
+   * Run a hash task on the hash executor.
+   *
+   * @param task The task.
+   * @return The result of the task, once it is ready.
+   */
+  private static CompletableFuture<SecureString> async(final HashTask task) {
+    final CompletableFuture<SecureString> future = new CompletableFuture<SecureString>();
+
+    try {
+      getHashExecutor().execute(new Runnable() {
+        public void run() {
+          try {
+            future.complete(task.hash());
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      future.completeExceptionally(e);
+    }
+
+    return future;
+  }
+
+
+  /**
+   * Get a quick status.
+   *
+   * @return Status.
+   */
+  public String status() {
+    final StringBuffer sb = new StringBuffer();
+
+    sb.append("Value: " + this);
+    sb.append(", Creation Time: " + getCreationTime());
+    sb.append(", Expiry Time: " + getExpiryTime());
+    sb.append(", Expired: " + expired());
+
+    return sb.toString();
+  }
+
+
+  /**
+   * Get the wall clock creation time.
+   *
+   * @return The creation time.
+   */
+  public Date getCreationTime() {
+    return new Date(this.creationDate);
+  }
+
+
+  /**
+   * Get the wall clock expiry time. For strings which live forever,
+   * this is the creation time.
+   *
+   * @return The expiry time.
+   */
+  public Date getExpiryTime() {
+    return new Date(this.creationDate + TimeUnit.NANOSECONDS.toMillis(this.expiryTime - this.creationTime));
+  }
+
+
+  /**
+   * Switch between sliding and fixed expiry. With sliding
+   * expiry, the lifetime becomes an idle timeout: each
+   * successful equals or toString pushes the expiry time
+   * forward by the lifetime. This has no effect on strings
+   * which live forever.
+   *
+   * @param sliding true for sliding expiry.
+   */
+  public void setSliding(boolean sliding) {
+    this.idleTime = sliding ? this.expiryTime - this.creationTime : 0;
+  }
+
+
+  /**
+   * Check whether the string has sliding expiry.
+   *
+   * @return true if sliding, else false.
+   */
+  public boolean isSliding() {
+    return this.idleTime > 0;
+  }
+
+
+  /**
+   * Set to debug mode.
+   *
+   * @param debug true to debug.
+   */
+  public void setDebug(boolean debug) {
+    this.debug = debug;
+  }
+
+
+  /**
+   * Get the Update Interval in ms.
+   *
+   * Expiring strings are wiped at the expiry time, by the shared
+   * scheduler or their own updater thread, so the interval is no
+   * longer used for polling.
+   *
+   * @return The Update Interval in ms.
+   */
+  public long getUpdateInterval() {
+    return this.updateInterval;
+  }
+
+
+  /**
+   * Set the Update Interval in ms.
+   *
+   * @param updateInterval the Update Interval in ms.
+   */
+  public void setUpdateInterval(long updateInterval) {
+    this.updateInterval = updateInterval;
+  }
+
+
+  /**
+   * Get where plain strings keep their chars, unless configured otherwise.
+   *
+   * @return The storage mode.
+   */
+  public static StorageMode getDefaultStorageMode() {
+    return defaultStorageMode;
+  }
+
+
+  /**
+   * Set where plain strings keep their chars, unless configured otherwise.
+   * This only affects strings created afterwards.
+   *
+   * @param mode The storage mode.
+   */
+  public static void setDefaultStorageMode(StorageMode mode) {
+    defaultStorageMode = mode;
+  }
+
+
+  /**
+   * Get how long strings of StorageMode.ENCRYPTED keep their chars
+   * decrypted after a read.
+   *
+   * @return The time, in milliseconds; 0 if they are not cached.
+   */
+  public static long getEncryptedCacheTime() {
+    return EncryptedStorage.getCacheTime();
+  }
+
+
+  /**
+   * Set how long strings of StorageMode.ENCRYPTED keep their chars
+   * decrypted after a read, for strings which are read very often;
+   * they are not cached unless set, or set with the system property
+   * com.sap.securestring.encrypted.cache. Keep it short: a few
+   * milliseconds save most of the decryption under heavy load.
+   *
+   * @param millis The time, in milliseconds; 0 for not at all.
+   */
+  public static void setEncryptedCacheTime(long millis) {
+    EncryptedStorage.setCacheTime(millis);
+  }
+
+
+  /**
+   * Get how expiring strings are wiped, unless configured otherwise.
+   *
+   * @return The expiry mode.
+   */
+  public static ExpiryMode getDefaultExpiryMode() {
+    return defaultExpiryMode;
+  }
+
+
+  /**
+   * Set how expiring strings are wiped, unless configured otherwise.
+   * This only affects strings created afterwards.
+   *
+   * @param mode The expiry mode.
+   */
+  public static void setDefaultExpiryMode(ExpiryMode mode) {
+    defaultExpiryMode = mode;
+  }
+
+
+  /**
+   * Wipe all strings of ExpiryMode.LAZY which have expired, but
+   * were not read since. Call this now and then, e.g. from a
+   * housekeeping task, if many lazy strings are created and then
+   * dropped; creating lazy strings sweeps a few of them, too.
+   *
+   * @return The number of strings wiped.
+   */
+  public static int sweepExpired() {
+    return sweep(LAZY_COUNT.get());
+  }
+
+
+  /**
+   * Look at lazy strings in the order they were registered, wipe
+   * the ones which expired, and drop those which are destroyed.
+   * Strings still live go to the back of the queue.
+   *
+   * @param n The number of strings to look at, at most.
+   * @return The number of strings wiped.
+   */
+  private static int sweep(int n) {
+    int wiped = 0;
+
+    for (int i = 0; i < n; i++) {
+      final SecureString s = LAZY.poll();
+      if (s == null) {
+        break;
+      }
+
+      LAZY_COUNT.decrementAndGet();
+
+      if (s.state != LIVE) {
+        continue;
+      }
+
+      if (s.expired()) {
+        s.destroy(true);
+        wiped++;
+      } else {
+        LAZY_COUNT.incrementAndGet();
+        LAZY.offer(s);
+      }
+    }
+
+    return wiped;
+  }
+
+
+  /**
+   * Get where hashAsync hashes.
+   *
+   * @return The executor.
+   */
+  public static Executor getHashExecutor() {
+    final Executor executor = hashExecutor;
+
+    return (executor != null) ? executor : DefaultHashExecutor.INSTANCE;
+  }
+
+
+  /**
+   * Set where hashAsync hashes. By default, this is
+   * a pool of daemon threads, one per processor,
+   * with a bounded queue; once that is full, hashing
+   * is rejected. An executor which rejects work by
+   * throwing RejectedExecutionException has its
+   * futures fail the same way.
+   *
+   * @param executor The executor; null for the default.
+   */
+  public static void setHashExecutor(Executor executor) {
+    hashExecutor = executor;
+  }
+
+
+  /**
+   * Get how hashed strings are hashed, unless configured otherwise.
+   *
+   * @return The hash algorithm.
+   */
+  public static SecureHashAlgorithm getDefaultHashAlgorithm() {
+    return defaultHashAlgorithm;
+  }
+
+
+  /**
+   * Set how hashed strings are hashed, unless configured otherwise.
+   * This only affects strings created afterwards; existing strings
+   * keep comparing with the algorithm they were hashed with.
+   *
+   * @param algorithm The hash algorithm.
+   */
+  public static void setDefaultHashAlgorithm(SecureHashAlgorithm algorithm) {
+    defaultHashAlgorithm = algorithm;
+  }
+
+
+  /**
+   * Get the algorithm the string was hashed with.
+   *
+   * @return The hash algorithm; null if not hashed.
+   */
+  public SecureHashAlgorithm getHashAlgorithm() {
+    return this.hashed ? this.algorithm : null;
+  }
+
+
+  /**
+   * Check whether string was hashed
+   *
+   * @return true if hashed, else false
+   */
+  public boolean isHashed() {
+    return this.hashed;
+  }
+
+
+  /**
+   * Check whether the string was destroyed, explicitly
+   * or because it expired.
+   *
+   * @return true if destroyed, else false
+   */
+  public boolean isDestroyed() {
+    lapsed();
+
+    return this.state != LIVE;
+  }
+
+
+  /**
+   * An equals which does not fail early: it
+   * takes the same time wherever the strings
+   * differ, so its timing gives nothing away.
+   *
+   * If we are hashing, we're expecting
+   * the parameter to be a hash as
+   * produced by our hash function, in
+   * the hex form returned by toString.
+   *
+   * This does not lock; if the string is
+   * destroyed while comparing, the result
+   * is false.
+   *
+   * @param with To compare with.
+   * @return True if equals, else false.
+   */
+  public boolean equals(String with) {
+    final long start = SecureStringMetrics.ENABLED ? System.nanoTime() : 0;
+
+    if (lapsed()) {
+      return compared(false, start);
+    }
+
+    if (this.hashed) {
+      final byte[] d = this.digest;
+
+      return compared((d != null) && ConstantTime.equalsHex(d, with) && touch(), start);
+    }
+
+    final Storage a = this.string;
+
+    return compared((a != null) && a.contentEquals(with) && touch(), start);
+  }
+
+
+  /**
+   * Compare in constant time: however early the
+   * chars differ, the comparison takes the same
+   * time. Nothing is allocated.
+   *
+   * If we are hashing, we're expecting the
+   * parameter to be the hex form returned by
+   * toString, as with equals.
+   *
+   * @param with To compare with.
+   * @return True if equals, else false.
+   */
+  public boolean equalsConstantTime(char[] with) {
+    final long start = SecureStringMetrics.ENABLED ? System.nanoTime() : 0;
+
+    if (lapsed()) {
+      return compared(false, start);
+    }
+
+    if (this.hashed) {
+      final byte[] d = this.digest;
+
+      return compared((d != null) && ConstantTime.equalsHex(d, with) && touch(), start);
+    }
+
+    final Storage a = this.string;
+
+    return compared((a != null) && a.contentEquals(with) && touch(), start);
+  }
+
+
+  /**
+   * Compare the digest of a hashed string with
+   * the given one in constant time, as returned
+   * by digest. Nothing is allocated.
+   *
+   * @param digest To compare with.
+   * @return True if equals, else false; always false if the string is
+   * not hashed.
+   */
+  public boolean equalsConstantTime(byte[] digest) {
+    final long start = SecureStringMetrics.ENABLED ? System.nanoTime() : 0;
+
+    if (!this.hashed || lapsed()) {
+      return compared(false, start);
+    }
+
+    final byte[] d = this.digest;
+
+    return compared((d != null) && ConstantTime.equals(d, digest) && touch(), start);
+  }
+
+
+  /**
+   * Compare with a plain string, e.g. a password
+   * to check against a hashed string. The
+   * candidate is hashed with the digest engine of
+   * the thread, and the hashes are compared in
+   * constant time; nothing is allocated, and no
+   * hex form is needed.
+   *
+   * For strings which are not hashed, this
+   * is the same as equals.
+   *
+   * @param candidate To compare with.
+   * @return True if equals, else false.
+   */
+  public boolean equalsPlain(String candidate) {
+    final long start = SecureStringMetrics.ENABLED ? System.nanoTime() : 0;
+
+    if (!this.hashed) {
+      return equals(candidate);
+    }
+
+    final byte[] d = this.digest;
+    if ((d == null) || lapsed()) {
+      return compared(false, start);
+    }
+
+    try {
+      return compared(DigestEngine.get(this.algorithm).matches(candidate, this.charset, d) && touch(), start);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    }
+
+    return compared(false, start);
+  }
+
+
+  /**
+   * Compare with plain chars; see equalsPlain(String).
+   * The chars are left as they are, so the caller
+   * should wipe them.
+   *
+   * @param candidate To compare with.
+   * @return True if equals, else false.
+   */
+  public boolean equalsPlain(char[] candidate) {
+    final long start = SecureStringMetrics.ENABLED ? System.nanoTime() : 0;
+
+    if (!this.hashed) {
+      return equalsConstantTime(candidate);
+    }
+
+    final byte[] d = this.digest;
+    if ((d == null) || lapsed()) {
+      return compared(false, start);
+    }
+
+    try {
+      return compared(DigestEngine.get(this.algorithm).matches(candidate, this.charset, d) && touch(), start);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    }
+
+    return compared(false, start);
+  }
+
+
+  /**
+   * Record a comparison, if metrics are enabled.
+   *
+   * @param result The result.
+   * @param start When the comparison started.
+   * @return The result.
+   */
+  private boolean compared(boolean result, long start) {
+    return SecureStringMetrics.ENABLED ? SecureStringMetrics.compare(this.hashed, result, start) : result;
+  }
+
+
+  /**
+   * Destroy the string and cancel its expiry. Call this method when the
+   * string is no longer needed, to avoid wasting memory and cpu time. If you
+   * attempt to use the string after calling the destroy method, a null pointer
+   * exception will be thrown.
+   *
+   * Only the first call does anything; concurrent readers either see
+   * the string as it was, or nothing.
+   */
+  public void destroy() {
+    destroy(false);
+  }
+
+
+  /**
+   * Destroy the string, recording whether it expired.
+   *
+   * @param expired Whether the string expired, or was destroyed before.
+   */
+  private void destroy(boolean expired) {
+    if (!STATE.compareAndSet(this, LIVE, EXPIRING)) {
+      return;
+    }
+
+    if (SecureStringMetrics.ENABLED) {
+      SecureStringMetrics.destroy(expired, System.nanoTime() - this.creationTime);
+    }
+
+    if (this.debug) {
+      System.out.println("Destroying: " + new Date() + " " + this.expired());
+    }
+
+    if (this.string != null) {
+      string.wipe();
+      string = EMPTY;
+    }
+
+    if (this.digest != null) {
+      final int l = this.digest.length;
+      for (int i = 0; i < l; i++) {
+        digest[i] = 0;
+      }
+
+      digest = new byte[0];
+    }
+
+    this.state = DESTROYED;
+
+    if (this.expiry != null) {
+      ExpiryScheduler.getInstance().cancel(this.expiry);
+    }
+
+    if (this.updater != null) {
+      LockSupport.unpark(this.updater);
+    }
+  }
+
+
+  /**
+   * Some hash function.
+   *
+   * @param str
+   * @return The hashed for the string.
+   */
+  public char[] hash(String str) {
+    return chars(digest(str));
+  }
+
+
+  /**
+   * Some hash function.
+   *
+   * This returns one byte of the hash per char;
+   * use digest for the compact form.
+   *
+   * @param str
+   * @param charset The character set. If you want to use this function,
+   * you can create the character set like
+   * <pre>
+   *   final java.nio.charset.Charset charset = Charset.forName("UTF-8");
+   * </pre>
+   * @return The hashed for the string.
+   */
+  public static char[] hash(String str, Charset charset) {
+    return chars(digest(str, charset));
+  }
+
+
+  /**
+   * Widen a hash to one char per byte, as hash
+   * returns it.
+   *
+   * @param hash The hash.
+   * @return The chars.
+   */
+  private static char[] chars(byte[] hash) {
+    final int    l      = hash.length;
+    final char[] result = new char[l];
+    for (int i = 0; i < l; i++) {
+      result[i] = (char) hash[i];
+    }
+
+    return result;
+  }
+
+
+  /**
+   * The hash of the string, as bytes, with the
+   * default hash algorithm (SHA-512, unless
+   * configured otherwise).
+   *
+   * This uses a digest engine per thread, which
+   * encodes the string without copying it into
+   * a byte array first.
+   *
+   * @param str
+   * @param charset The character set.
+   * @return The hash for the string.
+   */
+  public static byte[] digest(String str, Charset charset) {
+    return digest(str, charset, defaultHashAlgorithm);
+  }
+
+
+  /**
+   * The hash of the string, as bytes, with the
+   * given hash algorithm.
+   *
+   * @param str
+   * @param charset The character set.
+   * @param algorithm The hash algorithm.
+   * @return The hash for the string.
+   */
+  public static byte[] digest(String str, Charset charset, SecureHashAlgorithm algorithm) {
+    try {
+      return DigestEngine.get(algorithm).digest(str, charset);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    }
+
+    return new byte[0];
+  }
+
+
+  /**
+   * A toString that re-encodes the char
+   * array into a String, and if it was
+   * hashed, generates some hex string.
+   */
+  public String toString() {
+    final String result;
+
+    if (lapsed()) {
+      return "";
+    }
+
+    if (this.hashed) {
+      final byte[] d = this.digest;
+      if (d == null) {
+        return "";
+      }
+
+      result = new String(toHex(d));
+    } else {
+      final Storage a = this.string;
+      if (a == null) {
+        return "";
+      }
+
+      result = a.toString();
+    }
+
+    return touch() ? result : "";
+  }
+
+
+  /**
+   * Lend the chars to a consumer, without creating a String of them;
+   * e.g. to pass a password on to a JDBC driver. If we are hashing,
+   * the chars are the hash, in the hex form returned by toString.
+   *
+   * The consumer gets a read-only view of a per thread scratch buffer,
+   * which is wiped and emptied as soon as the consumer returns; the
+   * view must not be kept. Nothing but the view is allocated, once the
+   * scratch buffer of the thread is large enough. A read counts like
+   * toString, so it pushes a sliding expiry forward.
+   *
+   * @param consumer The consumer.
+   * @param <E> The exception the consumer may throw.
+   * @return True if the consumer got the chars; false if the string
+   * was destroyed.
+   * @throws E If the consumer fails.
+   */
+  public <E extends Exception> boolean withChars(CharConsumer<E> consumer) throws E {
+    if (lapsed()) {
+      return false;
+    }
+
+    final Borrow borrow = Borrow.get();
+
+    try {
+      final int length;
+
+      if (this.hashed) {
+        final byte[] d = this.digest;
+        if (d == null) {
+          return false;
+        }
+
+        length = d.length * 2;
+
+        final char[] hex = borrow.chars(length);
+        for (int i = 0; i < d.length; i++) {
+          hex[2 * i]     = HEX[(d[i] >> 4) & 0xF];
+          hex[2 * i + 1] = HEX[d[i] & 0xF];
+        }
+      } else {
+        final Storage a = this.string;
+        if (a == null) {
+          return false;
+        }
+
+        length = a.length();
+        a.getChars(borrow.chars(length), length);
+      }
+
+      if (!touch()) {
+        return false;
+      }
+
+      consumer.accept(borrow.charView(length));
+
+      return true;
+    } finally {
+      borrow.release();
+    }
+  }
+
+
+  /**
+   * Lend the bytes to a consumer, without creating a String of them;
+   * e.g. to initialize a Mac or Cipher with a key. If we are hashing,
+   * the bytes are the hash; otherwise the chars, encoded with the
+   * character set of the string.
+   *
+   * The consumer gets a read-only view of a per thread scratch buffer
+   * in direct memory, which is wiped as soon as the consumer returns;
+   * the view must not be kept. See withChars.
+   *
+   * @param consumer The consumer.
+   * @param <E> The exception the consumer may throw.
+   * @return True if the consumer got the bytes; false if the string
+   * was destroyed.
+   * @throws E If the consumer fails.
+   */
+  public <E extends Exception> boolean withBytes(ByteBufferConsumer<E> consumer) throws E {
+    if (lapsed()) {
+      return false;
+    }
+
+    final Borrow borrow = Borrow.get();
+
+    try {
+      final ByteBuffer bytes;
+
+      if (this.hashed) {
+        final byte[] d = this.digest;
+        if (d == null) {
+          return false;
+        }
+
+        bytes = borrow.byteView(d);
+      } else {
+        final Storage a = this.string;
+        if (a == null) {
+          return false;
+        }
+
+        final int length = a.length();
+        a.getChars(borrow.chars(length), length);
+
+        bytes = borrow.byteView(length, this.charset);
+      }
+
+      if (!touch()) {
+        return false;
+      }
+
+      consumer.accept(bytes);
+
+      return true;
+    } finally {
+      borrow.release();
+    }
+  }
+
+
+  /**
+   * Check, before reading, whether a lazy string is past its
+   * deadline, and if so, destroy it right away, so that nothing
+   * is read, and the first access wipes it.
+   *
+   * @return True if the string is past its deadline, and gone.
+   */
+  private boolean lapsed() {
+    if (this.lazy && (this.state == LIVE) && expired()) {
+      destroy(true);
+
+      return true;
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Validate a read, like isLive, and if it was valid and
+   * the string has sliding expiry, push the expiry time
+   * forward. The expiry time is only written when it moves
+   * by more than a sixteenth of the idle time, so readers
+   * don't keep writing to the same field; the scheduler
+   * picks up the new time when the old one comes due.
+   * Lazy strings past their deadline are caught by lapsed
+   * before the read; this only catches a concurrent
+   * destroy.
+   *
+   * @return True if what was read is valid.
+   */
+  private boolean touch() {
+    if (!isLive()) {
+      return false;
+    }
+
+    final long idle = this.idleTime;
+    if (idle > 0) {
+      final long deadline = System.nanoTime() + idle;
+      if (deadline - this.expiryTime > (idle >> 4)) {
+        this.expiryTime = deadline;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Check, after reading the string, that it has not been destroyed
+   * in the meantime. As the state never goes back to LIVE, this one
+   * check is enough to validate everything read before.
+   *
+   * @return True if what was read is valid.
+   */
+  private boolean isLive() {
+    VarHandle.loadLoadFence();
+
+    return this.state == LIVE;
+  }
+
+
+  /**
+   * The hash of the string, for the given character set.
+   *
+   * @param str
+   * @return The hash for the string.
+   */
+  private byte[] digest(String str) {
+    return SecureString.digest(str, this.charset, this.algorithm);
+  }
+
+
+  /**
+   * Hex encode some bytes.
+   *
+   * @param bytes The bytes.
+   * @return The hex form, two chars per byte.
+   */
+  private static char[] toHex(byte[] bytes) {
+    final int    l   = bytes.length;
+    final char[] hex = new char[l * 2];
+    for (int i = 0; i < l; i++) {
+      hex[2 * i]     = HEX[(bytes[i] >> 4) & 0xF];
+      hex[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+
+    return hex;
+  }
+
+
+  /**
+   * Record the creation of the string, once it is set up.
+   */
+  private void created() {
+    if (SecureStringMetrics.ENABLED) {
+      SecureStringMetrics.created(this.hashed, this.livesForever ? -1 : TimeUnit.NANOSECONDS.toMillis(this.expiryTime - this.creationTime));
+    }
+  }
+
+
+  /**
+   * Let the string expire after the given lifetime, counted from
+   * its creation.
+   *
+   * @param lifetime The lifetime, in milliseconds.
+   */
+  private void expireAfter(long lifetime) {
+    expireAfter(lifetime, defaultExpiryMode);
+  }
+
+
+  /**
+   * Let the string expire after the given lifetime, counted from
+   * its creation.
+   *
+   * @param lifetime The lifetime, in milliseconds.
+   * @param mode How the string is wiped once it expires.
+   */
+  private void expireAfter(long lifetime, ExpiryMode mode) {
+    this.livesForever = false;
+    this.expiryTime   = this.creationTime + TimeUnit.MILLISECONDS.toNanos(Math.min(lifetime, MAX_LIFETIME));
+
+    if (mode == ExpiryMode.THREAD) {
+      startUpdater();
+    } else if (mode == ExpiryMode.LAZY) {
+      expireLazily();
+    } else {
+      scheduleExpiry();
+    }
+  }
+
+
+  /**
+   * Start an updater thread of its own for the string,
+   * which parks until the string expires.
+   */
+  private void startUpdater() {
+    this.expiry  = null;
+    this.updater = VirtualThreads.newThread(new StringUpdater(), "SecureString Updater");
+    this.updater.start();
+
+    if (SecureStringMetrics.ENABLED) {
+      SecureStringMetrics.getInstance().updaterThreadsStarted.increment();
+    }
+  }
+
+
+  /**
+   * Let the string expire on access, and register it for
+   * sweepExpired. Each lazy string created first looks at the
+   * oldest few, and moves those still live to the back; as it looks
+   * at more than it adds, every string comes up now and then, and
+   * strings which are never read again, or were destroyed, do not
+   * pile up behind long-lived ones.
+   */
+  private void expireLazily() {
+    this.expiry = null;
+    this.lazy   = true;
+
+    sweep(LAZY_SWEEP);
+
+    LAZY_COUNT.incrementAndGet();
+    LAZY.offer(this);
+  }
+
+
+  /**
+   * Register the string with the shared expiry scheduler. This should
+   * only be done if the string expires, i.e. it has a lifetime >=0.
+   */
+  private void scheduleExpiry() {
+    if (this.expiry == null) {
+      this.expiry = new Expiry();
+    }
+
+    ExpiryScheduler.getInstance().schedule(this.expiry, this.expiryTime);
+  }
+
+
+  /**
+   * Get the memory taken by the string or its hash,
+   * as used to bound the size of a cache.
+   *
+   * @return The size, in bytes.
+   */
+  int weight() {
+    if (this.hashed) {
+      final byte[] d = this.digest;
+
+      return (d == null) ? 0 : d.length;
+    }
+
+    final Storage a = this.string;
+
+    return (a == null) ? 0 : a.length() * 2;
+  }
+
+
+  /**
+   * Get the lifetime for the object in the cache.
+   *
+   * @return The lifetime, in milliseconds.
+   */
+  protected long getLifeTime() {
     return this.lifeTime;
   }
 
@@ -506,76 +1799,212 @@ public class SecureString {
       return false;
     }
 
-    final Date currentTime = Calendar.getInstance().getTime();
+    return System.nanoTime() - this.expiryTime >= 0;
+  }
+
 
-    return this.expiryTime.before(currentTime);
+  /**
+   * Hashing to be done by hashAsync.
+   */
+  private interface HashTask {
+    /**
+     * Hash.
+     *
+     * @return The hashed SecureString.
+     * @throws Exception If hashing fails.
+     */
+    SecureString hash() throws Exception;
   }
 
 
   /**
-   * Updater thread used to update the string at the specified interval.
+   * The default executor of hashAsync, created when
+   * it is first used.
    */
-  private class StringUpdater extends Thread {
+  private static final class DefaultHashExecutor {
     /**
-     * The invoking (SecureString) object.
+     * Number of hash tasks which may wait.
      */
-    private SecureString parent = null;
+    private static final int                QUEUE    = 1024;
 
     /**
-     * Whether or not the Thread is active.
+     * The executor.
      */
-    private boolean      active = true;
+    private static final ThreadPoolExecutor INSTANCE = new ThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors(), 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE), new ThreadFactory() {
+      public Thread newThread(Runnable r) {
+        final Thread thread = new Thread(r, "SecureString Hasher");
+        thread.setDaemon(true);
 
+        return thread;
+      }
+    });
+
+    static {
+      INSTANCE.allowCoreThreadTimeOut(true);
+    }
+  }
 
+
+  /**
+   * Creates a slice of a batch of strings, splitting
+   * it up for the ForkJoinPool.
+   */
+  private static class Batch extends RecursiveAction {
     /**
-     * Run the updater thread.
+     * Batches are never serialized, but RecursiveAction is Serializable.
      */
-    public void run() {
-      while (true) {
-        if (this.parent.debug) {
-          System.out.println("Testing   : " + new Date() + " " + this.parent.expired());
+    private static final long    serialVersionUID = 1L;
+
+    /**
+     * Slices smaller than this are not split up further.
+     */
+    private static final int     THRESHOLD        = 256;
+
+    /**
+     * The strings.
+     */
+    private final String[]       input;
+
+    /**
+     * Receives the SecureStrings.
+     */
+    private final SecureString[] result;
+
+    /**
+     * First index of the slice.
+     */
+    private final int            from;
+
+    /**
+     * Index after the slice.
+     */
+    private final int            to;
+
+    /**
+     * The character set.
+     */
+    private final Charset        charset;
+
+    /**
+     * Whether to keep the strings hashed.
+     */
+    private final boolean        hashed;
+
+    /**
+     * The lifetime; < 0 to live forever.
+     */
+    private final long           lifetime;
+
+
+    /**
+     * Create a slice.
+     *
+     * @param input The strings.
+     * @param result Receives the SecureStrings.
+     * @param from First index of the slice.
+     * @param to Index after the slice.
+     * @param charset The character set.
+     * @param hashed Whether to keep them hashed.
+     * @param lifetime The lifetime; < 0 to live forever.
+     */
+    Batch(String[] input, SecureString[] result, int from, int to, Charset charset, boolean hashed, long lifetime) {
+      this.input    = input;
+      this.result   = result;
+      this.from     = from;
+      this.to       = to;
+      this.charset  = charset;
+      this.hashed   = hashed;
+      this.lifetime = lifetime;
+    }
+
+
+    protected void compute() {
+      if (this.to - this.from <= THRESHOLD) {
+        for (int i = this.from; i < this.to; i++) {
+          this.result[i] = new SecureString(this.input[i], this.charset, this.hashed, this.lifetime);
         }
 
-        synchronized (this) {
-          if (string != null) {
-            final int l = string.length;
-            if ((l > 0) && this.parent.expired()) {
-              synchronized (this.parent) {
-                this.parent.destroy();
-              }
-            }
-          }
+        return;
+      }
 
-          try {
-            Thread.sleep(this.parent.updateInterval);
+      final int middle = (this.from + this.to) >>> 1;
+      invokeAll(new Batch(this.input, this.result, this.from, middle, this.charset, this.hashed, this.lifetime),
+                new Batch(this.input, this.result, middle, this.to, this.charset, this.hashed, this.lifetime));
+    }
+  }
+
+
+  /**
+   * Updater thread used to destroy the string once it has expired.
+   */
+  private class StringUpdater implements Runnable {
+    /**
+     * Park until the string has expired, then destroy it. Destroying the
+     * string otherwise wakes the thread up, and it ends.
+     */
+    public void run() {
+      if (SecureStringMetrics.ENABLED) {
+        SecureStringMetrics.getInstance().updaterThreadsRunning.increment();
+      }
 
-            if (!active) {
-              break;
-            }
-          } catch (InterruptedException ie) {}
+      try {
+        update();
+      } finally {
+        if (SecureStringMetrics.ENABLED) {
+          SecureStringMetrics.getInstance().updaterThreadsRunning.decrement();
         }
       }
     }
 
 
     /**
-     * Activate or deactivate the updater thread.
-     *
-     * @param b True to activate the thread, false to deactivate the thread.
+     * Park until the string has expired, or was destroyed.
      */
-    protected synchronized void setActive(boolean b) {
-      active = b;
+    private void update() {
+      while (state == LIVE) {
+        if (debug) {
+          System.out.println("Testing   : " + new Date() + " " + expired());
+        }
+
+        if (expired()) {
+          destroy(true);
+
+          break;
+        }
+
+        LockSupport.parkNanos(this, expiryTime - System.nanoTime());
+      }
     }
+  }
 
 
+  /**
+   * Entry of the string with the shared expiry scheduler.
+   */
+  private class Expiry extends ExpiryScheduler.Task {
     /**
-     * Set the invoker of this thread. This is used to synchronize the thread
-     * with its invoking object.
-     *
-     * @param parent The parent (Cache) object.
+     * Destroy the string once it has expired. If it has not expired
+     * yet, the string is simply rescheduled.
      */
-    protected synchronized void setParent(SecureString parent) {
-      this.parent = parent;
+    protected void expire() {
+      if (state != LIVE) {
+        return;
+      }
+
+      if (!expired()) {
+        scheduleExpiry();
+
+        /*
+         * Destroyed while rescheduling.
+         */
+        if (state != LIVE) {
+          ExpiryScheduler.getInstance().cancel(this);
+        }
+
+        return;
+      }
+
+      destroy(true);
     }
   }
 }
@@ -0,0 +1,279 @@
+package com.sap.securestring;
+
+import java.nio.CharBuffer;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import java.security.NoSuchAlgorithmException;
+
+import java.time.Duration;
+
+
+/**
+ * Creates SecureStrings from one configuration; see SecureString.builder.
+ *
+ * The configuration is resolved as it is set: the character set is a
+ * Charset, the lifetime is kept in milliseconds, and the defaults of
+ * SecureString are read when the builder is created. Building a string
+ * then only takes one read of the current configuration, which is
+ * never changed once it is in use; setting an option swaps in a new
+ * one. So a builder can be shared by many threads, and reused for as
+ * many strings as needed.
+ *
+ * <pre>
+ *   final SecureStringBuilder tokens = SecureString.builder()
+ *     .lifetime(Duration.ofMinutes(30))
+ *     .sliding(true);
+ *
+ *   final SecureString token = tokens.build(value);
+ * </pre>
+ */
+public final class SecureStringBuilder {
+  /**
+   * The configuration.
+   */
+  private volatile Config config;
+
+
+  /**
+   * Create a builder with the defaults of SecureString: UTF-8, living
+   * forever, hashed with the default hash algorithm, and the default
+   * storage and expiry modes.
+   */
+  SecureStringBuilder() {
+    this.config = new Config();
+  }
+
+
+  /**
+   * Set the character set; UTF-8 unless set.
+   *
+   * @param charset The character set.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder charset(Charset charset) {
+    if (charset == null) {
+      throw new IllegalArgumentException("Charset must not be null");
+    }
+
+    final Config c = this.config.copy();
+    c.charset   = charset;
+    this.config = c;
+
+    return this;
+  }
+
+
+  /**
+   * Set the lifetime; strings live forever unless set.
+   *
+   * @param lifetime The lifetime; null or negative to live forever.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder lifetime(Duration lifetime) {
+    final Config c = this.config.copy();
+    if ((lifetime == null) || lifetime.isNegative()) {
+      c.lifetime = -1;
+    } else if (lifetime.getSeconds() >= Long.MAX_VALUE / 1000) {
+      c.lifetime = Long.MAX_VALUE;
+    } else {
+      c.lifetime = lifetime.toMillis();
+    }
+
+    this.config = c;
+
+    return this;
+  }
+
+
+  /**
+   * Set whether strings are kept hashed; they are unless set.
+   *
+   * @param hashed Whether to keep them hashed.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder hashed(boolean hashed) {
+    final Config c = this.config.copy();
+    c.hashed    = hashed;
+    this.config = c;
+
+    return this;
+  }
+
+
+  /**
+   * Set the hash algorithm, and keep strings hashed.
+   *
+   * @param algorithm The hash algorithm.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder algorithm(SecureHashAlgorithm algorithm) {
+    if (algorithm == null) {
+      throw new IllegalArgumentException("Hash algorithm must not be null");
+    }
+
+    final Config c = this.config.copy();
+    c.algorithm = algorithm;
+    c.hashed    = true;
+    this.config = c;
+
+    return this;
+  }
+
+
+  /**
+   * Set where plain strings are kept.
+   *
+   * @param mode The storage mode.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder storageMode(StorageMode mode) {
+    if (mode == null) {
+      throw new IllegalArgumentException("Storage mode must not be null");
+    }
+
+    final Config c = this.config.copy();
+    c.storageMode = mode;
+    this.config   = c;
+
+    return this;
+  }
+
+
+  /**
+   * Set how expiring strings are wiped.
+   *
+   * @param mode The expiry mode.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder expiryMode(ExpiryMode mode) {
+    if (mode == null) {
+      throw new IllegalArgumentException("Expiry mode must not be null");
+    }
+
+    final Config c = this.config.copy();
+    c.expiryMode = mode;
+    this.config  = c;
+
+    return this;
+  }
+
+
+  /**
+   * Set whether the lifetime is an idle timeout; see
+   * SecureString.setSliding.
+   *
+   * @param sliding Whether the expiry slides.
+   * @return This builder.
+   */
+  public synchronized SecureStringBuilder sliding(boolean sliding) {
+    final Config c = this.config.copy();
+    c.sliding   = sliding;
+    this.config = c;
+
+    return this;
+  }
+
+
+  /**
+   * Create a string.
+   *
+   * @param str The string.
+   * @return The SecureString.
+   */
+  public SecureString build(String str) {
+    final Config c = this.config;
+
+    if (c.hashed) {
+      return new SecureString(SecureString.digest(str, c.charset, c.algorithm), null, c.algorithm, c.charset, c.lifetime, c.expiryMode, c.sliding);
+    }
+
+    return new SecureString(null, Storage.of(str, c.storageMode), c.algorithm, c.charset, c.lifetime, c.expiryMode, c.sliding);
+  }
+
+
+  /**
+   * Create a string from chars, without ever creating a String of
+   * them. The array is left as it is, so the caller should wipe it.
+   *
+   * @param chars The chars.
+   * @return The SecureString.
+   */
+  public SecureString build(char[] chars) {
+    final Config c = this.config;
+
+    if (c.hashed) {
+      byte[] digest = new byte[0];
+      try {
+        digest = DigestEngine.get(c.algorithm).digest(CharBuffer.wrap(chars), c.charset);
+      } catch (NoSuchAlgorithmException e) {
+        System.err.println("! Caught Exception: " + e.getMessage());
+      }
+
+      return new SecureString(digest, null, c.algorithm, c.charset, c.lifetime, c.expiryMode, c.sliding);
+    }
+
+    return new SecureString(null, Storage.of(CharBuffer.wrap(chars), c.storageMode), c.algorithm, c.charset, c.lifetime, c.expiryMode, c.sliding);
+  }
+
+
+  /**
+   * A configuration. Once it is published, it is not changed anymore.
+   */
+  private static final class Config {
+    /**
+     * The character set.
+     */
+    Charset             charset     = StandardCharsets.UTF_8;
+
+    /**
+     * The lifetime in milliseconds; -1 to live forever.
+     */
+    long                lifetime    = -1;
+
+    /**
+     * Whether to keep strings hashed.
+     */
+    boolean             hashed      = true;
+
+    /**
+     * The hash algorithm.
+     */
+    SecureHashAlgorithm algorithm   = SecureString.getDefaultHashAlgorithm();
+
+    /**
+     * The storage mode of plain strings.
+     */
+    StorageMode         storageMode = SecureString.getDefaultStorageMode();
+
+    /**
+     * The expiry mode.
+     */
+    ExpiryMode          expiryMode  = SecureString.getDefaultExpiryMode();
+
+    /**
+     * Whether the expiry slides.
+     */
+    boolean             sliding     = false;
+
+
+    /**
+     * Copy the configuration, to be changed before it is published.
+     *
+     * @return The copy.
+     */
+    Config copy() {
+      final Config c = new Config();
+      c.charset     = this.charset;
+      c.lifetime    = this.lifetime;
+      c.hashed      = this.hashed;
+      c.algorithm   = this.algorithm;
+      c.storageMode = this.storageMode;
+      c.expiryMode  = this.expiryMode;
+      c.sliding     = this.sliding;
+
+      return c;
+    }
+  }
+}
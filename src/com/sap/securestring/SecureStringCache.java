@@ -0,0 +1,443 @@
+package com.sap.securestring;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * A bounded, concurrent cache of SecureStrings.
+ *
+ * The cache can be bounded by the number of entries, by the memory the
+ * strings take, or both. Entries expire with the lifetime of their
+ * SecureString; beyond that, the least recently used entries are evicted
+ * with the CLOCK (second chance) approximation of LRU. Every entry which
+ * leaves the cache because it was evicted, replaced or removed is
+ * destroyed.
+ *
+ * Lookups do not lock: they read the map and, at most, set the
+ * referenced bit of the entry. Writes and eviction share one lock.
+ *
+ * @param <K> The type of the keys.
+ */
+public class SecureStringCache<K> {
+  /**
+   * The entries.
+   */
+  private final ConcurrentHashMap<K, Node<K>> map         = new ConcurrentHashMap<K, Node<K>>();
+
+  /**
+   * Guards writes, the clock and the totals.
+   */
+  private final ReentrantLock                 lock        = new ReentrantLock();
+
+  /**
+   * Maximum number of entries; <= 0 for no bound.
+   */
+  private final long                          maxEntries;
+
+  /**
+   * Maximum memory of the strings, in bytes; <= 0 for no bound.
+   */
+  private final long                          maxBytes;
+
+  /**
+   * Memory of the strings in the cache, in bytes.
+   */
+  private long                                bytes       = 0;
+
+  /**
+   * The clock hand; entries form a circular list.
+   */
+  private Node<K>                             hand        = null;
+
+  /**
+   * Number of lookups which found a live entry.
+   */
+  private final LongAdder                     hits        = new LongAdder();
+
+  /**
+   * Number of lookups which found nothing, or an expired entry.
+   */
+  private final LongAdder                     misses      = new LongAdder();
+
+  /**
+   * Number of entries evicted to stay within the bounds.
+   */
+  private final LongAdder                     evictions   = new LongAdder();
+
+  /**
+   * Number of entries dropped because their string expired.
+   */
+  private final LongAdder                     expirations = new LongAdder();
+
+
+  /**
+   * Create a cache.
+   *
+   * @param maxEntries Maximum number of entries; <= 0 for no bound.
+   * @param maxBytes Maximum memory of the strings, in bytes; <= 0 for
+   * no bound.
+   */
+  public SecureStringCache(long maxEntries, long maxBytes) {
+    this.maxEntries = maxEntries;
+    this.maxBytes   = maxBytes;
+  }
+
+
+  /**
+   * Look up a string.
+   *
+   * @param key The key.
+   * @return The string, or null if there is none, or it has expired.
+   */
+  public SecureString get(K key) {
+    final Node<K> node = this.map.get(key);
+
+    if (node == null) {
+      this.misses.increment();
+
+      return null;
+    }
+
+    if (!node.value.isDestroyed() && !node.value.expired()) {
+      if (!node.referenced) {
+        node.referenced = true;
+      }
+
+      this.hits.increment();
+
+      return node.value;
+    }
+
+    this.misses.increment();
+
+    this.lock.lock();
+    try {
+      if (this.map.get(key) == node) {
+        this.expirations.increment();
+        remove(node);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+
+    return null;
+  }
+
+
+  /**
+   * Put a string into the cache. A string which was cached with the same
+   * key before is destroyed, as are the entries evicted to make room. A
+   * string which takes more memory than the cache may hold is not put
+   * in, and not destroyed; the cache is left as it was.
+   *
+   * @param key The key.
+   * @param value The string.
+   * @return True if the string was put in, false if it is too large.
+   */
+  public boolean put(K key, SecureString value) {
+    final Node<K> node = new Node<K>(key, value);
+    if ((this.maxBytes > 0) && (node.weight > this.maxBytes)) {
+      return false;
+    }
+
+    this.lock.lock();
+    try {
+      final Node<K> old = this.map.put(key, node);
+      if (old != null) {
+        unlink(old);
+        if (old.value != value) {
+          old.value.destroy();
+        }
+      }
+
+      link(node);
+      evict();
+    } finally {
+      this.lock.unlock();
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Remove a string from the cache, and destroy it.
+   *
+   * @param key The key.
+   */
+  public void remove(K key) {
+    this.lock.lock();
+    try {
+      final Node<K> node = this.map.get(key);
+      if (node != null) {
+        remove(node);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+
+  /**
+   * Remove and destroy all strings.
+   */
+  public void clear() {
+    this.lock.lock();
+    try {
+      while (this.hand != null) {
+        remove(this.hand);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+
+  /**
+   * Drop all entries whose string has expired or was destroyed.
+   *
+   * @return The number of entries dropped.
+   */
+  public int cleanUp() {
+    int count = 0;
+
+    this.lock.lock();
+    try {
+      for (Node<K> node : this.map.values()) {
+        if (node.value.isDestroyed() || node.value.expired()) {
+          remove(node);
+          count++;
+        }
+      }
+
+      this.expirations.add(count);
+    } finally {
+      this.lock.unlock();
+    }
+
+    return count;
+  }
+
+
+  /**
+   * Get the number of entries, including expired ones which were not
+   * dropped yet.
+   *
+   * @return The number of entries.
+   */
+  public int size() {
+    return this.map.size();
+  }
+
+
+  /**
+   * Get the memory of the cached strings.
+   *
+   * @return The memory, in bytes.
+   */
+  public long getBytes() {
+    this.lock.lock();
+    try {
+      return this.bytes;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+
+  /**
+   * Get the number of lookups which found a live entry.
+   *
+   * @return The number of hits.
+   */
+  public long getHitCount() {
+    return this.hits.sum();
+  }
+
+
+  /**
+   * Get the number of lookups which found nothing, or an expired entry.
+   *
+   * @return The number of misses.
+   */
+  public long getMissCount() {
+    return this.misses.sum();
+  }
+
+
+  /**
+   * Get the number of entries evicted to stay within the bounds.
+   *
+   * @return The number of evictions.
+   */
+  public long getEvictionCount() {
+    return this.evictions.sum();
+  }
+
+
+  /**
+   * Get the number of entries dropped because their string expired.
+   *
+   * @return The number of expirations.
+   */
+  public long getExpirationCount() {
+    return this.expirations.sum();
+  }
+
+
+  /**
+   * Get some statistics.
+   *
+   * @return Statistics.
+   */
+  public String status() {
+    final StringBuffer sb = new StringBuffer();
+
+    sb.append("Size: " + size());
+    sb.append(", Bytes: " + getBytes());
+    sb.append(", Hits: " + getHitCount());
+    sb.append(", Misses: " + getMissCount());
+    sb.append(", Evictions: " + getEvictionCount());
+    sb.append(", Expirations: " + getExpirationCount());
+
+    return sb.toString();
+  }
+
+
+  /**
+   * Evict entries until the cache is within its bounds. Expired entries
+   * go first; others get a second chance if they were referenced since
+   * the hand last passed them. Must hold the lock.
+   */
+  private void evict() {
+    while ((this.hand != null) && (((this.maxEntries > 0) && (this.map.size() > this.maxEntries)) || ((this.maxBytes > 0) && (this.bytes > this.maxBytes)))) {
+      final Node<K> node = this.hand;
+
+      if (node.value.isDestroyed() || node.value.expired()) {
+        this.expirations.increment();
+        remove(node);
+      } else if (node.referenced) {
+        node.referenced = false;
+        this.hand       = node.next;
+      } else {
+        this.evictions.increment();
+        remove(node);
+      }
+    }
+  }
+
+
+  /**
+   * Remove an entry from the map and the clock, and destroy its string.
+   * Must hold the lock.
+   *
+   * @param node The entry.
+   */
+  private void remove(Node<K> node) {
+    this.map.remove(node.key, node);
+    unlink(node);
+    node.value.destroy();
+  }
+
+
+  /**
+   * Add an entry to the clock, just behind the hand, so that it is
+   * looked at last. Must hold the lock.
+   *
+   * @param node The entry.
+   */
+  private void link(Node<K> node) {
+    if (this.hand == null) {
+      node.prev = node;
+      node.next = node;
+      this.hand = node;
+    } else {
+      node.next           = this.hand;
+      node.prev           = this.hand.prev;
+      this.hand.prev.next = node;
+      this.hand.prev      = node;
+    }
+
+    this.bytes += node.weight;
+  }
+
+
+  /**
+   * Take an entry out of the clock. Must hold the lock.
+   *
+   * @param node The entry.
+   */
+  private void unlink(Node<K> node) {
+    if (node.next == null) {
+      return;
+    }
+
+    if (node.next == node) {
+      this.hand = null;
+    } else {
+      if (this.hand == node) {
+        this.hand = node.next;
+      }
+
+      node.prev.next = node.next;
+      node.next.prev = node.prev;
+    }
+
+    node.prev   = null;
+    node.next   = null;
+    this.bytes -= node.weight;
+  }
+
+
+  /**
+   * A cache entry.
+   *
+   * @param <K> The type of the key.
+   */
+  private static final class Node<K> {
+    /**
+     * The key.
+     */
+    private final K            key;
+
+    /**
+     * The string.
+     */
+    private final SecureString value;
+
+    /**
+     * Memory of the string, as counted when it was added.
+     */
+    private final int          weight;
+
+    /**
+     * Whether the entry was looked up since the hand last passed it.
+     */
+    private volatile boolean   referenced;
+
+    /**
+     * Previous entry on the clock; null if not linked.
+     */
+    private Node<K>            prev;
+
+    /**
+     * Next entry on the clock; null if not linked.
+     */
+    private Node<K>            next;
+
+
+    /**
+     * Create an entry.
+     *
+     * @param key The key.
+     * @param value The string.
+     */
+    Node(K key, SecureString value) {
+      this.key    = key;
+      this.value  = value;
+      this.weight = value.weight();
+    }
+  }
+}
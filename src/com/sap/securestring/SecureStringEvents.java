@@ -0,0 +1,140 @@
+package com.sap.securestring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+/**
+ * Flight recorder events for the lifecycle of SecureStrings.
+ *
+ * The events are only committed if SecureStringMetrics is enabled, and
+ * then only while a recording has them switched on; see
+ * SecureStringMetrics. Hash and compare events come in on every check
+ * of a password, so they are off unless a recording asks for them,
+ * e.g. with com.sap.securestring.Compare#enabled=true.
+ */
+final class SecureStringEvents {
+  /**
+   * Nothing to create.
+   */
+  private SecureStringEvents() {}
+
+
+  /**
+   * A SecureString was created.
+   */
+  @Name("com.sap.securestring.Create")
+  @Label("SecureString Create")
+  @Category("SecureString")
+  static final class Create extends Event {
+    /**
+     * Whether the string is hashed.
+     */
+    @Label("Hashed")
+    boolean hashed;
+
+    /**
+     * The lifetime, or -1 if it lives forever.
+     */
+    @Label("Lifetime")
+    @Timespan(Timespan.MILLISECONDS)
+    long    lifetime;
+  }
+
+
+  /**
+   * Something was hashed.
+   */
+  @Name("com.sap.securestring.Hash")
+  @Label("SecureString Hash")
+  @Category("SecureString")
+  @Enabled(false)
+  static final class Hash extends Event {
+    /**
+     * The hash algorithm.
+     */
+    @Label("Algorithm")
+    String algorithm;
+
+    /**
+     * The number of bytes hashed.
+     */
+    @Label("Bytes")
+    long   bytes;
+
+    /**
+     * How long the hash took. The event is only created once the hash
+     * is done, so its own duration is 0.
+     */
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long   time;
+  }
+
+
+  /**
+   * A SecureString was compared.
+   */
+  @Name("com.sap.securestring.Compare")
+  @Label("SecureString Compare")
+  @Category("SecureString")
+  @Enabled(false)
+  static final class Compare extends Event {
+    /**
+     * Whether the string is hashed.
+     */
+    @Label("Hashed")
+    boolean hashed;
+
+    /**
+     * Whether it was equal.
+     */
+    @Label("Result")
+    boolean result;
+
+    /**
+     * How long the comparison took; see Hash.
+     */
+    @Label("Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long    time;
+  }
+
+
+  /**
+   * A SecureString expired, and was wiped.
+   */
+  @Name("com.sap.securestring.Expire")
+  @Label("SecureString Expire")
+  @Category("SecureString")
+  static final class Expire extends Event {
+    /**
+     * How long the string lived.
+     */
+    @Label("Age")
+    @Timespan(Timespan.NANOSECONDS)
+    long age;
+  }
+
+
+  /**
+   * A SecureString was destroyed before it expired.
+   */
+  @Name("com.sap.securestring.Destroy")
+  @Label("SecureString Destroy")
+  @Category("SecureString")
+  @Description("A SecureString was destroyed explicitly, before it expired")
+  static final class Destroy extends Event {
+    /**
+     * How long the string lived.
+     */
+    @Label("Age")
+    @Timespan(Timespan.NANOSECONDS)
+    long age;
+  }
+}
@@ -0,0 +1,443 @@
+package com.sap.securestring;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.EventType;
+
+import javax.management.ObjectName;
+
+
+/**
+ * Counters and latency histograms for the lifecycle of SecureStrings,
+ * and the flight recorder events of SecureStringEvents.
+ *
+ * Both are switched off unless the system property
+ * com.sap.securestring.metrics is true. The switch is a static final
+ * field, so when it is off the JIT folds the checks away, and the hot
+ * paths cost nothing. When it is on, the counters are LongAdders, which
+ * threads update without contending, and the metrics are registered as
+ * the MBean com.sap.securestring:type=SecureStringMetrics.
+ */
+public final class SecureStringMetrics implements SecureStringMetricsMBean {
+  /**
+   * Whether metrics and events are recorded.
+   */
+  static final boolean                    ENABLED                = Boolean.getBoolean("com.sap.securestring.metrics");
+
+  /**
+   * The name of the MBean.
+   */
+  public static final String              OBJECT_NAME            = "com.sap.securestring:type=SecureStringMetrics";
+
+  /**
+   * The hash event; looked at before creating one, so that hashing
+   * does not allocate while it is not recorded.
+   */
+  private static final EventType          HASH                   = ENABLED ? EventType.getEventType(SecureStringEvents.Hash.class) : null;
+
+  /**
+   * The compare event, likewise.
+   */
+  private static final EventType          COMPARE                = ENABLED ? EventType.getEventType(SecureStringEvents.Compare.class) : null;
+
+  /**
+   * The metrics.
+   */
+  private static final SecureStringMetrics INSTANCE              = new SecureStringMetrics();
+
+  /**
+   * Strings created.
+   */
+  final LongAdder                         created                = new LongAdder();
+
+  /**
+   * Strings destroyed before they expired.
+   */
+  final LongAdder                         destroyed              = new LongAdder();
+
+  /**
+   * Strings which expired.
+   */
+  final LongAdder                         expired                = new LongAdder();
+
+  /**
+   * Updater threads started.
+   */
+  final LongAdder                         updaterThreadsStarted  = new LongAdder();
+
+  /**
+   * Updater threads running.
+   */
+  final LongAdder                         updaterThreadsRunning  = new LongAdder();
+
+  /**
+   * Time taken by hashes.
+   */
+  final Histogram                         hashes                 = new Histogram();
+
+  /**
+   * Time taken by comparisons.
+   */
+  final Histogram                         compares               = new Histogram();
+
+
+  /*
+   * Starting the platform MBean server takes a while, so the MBean is
+   * registered in the background rather than by the first string.
+   */
+  static {
+    if (ENABLED) {
+      final Thread register = new Thread(new Runnable() {
+        public void run() {
+          try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+          } catch (Exception e) {
+            System.err.println("! Caught Exception: " + e.getMessage());
+          }
+        }
+      }, "SecureString Metrics");
+
+      register.setDaemon(true);
+      register.start();
+    }
+  }
+
+
+  /**
+   * Only the one instance.
+   */
+  private SecureStringMetrics() {}
+
+
+  /**
+   * Get the metrics.
+   *
+   * @return The metrics; all zero unless enabled.
+   */
+  public static SecureStringMetrics getInstance() {
+    return INSTANCE;
+  }
+
+
+  /**
+   * Check whether metrics are recorded, i.e. the system property
+   * com.sap.securestring.metrics was true at startup.
+   *
+   * @return true if enabled, else false
+   */
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+
+  /**
+   * Get the number of SecureStrings created.
+   *
+   * @return The count.
+   */
+  public long getCreated() {
+    return this.created.sum();
+  }
+
+
+  /**
+   * Get the number of SecureStrings destroyed before they expired.
+   *
+   * @return The count.
+   */
+  public long getDestroyed() {
+    return this.destroyed.sum();
+  }
+
+
+  /**
+   * Get the number of SecureStrings which expired.
+   *
+   * @return The count.
+   */
+  public long getExpired() {
+    return this.expired.sum();
+  }
+
+
+  /**
+   * Get the number of SecureStrings neither destroyed nor expired.
+   * Strings which are dropped without being destroyed, and collected,
+   * still count as live.
+   *
+   * @return The count.
+   */
+  public long getLive() {
+    return getCreated() - getDestroyed() - getExpired();
+  }
+
+
+  /**
+   * Get the number of hashes.
+   *
+   * @return The count.
+   */
+  public long getHashes() {
+    return this.hashes.count();
+  }
+
+
+  /**
+   * Get the mean time of a hash.
+   *
+   * @return The mean, in nanoseconds.
+   */
+  public double getHashMeanNanos() {
+    return this.hashes.mean();
+  }
+
+
+  /**
+   * Get the 99th percentile of the time of a hash.
+   *
+   * @return The percentile, in nanoseconds, to within a factor of two.
+   */
+  public long getHashP99Nanos() {
+    return this.hashes.percentile(0.99);
+  }
+
+
+  /**
+   * Get the number of comparisons.
+   *
+   * @return The count.
+   */
+  public long getCompares() {
+    return this.compares.count();
+  }
+
+
+  /**
+   * Get the mean time of a comparison.
+   *
+   * @return The mean, in nanoseconds.
+   */
+  public double getCompareMeanNanos() {
+    return this.compares.mean();
+  }
+
+
+  /**
+   * Get the 99th percentile of the time of a comparison.
+   *
+   * @return The percentile, in nanoseconds, to within a factor of two.
+   */
+  public long getCompareP99Nanos() {
+    return this.compares.percentile(0.99);
+  }
+
+
+  /**
+   * Get the number of updater threads started.
+   *
+   * @return The count.
+   */
+  public long getUpdaterThreadsStarted() {
+    return this.updaterThreadsStarted.sum();
+  }
+
+
+  /**
+   * Get the number of updater threads running now.
+   *
+   * @return The count.
+   */
+  public long getUpdaterThreadsRunning() {
+    return this.updaterThreadsRunning.sum();
+  }
+
+
+  /**
+   * Record a hash.
+   *
+   * @param algorithm The algorithm.
+   * @param bytes The number of bytes hashed.
+   * @param start When the hash started, in terms of System.nanoTime().
+   */
+  static void hash(SecureHashAlgorithm algorithm, long bytes, long start) {
+    final long time = System.nanoTime() - start;
+
+    INSTANCE.hashes.record(time);
+
+    if (HASH.isEnabled()) {
+      final SecureStringEvents.Hash event = new SecureStringEvents.Hash();
+      event.algorithm = algorithm.getName();
+      event.bytes     = bytes;
+      event.time      = time;
+      event.commit();
+    }
+  }
+
+
+  /**
+   * Record a comparison.
+   *
+   * @param hashed Whether the string is hashed.
+   * @param result Whether it was equal.
+   * @param start When the comparison started, in terms of System.nanoTime().
+   * @return The result.
+   */
+  static boolean compare(boolean hashed, boolean result, long start) {
+    final long time = System.nanoTime() - start;
+
+    INSTANCE.compares.record(time);
+
+    if (COMPARE.isEnabled()) {
+      final SecureStringEvents.Compare event = new SecureStringEvents.Compare();
+      event.hashed = hashed;
+      event.result = result;
+      event.time   = time;
+      event.commit();
+    }
+
+    return result;
+  }
+
+
+  /**
+   * Record the creation of a string, once its contents are set.
+   *
+   * @param hashed Whether the string is hashed.
+   * @param lifetime The lifetime in milliseconds, or -1 if it lives forever.
+   */
+  static void created(boolean hashed, long lifetime) {
+    INSTANCE.created.increment();
+
+    final SecureStringEvents.Create event = new SecureStringEvents.Create();
+    if (event.isEnabled()) {
+      event.hashed   = hashed;
+      event.lifetime = lifetime;
+      event.commit();
+    }
+  }
+
+
+  /**
+   * Record the end of a string.
+   *
+   * @param expired Whether it expired, or was destroyed before.
+   * @param age How long it lived, in nanoseconds.
+   */
+  static void destroy(boolean expired, long age) {
+    if (expired) {
+      INSTANCE.expired.increment();
+
+      final SecureStringEvents.Expire event = new SecureStringEvents.Expire();
+      if (event.isEnabled()) {
+        event.age = age;
+        event.commit();
+      }
+    } else {
+      INSTANCE.destroyed.increment();
+
+      final SecureStringEvents.Destroy event = new SecureStringEvents.Destroy();
+      if (event.isEnabled()) {
+        event.age = age;
+        event.commit();
+      }
+    }
+  }
+
+
+  /**
+   * A histogram of durations, in buckets by powers of two: bucket i
+   * holds durations of less than 2^i nanoseconds. Recording is a couple
+   * of LongAdder increments, and never allocates.
+   */
+  static final class Histogram {
+    /**
+     * Counts per bucket.
+     */
+    private final LongAdder[] buckets = new LongAdder[64];
+
+    /**
+     * Number of durations.
+     */
+    private final LongAdder   count   = new LongAdder();
+
+    /**
+     * Sum of durations.
+     */
+    private final LongAdder   sum     = new LongAdder();
+
+
+    /**
+     * Create an empty histogram.
+     */
+    Histogram() {
+      for (int i = 0; i < this.buckets.length; i++) {
+        this.buckets[i] = new LongAdder();
+      }
+    }
+
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration.
+     */
+    void record(long nanos) {
+      final long n = Math.max(nanos, 0);
+
+      this.buckets[64 - Long.numberOfLeadingZeros(n) & 63].increment();
+      this.count.increment();
+      this.sum.add(n);
+    }
+
+
+    /**
+     * Get the number of durations.
+     *
+     * @return The count.
+     */
+    long count() {
+      return this.count.sum();
+    }
+
+
+    /**
+     * Get the mean duration.
+     *
+     * @return The mean, in nanoseconds; 0 if empty.
+     */
+    double mean() {
+      final long c = count();
+
+      return (c == 0) ? 0 : (double) this.sum.sum() / c;
+    }
+
+
+    /**
+     * Get a percentile, as the upper bound of the bucket it falls in.
+     *
+     * @param p The percentile, between 0 and 1.
+     * @return The percentile, in nanoseconds; 0 if empty.
+     */
+    long percentile(double p) {
+      final long[] counts = new long[this.buckets.length];
+      long         total  = 0;
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = this.buckets[i].sum();
+        total    += counts[i];
+      }
+
+      final long rank = (long) Math.ceil(p * total);
+      long       seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if ((total > 0) && (seen >= rank)) {
+          return (i == 63) ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+      }
+
+      return 0;
+    }
+  }
+}
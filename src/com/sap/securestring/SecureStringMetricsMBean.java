@@ -0,0 +1,101 @@
+package com.sap.securestring;
+
+/**
+ * The SecureStringMetrics, as seen through JMX.
+ */
+public interface SecureStringMetricsMBean {
+  /**
+   * Get the number of SecureStrings created.
+   *
+   * @return The count.
+   */
+  public long getCreated();
+
+
+  /**
+   * Get the number of SecureStrings destroyed before they expired.
+   *
+   * @return The count.
+   */
+  public long getDestroyed();
+
+
+  /**
+   * Get the number of SecureStrings which expired.
+   *
+   * @return The count.
+   */
+  public long getExpired();
+
+
+  /**
+   * Get the number of SecureStrings neither destroyed nor expired.
+   *
+   * @return The count.
+   */
+  public long getLive();
+
+
+  /**
+   * Get the number of hashes.
+   *
+   * @return The count.
+   */
+  public long getHashes();
+
+
+  /**
+   * Get the mean time of a hash.
+   *
+   * @return The mean, in nanoseconds.
+   */
+  public double getHashMeanNanos();
+
+
+  /**
+   * Get the 99th percentile of the time of a hash.
+   *
+   * @return The percentile, in nanoseconds, to within a factor of two.
+   */
+  public long getHashP99Nanos();
+
+
+  /**
+   * Get the number of comparisons.
+   *
+   * @return The count.
+   */
+  public long getCompares();
+
+
+  /**
+   * Get the mean time of a comparison.
+   *
+   * @return The mean, in nanoseconds.
+   */
+  public double getCompareMeanNanos();
+
+
+  /**
+   * Get the 99th percentile of the time of a comparison.
+   *
+   * @return The percentile, in nanoseconds, to within a factor of two.
+   */
+  public long getCompareP99Nanos();
+
+
+  /**
+   * Get the number of updater threads started.
+   *
+   * @return The count.
+   */
+  public long getUpdaterThreadsStarted();
+
+
+  /**
+   * Get the number of updater threads running now.
+   *
+   * @return The count.
+   */
+  public long getUpdaterThreadsRunning();
+}
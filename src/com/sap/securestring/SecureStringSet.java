@@ -0,0 +1,832 @@
+package com.sap.securestring;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import java.nio.ByteOrder;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+
+
+/**
+ * A set of secrets, e.g. valid API keys or revoked tokens, kept as their
+ * hashes only; checking a candidate takes one hash and a table lookup,
+ * instead of comparing it with every SecureString in turn.
+ *
+ * The hashes are kept in open addressing tables of a single long[]
+ * each, with no object per entry: the first eight bytes of a hash are
+ * the key to probe with, and the rest follows right after it. Only
+ * where the keys match is the rest compared, in constant time.
+ *
+ * Reads do not lock. Writes lock one of several segments, picked by the
+ * hash, so writers mostly do not wait for each other either. A slot,
+ * once written, only ever changes to deleted; removed hashes leave
+ * their slot behind until the segment is resized into a new table, so
+ * readers never see a slot being reused under them.
+ *
+ * A lookup by hash (containsDigest) reads one slot, which is mostly a
+ * single cache line; with a million entries, that one cache miss is
+ * most of its time. A lookup by candidate (contains) adds the time to
+ * hash it, without allocating anything.
+ *
+ * Where most lookups miss, e.g. for a short list of revoked tokens, a
+ * set can have a Bloom filter in front of each table: a few bits per
+ * hash which tell most misses without a probe. The filter is blocked,
+ * so a check reads 64 bytes of it. It cannot forget hashes,
+ * so a segment whose removed hashes pile up is rebuilt into a new
+ * table, with a new filter. The filter only helps once the candidate
+ * is hashed; a caller who checks the same token against several sets,
+ * e.g. the valid and the revoked keys, hashes it once and then uses
+ * containsDigest.
+ */
+public final class SecureStringSet {
+  /**
+   * Number of segments; a power of two.
+   */
+  private static final int       SEGMENTS = 16;
+
+  /**
+   * Initial number of slots of a segment; a power of two.
+   */
+  private static final int       INITIAL  = 16;
+
+  /**
+   * Key of an empty slot.
+   */
+  private static final long      EMPTY    = 0;
+
+  /**
+   * Key of a slot whose hash was removed.
+   */
+  private static final long      DELETED  = 1;
+
+  /**
+   * Key of hashes which start with EMPTY or DELETED.
+   */
+  private static final long      REMAPPED = 2;
+
+  /**
+   * Access to the keys, so that a key is only seen once its hash is.
+   */
+  private static final VarHandle KEYS     = MethodHandles.arrayElementVarHandle(long[].class);
+
+  /**
+   * Access to the longs of a hash.
+   */
+  private static final VarHandle WORDS    = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  /**
+   * Longs per block of a filter: one cache line.
+   */
+  private static final int       BLOCK    = 8;
+
+  /**
+   * The hash algorithm.
+   */
+  private final SecureHashAlgorithm algorithm;
+
+  /**
+   * The character set candidates are encoded with.
+   */
+  private final Charset             charset;
+
+  /**
+   * Length of the hashes, in bytes.
+   */
+  private final int                 length;
+
+  /**
+   * Bits of filter per hash; 0 for no filter.
+   */
+  private final int                 filterBits;
+
+  /**
+   * The segments.
+   */
+  private final Segment[]           segments = new Segment[SEGMENTS];
+
+  /**
+   * The hash of a candidate, per thread; wiped after each use.
+   */
+  private final ThreadLocal<byte[]> scratch  = new ThreadLocal<byte[]>();
+
+
+  /**
+   * Create a set for UTF-8 candidates, with the default hash
+   * algorithm.
+   *
+   * @throws NoSuchAlgorithmException If the algorithm is not available.
+   */
+  public SecureStringSet() throws NoSuchAlgorithmException {
+    this(SecureString.getDefaultHashAlgorithm(), StandardCharsets.UTF_8);
+  }
+
+
+  /**
+   * Create a set.
+   *
+   * @param algorithm The hash algorithm; its hashes must be a multiple
+   * of 8 bytes long, as for SHA-256, SHA-512 and PBKDF2.
+   * @param charset The character set candidates are encoded with.
+   * @throws NoSuchAlgorithmException If the algorithm is not available.
+   */
+  public SecureStringSet(SecureHashAlgorithm algorithm, Charset charset) throws NoSuchAlgorithmException {
+    this(algorithm, charset, 0);
+  }
+
+
+  /**
+   * Create a set with a Bloom filter in front of its tables. With 10
+   * bits per hash, about one miss in a hundred still needs a probe;
+   * every 5 more bits make that about 5 times rarer.
+   *
+   * @param algorithm The hash algorithm; its hashes must be a multiple
+   * of 8 bytes long, and at least 24 bytes with a filter.
+   * @param charset The character set candidates are encoded with.
+   * @param filterBits Bits of filter per hash; 0 for no filter.
+   * @throws NoSuchAlgorithmException If the algorithm is not available.
+   */
+  public SecureStringSet(SecureHashAlgorithm algorithm, Charset charset, int filterBits) throws NoSuchAlgorithmException {
+    this.algorithm  = algorithm;
+    this.charset    = charset;
+    this.length     = DigestEngine.get(algorithm).length();
+    this.filterBits = filterBits;
+
+    if ((this.length < 8) || (this.length % 8 != 0)) {
+      throw new IllegalArgumentException("Hashes of " + algorithm + " must be a multiple of 8 bytes long: " + this.length);
+    }
+
+    if ((filterBits < 0) || ((filterBits > 0) && (this.length < 24))) {
+      throw new IllegalArgumentException("Cannot filter hashes of " + this.length + " bytes with " + filterBits + " bits each");
+    }
+
+    for (int i = 0; i < SEGMENTS; i++) {
+      this.segments[i] = new Segment(this.length / 8, filterBits);
+    }
+  }
+
+
+  /**
+   * Get the hash algorithm.
+   *
+   * @return The hash algorithm.
+   */
+  public SecureHashAlgorithm getHashAlgorithm() {
+    return this.algorithm;
+  }
+
+
+  /**
+   * Get the number of secrets.
+   *
+   * @return The number of secrets.
+   */
+  public int size() {
+    int size = 0;
+    for (Segment segment : this.segments) {
+      size += segment.table.size;
+    }
+
+    return size;
+  }
+
+
+  /**
+   * Get the size of the filters.
+   *
+   * @return The size, in bytes; 0 if there is no filter.
+   */
+  public long getFilterBytes() {
+    long bytes = 0;
+    for (Segment segment : this.segments) {
+      final long[] filter = segment.table.filter;
+      bytes += (filter == null) ? 0 : filter.length * 8L;
+    }
+
+    return bytes;
+  }
+
+
+  /**
+   * Get the rate of false positives of the filters, i.e. the share of
+   * hashes not in the set which still need a probe. It is worked out
+   * from the bits set in the filters, for hashes spread evenly over the
+   * segments.
+   *
+   * @return The rate; 1 if there is no filter.
+   */
+  public double getFilterFalsePositiveRate() {
+    if (this.filterBits == 0) {
+      return 1;
+    }
+
+    double rate = 0;
+    for (Segment segment : this.segments) {
+      rate += segment.table.falsePositiveRate();
+    }
+
+    return rate / SEGMENTS;
+  }
+
+
+  /**
+   * Add a secret.
+   *
+   * @param secret The secret.
+   * @return True if it was added, false if it was there already.
+   */
+  public boolean add(String secret) {
+    final byte[] d = scratch();
+    try {
+      DigestEngine.get(this.algorithm).digest(secret, this.charset, d);
+
+      return addDigest(d);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    } finally {
+      Arrays.fill(d, (byte) 0);
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Add a secret given as chars. The chars are left as they are, so
+   * the caller should wipe them.
+   *
+   * @param secret The secret.
+   * @return True if it was added, false if it was there already.
+   */
+  public boolean add(char[] secret) {
+    final byte[] d = scratch();
+    try {
+      DigestEngine.get(this.algorithm).digest(secret, this.charset, d);
+
+      return addDigest(d);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    } finally {
+      Arrays.fill(d, (byte) 0);
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Add a secret by its hash, as returned by SecureString.digest for
+   * the hash algorithm of the set.
+   *
+   * @param digest The hash; it is copied.
+   * @return True if it was added, false if it was there already.
+   */
+  public boolean addDigest(byte[] digest) {
+    check(digest);
+
+    final long key = key(digest);
+
+    return segment(key).add(key, digest);
+  }
+
+
+  /**
+   * Check whether the set holds a secret.
+   *
+   * @param candidate The candidate.
+   * @return True if the set holds it.
+   */
+  public boolean contains(String candidate) {
+    final byte[] d = scratch();
+    try {
+      DigestEngine.get(this.algorithm).digest(candidate, this.charset, d);
+
+      return containsDigest(d);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    } finally {
+      Arrays.fill(d, (byte) 0);
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Check whether the set holds a secret given as chars. The chars
+   * are left as they are.
+   *
+   * @param candidate The candidate.
+   * @return True if the set holds it.
+   */
+  public boolean contains(char[] candidate) {
+    final byte[] d = scratch();
+    try {
+      DigestEngine.get(this.algorithm).digest(candidate, this.charset, d);
+
+      return containsDigest(d);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    } finally {
+      Arrays.fill(d, (byte) 0);
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Check whether the set holds a secret by its hash. This does not
+   * lock, and does not allocate.
+   *
+   * @param digest The hash.
+   * @return True if the set holds it.
+   */
+  public boolean containsDigest(byte[] digest) {
+    if (digest.length != this.length) {
+      return false;
+    }
+
+    final long key = key(digest);
+
+    return segment(key).table.contains(key, digest);
+  }
+
+
+  /**
+   * Remove a secret.
+   *
+   * @param secret The secret.
+   * @return True if it was removed, false if it was not there.
+   */
+  public boolean remove(String secret) {
+    final byte[] d = scratch();
+    try {
+      DigestEngine.get(this.algorithm).digest(secret, this.charset, d);
+
+      return removeDigest(d);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    } finally {
+      Arrays.fill(d, (byte) 0);
+    }
+
+    return false;
+  }
+
+
+  /**
+   * Remove a secret by its hash.
+   *
+   * @param digest The hash.
+   * @return True if it was removed, false if it was not there.
+   */
+  public boolean removeDigest(byte[] digest) {
+    if (digest.length != this.length) {
+      return false;
+    }
+
+    final long key = key(digest);
+
+    return segment(key).remove(key, digest);
+  }
+
+
+  /**
+   * Remove all secrets.
+   */
+  public void clear() {
+    for (Segment segment : this.segments) {
+      segment.clear();
+    }
+  }
+
+
+  /**
+   * Check that a hash fits the set.
+   *
+   * @param digest The hash.
+   */
+  private void check(byte[] digest) {
+    if (digest.length != this.length) {
+      throw new IllegalArgumentException("Expected a hash of " + this.length + " bytes, got " + digest.length);
+    }
+  }
+
+
+  /**
+   * Get the scratch array of the current thread for a hash.
+   *
+   * @return The array.
+   */
+  private byte[] scratch() {
+    byte[] d = this.scratch.get();
+    if (d == null) {
+      d = new byte[this.length];
+      this.scratch.set(d);
+    }
+
+    return d;
+  }
+
+
+  /**
+   * Get the segment for a key, by its top bits; the table uses the
+   * bottom ones.
+   *
+   * @param key The key.
+   * @return The segment.
+   */
+  private Segment segment(long key) {
+    return this.segments[(int) (key >>> 60) & (SEGMENTS - 1)];
+  }
+
+
+  /**
+   * Get the key of a hash: its first eight bytes, with EMPTY and
+   * DELETED mapped to REMAPPED. Hashes are uniform enough to be their
+   * own hash codes. A hash which starts with EMPTY or DELETED matches
+   * one which starts with REMAPPED and goes on the same way; that is
+   * as likely as a collision of the hash algorithm itself.
+   *
+   * @param digest The hash.
+   * @return The key.
+   */
+  static long key(byte[] digest) {
+    long key = 0;
+    for (int i = 0; i < 8; i++) {
+      key = (key << 8) | (digest[i] & 0xFF);
+    }
+
+    return ((key == EMPTY) || (key == DELETED)) ? REMAPPED : key;
+  }
+
+
+  /**
+   * A segment: its current table, and the lock of its writers.
+   */
+  private static final class Segment {
+    /**
+     * Longs per hash.
+     */
+    private final int      words;
+
+    /**
+     * Bits of filter per hash.
+     */
+    private final int      filterBits;
+
+    /**
+     * The current table. Writers replace it when it fills up; readers
+     * may go on with the old one, which is not changed anymore.
+     */
+    private volatile Table table;
+
+
+    /**
+     * Create an empty segment.
+     *
+     * @param words Longs per hash.
+     * @param filterBits Bits of filter per hash; 0 for no filter.
+     */
+    Segment(int words, int filterBits) {
+      this.words      = words;
+      this.filterBits = filterBits;
+      this.table      = new Table(INITIAL, words, filterBits);
+    }
+
+
+    /**
+     * Add a hash.
+     *
+     * @param key The key of the hash.
+     * @param digest The hash.
+     * @return True if it was added.
+     */
+    synchronized boolean add(long key, byte[] digest) {
+      if (this.table.contains(key, digest)) {
+        return false;
+      }
+
+      /*
+       * Deleted slots count as used, since they are not reused.
+       */
+      if ((this.table.used + 1) * 4 > this.table.capacity() * 3) {
+        this.table = this.table.resize();
+      }
+
+      this.table.insert(key, digest);
+
+      return true;
+    }
+
+
+    /**
+     * Remove a hash.
+     *
+     * @param key The key of the hash.
+     * @param digest The hash.
+     * @return True if it was removed.
+     */
+    synchronized boolean remove(long key, byte[] digest) {
+      if (!this.table.remove(key, digest)) {
+        return false;
+      }
+
+      /*
+       * Once there are more removed hashes than half the live ones,
+       * rebuild the table, and with it the filter.
+       */
+      final Table t = this.table;
+      if ((t.used - t.size) * 2 > t.size + INITIAL) {
+        this.table = t.resize();
+      }
+
+      return true;
+    }
+
+
+    /**
+     * Remove all hashes. The old table is wiped, after it is replaced.
+     */
+    synchronized void clear() {
+      final Table old = this.table;
+
+      this.table = new Table(INITIAL, this.words, this.filterBits);
+
+      Arrays.fill(old.slots, 0);
+    }
+  }
+
+
+  /**
+   * An open addressing table with linear probing. Each slot is a run
+   * of longs: the key, then the rest of the hash, so that a lookup
+   * usually touches a single cache line.
+   */
+  private static final class Table {
+    /**
+     * The slots. The key of a slot is EMPTY or DELETED if the slot
+     * holds no hash.
+     */
+    final long[]   slots;
+
+    /**
+     * Longs per slot.
+     */
+    final int      words;
+
+    /**
+     * Mask for slot numbers.
+     */
+    final int      mask;
+
+    /**
+     * The filter, in blocks of BLOCK longs; null if there is none.
+     */
+    final long[]   filter;
+
+    /**
+     * Number of blocks of the filter.
+     */
+    final int      blocks;
+
+    /**
+     * Bits of filter per hash.
+     */
+    final int      filterBits;
+
+    /**
+     * Number of hashes.
+     */
+    volatile int   size;
+
+    /**
+     * Number of slots which are not empty.
+     */
+    int            used;
+
+
+    /**
+     * Create an empty table.
+     *
+     * @param slots Number of slots; a power of two.
+     * @param words Longs per hash.
+     * @param filterBits Bits of filter per hash; 0 for no filter. The
+     * filter is sized for as many hashes as the table takes.
+     */
+    Table(int slots, int words, int filterBits) {
+      this.slots      = new long[slots * words];
+      this.words      = words;
+      this.mask       = slots - 1;
+      this.filterBits = filterBits;
+      this.blocks     = (filterBits == 0) ? 0 : Math.max(1, (int) ((long) slots * 3 / 4 * filterBits / (BLOCK * 64)));
+      this.filter     = (filterBits == 0) ? null : new long[this.blocks * BLOCK];
+    }
+
+
+    /**
+     * Get the number of slots.
+     *
+     * @return The number of slots.
+     */
+    int capacity() {
+      return this.mask + 1;
+    }
+
+
+    /**
+     * Check whether the table holds a hash.
+     *
+     * @param key The key of the hash.
+     * @param digest The hash.
+     * @return True if the table holds it.
+     */
+    boolean contains(long key, byte[] digest) {
+      return find(key, digest) >= 0;
+    }
+
+
+    /**
+     * Find the slot of a hash. Every slot with the same key gets the
+     * rest of its hash compared, in constant time.
+     *
+     * @param key The key of the hash.
+     * @param digest The hash.
+     * @return Where the slot starts, or -1 if the table does not hold
+     * the hash.
+     */
+    int find(long key, byte[] digest) {
+      if ((this.filter != null) && !mightContain(digest)) {
+        return -1;
+      }
+
+      int i = (int) key & this.mask;
+      while (true) {
+        final int  at = i * this.words;
+        final long k  = (long) KEYS.getAcquire(this.slots, at);
+        if (k == EMPTY) {
+          return -1;
+        }
+
+        if (k == key) {
+          long d = 0;
+          for (int j = 1; j < this.words; j++) {
+            d |= this.slots[at + j] ^ (long) WORDS.get(digest, j * 8);
+          }
+
+          if (d == 0) {
+            return at;
+          }
+        }
+
+        i = (i + 1) & this.mask;
+      }
+    }
+
+
+    /**
+     * Put a hash into the first empty slot. The rest of the hash is
+     * written before the key, so readers who see the key see the hash.
+     *
+     * @param key The key of the hash.
+     * @param digest The hash.
+     */
+    void insert(long key, byte[] digest) {
+      int i = (int) key & this.mask;
+      while (this.slots[i * this.words] != EMPTY) {
+        i = (i + 1) & this.mask;
+      }
+
+      final int at = i * this.words;
+      for (int j = 1; j < this.words; j++) {
+        this.slots[at + j] = (long) WORDS.get(digest, j * 8);
+      }
+
+      if (this.filter != null) {
+        final long block = (long) WORDS.get(digest, 8);
+        final long bits  = (long) WORDS.get(digest, 16);
+        final int  from  = block(block);
+        for (int j = 0; j < BLOCK; j++) {
+          KEYS.setRelease(this.filter, from + j, this.filter[from + j] | (1L << (bits >>> (6 * j))));
+        }
+      }
+
+      KEYS.setRelease(this.slots, at, key);
+
+      this.used++;
+      this.size++;
+    }
+
+
+    /**
+     * Remove a hash: mark its slot as deleted, then wipe the hash.
+     *
+     * @param key The key of the hash.
+     * @param digest The hash.
+     * @return True if it was removed.
+     */
+    boolean remove(long key, byte[] digest) {
+      final int at = find(key, digest);
+      if (at < 0) {
+        return false;
+      }
+
+      KEYS.setRelease(this.slots, at, DELETED);
+      Arrays.fill(this.slots, at + 1, at + this.words, 0);
+
+      this.size--;
+
+      return true;
+    }
+
+
+    /**
+     * Copy the hashes into a new table, with room to grow, leaving the
+     * deleted slots behind. The old table is not changed.
+     *
+     * @return The new table.
+     */
+    Table resize() {
+      int capacity = INITIAL;
+      while ((this.size + 1) * 2 > capacity) {
+        capacity <<= 1;
+      }
+
+      final Table  table  = new Table(capacity, this.words, this.filterBits);
+      final byte[] digest = new byte[this.words * 8];
+      for (int at = 0; at < this.slots.length; at += this.words) {
+        final long k = this.slots[at];
+        if ((k != EMPTY) && (k != DELETED)) {
+          for (int j = 1; j < this.words; j++) {
+            WORDS.set(digest, j * 8, this.slots[at + j]);
+          }
+
+          table.insert(k, digest);
+        }
+      }
+
+      Arrays.fill(digest, (byte) 0);
+
+      return table;
+    }
+
+
+    /**
+     * Check the filter for a hash. Each block is a cache line of
+     * BLOCK longs, and a hash sets one bit in each of them.
+     *
+     * @param digest The hash.
+     * @return False if the table does not hold the hash; true if it
+     * may.
+     */
+    boolean mightContain(byte[] digest) {
+      final long bits = (long) WORDS.get(digest, 16);
+      final int  from = block((long) WORDS.get(digest, 8));
+
+      long missing = 0;
+      for (int j = 0; j < BLOCK; j++) {
+        missing |= ~(long) KEYS.getAcquire(this.filter, from + j) & (1L << (bits >>> (6 * j)));
+      }
+
+      return missing == 0;
+    }
+
+
+    /**
+     * Get the first long of the block of the filter for a hash.
+     *
+     * @param hash The second long of the hash.
+     * @return The index of the first long of the block.
+     */
+    int block(long hash) {
+      return (int) (((hash >>> 32) * this.blocks) >>> 32) * BLOCK;
+    }
+
+
+    /**
+     * Work out the rate of false positives of the filter: the chance
+     * that all bits of a random hash are set, averaged over the blocks.
+     *
+     * @return The rate.
+     */
+    double falsePositiveRate() {
+      double rate = 0;
+      for (int b = 0; b < this.blocks; b++) {
+        double p = 1;
+        for (int j = 0; j < BLOCK; j++) {
+          p *= Long.bitCount(this.filter[b * BLOCK + j]) / 64.0;
+        }
+
+        rate += p;
+      }
+
+      return rate / this.blocks;
+    }
+  }
+}
@@ -0,0 +1,874 @@
+package com.sap.securestring;
+
+import java.util.Arrays;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ * Packs many small secrets into large char blocks.
+ *
+ * Each secret is addressed by a long handle: the index of its slot in
+ * the low bits, and the generation of the slot in the high ones. The
+ * position, length and generation are kept in primitive arrays indexed
+ * by the slot, next to a link to the next slot in the same block; the
+ * deadlines are only kept in a heap, next to their slots. So the
+ * bookkeeping costs 16 bytes per secret, 28 with a deadline, instead
+ * of an array, its header and a SecureString per secret.
+ *
+ * Freed and expired secrets are zeroed right away. Their slot is
+ * reused, with the next generation, so a stale handle never reaches the
+ * secret which took over the slot; but only once it is off the list of
+ * its block and out of the heap. The slot at the head of a list comes
+ * off at once, the others when their block is compacted; an entry in
+ * the heap is dropped when its deadline comes. Blocks which become
+ * mostly empty are compacted in the background, on the thread of the
+ * shared expiry scheduler, which only runs for the slab while there is
+ * something to expire or compact. That work is done in bounded steps,
+ * so that neither readers nor other expiring strings wait for long.
+ *
+ * Plain SecureStrings can be kept in a slab, too; see StorageMode.SLAB.
+ */
+public final class SecureStringSlab {
+  /**
+   * Bits of a position which hold the offset within the block.
+   */
+  private static final int              SHIFT       = 15;
+
+  /**
+   * Size of a block, in chars. Larger secrets get a block of their own.
+   */
+  private static final int              BLOCK       = 1 << SHIFT;
+
+  /**
+   * Maximum number of blocks, so that positions fit into an int.
+   */
+  private static final int              MAX_BLOCKS  = 1 << (31 - SHIFT);
+
+  /**
+   * Bit of a generation which is set while the slot is in the heap.
+   */
+  private static final int              DUE         = 1;
+
+  /**
+   * How often expired secrets are wiped, at most, and how soon a block
+   * which became sparse is compacted.
+   */
+  private static final long             MAINTENANCE = TimeUnit.SECONDS.toNanos(1);
+
+  /**
+   * How soon maintenance goes on when a step left work behind.
+   */
+  private static final long             BUSY        = TimeUnit.MILLISECONDS.toNanos(1);
+
+  /**
+   * Maximum number of expired secrets wiped while holding the lock.
+   */
+  private static final int              STEP        = 1024;
+
+  /**
+   * The slab used by StorageMode.SLAB.
+   */
+  private static final SecureStringSlab DEFAULT     = new SecureStringSlab();
+
+  /**
+   * Readers share the lock; allocation, freeing and compaction take it
+   * exclusively.
+   */
+  private final ReentrantReadWriteLock  lock        = new ReentrantReadWriteLock();
+
+  /**
+   * The blocks; null if unused.
+   */
+  private char[][]                      blocks      = new char[4][];
+
+  /**
+   * Chars handed out from each block.
+   */
+  private int[]                         filled      = new int[4];
+
+  /**
+   * Chars of each block which belong to live secrets.
+   */
+  private int[]                         used        = new int[4];
+
+  /**
+   * First slot of each block, or -1.
+   */
+  private int[]                         first       = new int[4];
+
+  /**
+   * The block new secrets are appended to.
+   */
+  private int                           current     = -1;
+
+  /**
+   * Position of each secret: the block, shifted by SHIFT, and the
+   * offset within the block; -1 once the slot is off the list of its
+   * block.
+   */
+  private int[]                         position    = new int[16];
+
+  /**
+   * Length of each secret, or -1 if it is gone.
+   */
+  private int[]                         length      = new int[16];
+
+  /**
+   * Generation of each slot, advanced by two whenever its secret is
+   * gone; the DUE bit tells whether the slot is in the heap.
+   */
+  private int[]                         generation  = new int[16];
+
+  /**
+   * Next slot in the same block, or -1.
+   */
+  private int[]                         next        = new int[16];
+
+  /**
+   * Slots with a deadline, as a heap with the earliest first.
+   */
+  private int[]                         due         = new int[16];
+
+  /**
+   * The deadline of each slot in the heap, in terms of
+   * System.nanoTime().
+   */
+  private long[]                        deadlines   = new long[16];
+
+  /**
+   * Number of slots in the heap.
+   */
+  private int                           dueCount    = 0;
+
+  /**
+   * Number of slots ever used.
+   */
+  private int                           handles     = 0;
+
+  /**
+   * Number of live secrets.
+   */
+  private int                           live        = 0;
+
+  /**
+   * Free slots, as a stack.
+   */
+  private int[]                         free        = new int[16];
+
+  /**
+   * Number of free slots.
+   */
+  private int                           freeCount   = 0;
+
+  /**
+   * The block maintenance looks at next for compaction.
+   */
+  private int                           sweep       = 0;
+
+  /**
+   * Whether maintenance is scheduled.
+   */
+  private boolean                       maintained  = false;
+
+  /**
+   * When maintenance is scheduled, in terms of System.nanoTime().
+   */
+  private long                          scheduled   = 0;
+
+  /**
+   * The maintenance task.
+   */
+  private final Maintenance             maintenance = new Maintenance();
+
+
+  /**
+   * Create an empty slab.
+   */
+  public SecureStringSlab() {}
+
+
+  /**
+   * Get the slab used by StorageMode.SLAB.
+   *
+   * @return The slab.
+   */
+  public static SecureStringSlab getDefault() {
+    return DEFAULT;
+  }
+
+
+  /**
+   * Store a secret which lives forever.
+   *
+   * @param str The secret.
+   * @return The handle.
+   */
+  public long put(CharSequence str) {
+    return put(str, -1);
+  }
+
+
+  /**
+   * Store a secret.
+   *
+   * @param str The secret.
+   * @param lifetime The lifetime in milliseconds; < 0 to live forever.
+   * @return The handle.
+   */
+  public long put(CharSequence str, long lifetime) {
+    final int l = str.length();
+
+    this.lock.writeLock().lock();
+    try {
+      final int h = allocate(l);
+      final int b = this.position[h] >>> SHIFT;
+      final int o = this.position[h] & (BLOCK - 1);
+      for (int i = 0; i < l; i++) {
+        this.blocks[b][o + i] = str.charAt(i);
+      }
+
+      if (lifetime >= 0) {
+        final long now = System.nanoTime();
+        final long d   = now + TimeUnit.MILLISECONDS.toNanos(lifetime);
+        push(h, d);
+        maintain((d - now < MAINTENANCE) ? now + MAINTENANCE : d);
+      }
+
+      return ((long) (this.generation[h] & ~DUE) << 32) | h;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Get the length of a secret.
+   *
+   * @param handle The handle.
+   * @return The length, or 0 if the secret is gone.
+   */
+  public int length(long handle) {
+    this.lock.readLock().lock();
+    try {
+      final int h = slot(handle);
+
+      return (h >= 0) ? this.length[h] : 0;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Get a char of a secret.
+   *
+   * @param handle The handle.
+   * @param index The index.
+   * @return The char, or 0 if the secret is gone.
+   */
+  public char charAt(long handle, int index) {
+    this.lock.readLock().lock();
+    try {
+      final int h = slot(handle);
+
+      return (h >= 0) ? this.blocks[this.position[h] >>> SHIFT][(this.position[h] & (BLOCK - 1)) + index] : '\0';
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Copy the first chars of a secret into an array, taking the lock
+   * only once. Chars beyond the secret, or of a secret which is gone,
+   * are zeros.
+   *
+   * @param handle The handle.
+   * @param into The array.
+   * @param length The number of chars.
+   */
+  public void getChars(long handle, char[] into, int length) {
+    this.lock.readLock().lock();
+    try {
+      final int h = slot(handle);
+      final int n = (h >= 0) ? Math.min(length, this.length[h]) : 0;
+      if (n > 0) {
+        System.arraycopy(this.blocks[this.position[h] >>> SHIFT], this.position[h] & (BLOCK - 1), into, 0, n);
+      }
+
+      for (int i = n; i < length; i++) {
+        into[i] = '\0';
+      }
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Compare a secret with a string, in constant time.
+   *
+   * @param handle The handle.
+   * @param with To compare with.
+   * @return True if equals, else false. A secret which is gone never
+   * equals anything.
+   */
+  public boolean equals(long handle, CharSequence with) {
+    this.lock.readLock().lock();
+    try {
+      final int h = slot(handle);
+      if ((h < 0) || (this.length[h] != with.length())) {
+        return false;
+      }
+
+      final char[] chars = this.blocks[this.position[h] >>> SHIFT];
+      final int    o     = this.position[h] & (BLOCK - 1);
+      final int    l     = this.length[h];
+      int          d     = 0;
+      for (int i = 0; i < l; i++) {
+        d |= chars[o + i] ^ with.charAt(i);
+      }
+
+      return d == 0;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Compare a secret with an array of chars, in constant time.
+   *
+   * @param handle The handle.
+   * @param with To compare with.
+   * @return True if equals, else false. A secret which is gone never
+   * equals anything.
+   */
+  public boolean equals(long handle, char[] with) {
+    this.lock.readLock().lock();
+    try {
+      final int h = slot(handle);
+      if ((h < 0) || (this.length[h] != with.length)) {
+        return false;
+      }
+
+      final char[] chars = this.blocks[this.position[h] >>> SHIFT];
+      final int    o     = this.position[h] & (BLOCK - 1);
+      final int    l     = this.length[h];
+      int          d     = 0;
+      for (int i = 0; i < l; i++) {
+        d |= chars[o + i] ^ with[i];
+      }
+
+      return d == 0;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Copy a secret into a String.
+   *
+   * @param handle The handle.
+   * @return The secret, or an empty String if it is gone.
+   */
+  public String toString(long handle) {
+    this.lock.readLock().lock();
+    try {
+      final int h = slot(handle);
+      if (h < 0) {
+        return "";
+      }
+
+      return new String(this.blocks[this.position[h] >>> SHIFT], this.position[h] & (BLOCK - 1), this.length[h]);
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Wipe a secret and free its handle. Does nothing if the secret is
+   * already gone.
+   *
+   * @param handle The handle.
+   */
+  public void free(long handle) {
+    this.lock.writeLock().lock();
+    try {
+      final int h = slot(handle);
+      if (h >= 0) {
+        release(h);
+      }
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+
+  /**
+   * Wipe and free all secrets which have expired. The lock is given up
+   * after every few of them.
+   *
+   * @return The number of secrets wiped.
+   */
+  public int expire() {
+    final long now   = System.nanoTime();
+    int        count = 0;
+    boolean    more;
+
+    do {
+      this.lock.writeLock().lock();
+      try {
+        count += expire(now);
+        more   = due(now);
+      } finally {
+        this.lock.writeLock().unlock();
+      }
+    } while (more);
+
+    return count;
+  }
+
+
+  /**
+   * Move the secrets of blocks which are less than half used into the
+   * current block, and drop the emptied blocks. The lock is given up
+   * after each block.
+   */
+  public void compact() {
+    for (int b = 0; ; b++) {
+      this.lock.writeLock().lock();
+      try {
+        if (b >= this.blocks.length) {
+          return;
+        }
+
+        compact(b);
+      } finally {
+        this.lock.writeLock().unlock();
+      }
+    }
+  }
+
+
+  /**
+   * Get the number of live secrets.
+   *
+   * @return The number of secrets.
+   */
+  public int size() {
+    this.lock.readLock().lock();
+    try {
+      return this.live;
+    } finally {
+      this.lock.readLock().unlock();
+    }
+  }
+
+
+  /**
+   * Get the slot of a handle which refers to a live secret.
+   *
+   * @param handle The handle.
+   * @return The slot, or -1 if the secret is gone.
+   */
+  private int slot(long handle) {
+    final int h = (int) handle;
+
+    return ((h >= 0) && (h < this.handles) && (this.length[h] >= 0) && ((this.generation[h] & ~DUE) == (int) (handle >>> 32))) ? h : -1;
+  }
+
+
+  /**
+   * Take up to STEP slots off the heap whose deadline has passed,
+   * earliest first, and wipe and free their secrets, if they are still
+   * there. Must hold the write lock.
+   *
+   * @param now The current time, in terms of System.nanoTime().
+   * @return The number of secrets wiped.
+   */
+  private int expire(long now) {
+    int count = 0;
+    for (int i = 0; (i < STEP) && due(now); i++) {
+      final int h = pop();
+      if (this.length[h] >= 0) {
+        release(h);
+        count++;
+      } else if (this.position[h] < 0) {
+        recycle(h);
+      }
+    }
+
+    return count;
+  }
+
+
+  /**
+   * Check whether the earliest deadline has passed. Must hold the
+   * lock.
+   *
+   * @param now The current time, in terms of System.nanoTime().
+   * @return True if a slot in the heap is due.
+   */
+  private boolean due(long now) {
+    return (this.dueCount > 0) && (now - this.deadlines[0] >= 0);
+  }
+
+
+  /**
+   * Make sure maintenance runs at the given time, or before. Must hold
+   * the write lock.
+   *
+   * @param at The time, in terms of System.nanoTime().
+   */
+  private void maintain(long at) {
+    if (this.maintained && (at - this.scheduled >= 0)) {
+      return;
+    }
+
+    /*
+     * Never run maintenance on the calling thread, which may be in the
+     * middle of changing the slab.
+     */
+    final long soonest = System.nanoTime() + BUSY;
+    this.maintained = true;
+    this.scheduled  = (at - soonest < 0) ? soonest : at;
+    ExpiryScheduler.getInstance().schedule(this.maintenance, this.scheduled);
+  }
+
+
+  /**
+   * Move the secrets of a block into the current one and drop it, if it
+   * is less than half used. Must hold the write lock.
+   *
+   * @param b The block.
+   * @return True if the block was compacted.
+   */
+  private boolean compact(int b) {
+    if ((b == this.current) || (this.blocks[b] == null) || (this.used[b] * 2 > this.filled[b])) {
+      return false;
+    }
+
+    final char[] old = this.blocks[b];
+
+    /*
+     * Don't let the moved secrets land in the block we are emptying.
+     */
+    this.filled[b] = old.length;
+    int h = this.first[b];
+    this.first[b] = -1;
+    while (h >= 0) {
+      final int n = this.next[h];
+      final int l = this.length[h];
+      if (l >= 0) {
+        final int o = this.position[h] & (BLOCK - 1);
+        place(h, l);
+        System.arraycopy(old, o, this.blocks[this.position[h] >>> SHIFT], this.position[h] & (BLOCK - 1), l);
+      } else {
+        retire(h);
+      }
+
+      h = n;
+    }
+
+    Arrays.fill(old, '\0');
+    this.blocks[b] = null;
+    this.filled[b] = 0;
+    this.used[b]   = 0;
+
+    return true;
+  }
+
+
+  /**
+   * Get a slot and space for a secret. Must hold the write lock.
+   *
+   * @param l The length of the secret.
+   * @return The slot.
+   */
+  private int allocate(int l) {
+    final int handle;
+    if (this.freeCount > 0) {
+      handle = this.free[--this.freeCount];
+    } else {
+      if (this.handles == this.length.length) {
+        final int size = this.handles + (this.handles >> 1);
+        this.position   = Arrays.copyOf(this.position, size);
+        this.length     = Arrays.copyOf(this.length, size);
+        this.generation = Arrays.copyOf(this.generation, size);
+        this.next       = Arrays.copyOf(this.next, size);
+      }
+
+      handle = this.handles++;
+    }
+
+    place(handle, l);
+    this.live++;
+
+    return handle;
+  }
+
+
+  /**
+   * Find space for a secret and record it with its slot. Must hold
+   * the write lock.
+   *
+   * @param handle The slot.
+   * @param l The length of the secret.
+   */
+  private void place(int handle, int l) {
+    int b = this.current;
+    if ((b < 0) || (this.filled[b] + l > this.blocks[b].length)) {
+      b = newBlock(Math.max(BLOCK, l));
+      if (l < BLOCK) {
+        final int c = this.current;
+        this.current = b;
+        if ((c >= 0) && (this.used[c] * 2 <= this.filled[c])) {
+          maintain(System.nanoTime() + MAINTENANCE);
+        }
+      }
+    }
+
+    this.position[handle] = (b << SHIFT) | this.filled[b];
+    this.length[handle]   = l;
+    this.filled[b]       += l;
+    this.used[b]         += l;
+
+    this.next[handle] = this.first[b];
+    this.first[b]     = handle;
+  }
+
+
+  /**
+   * Set up a new block. Must hold the write lock.
+   *
+   * @param size The size of the block.
+   * @return The index of the block.
+   */
+  private int newBlock(int size) {
+    int b = 0;
+    while ((b < this.blocks.length) && (this.blocks[b] != null)) {
+      b++;
+    }
+
+    if (b == MAX_BLOCKS) {
+      throw new IllegalStateException("Slab is full");
+    }
+
+    if (b == this.blocks.length) {
+      this.blocks = Arrays.copyOf(this.blocks, b * 2);
+      this.filled = Arrays.copyOf(this.filled, b * 2);
+      this.used   = Arrays.copyOf(this.used, b * 2);
+      this.first  = Arrays.copyOf(this.first, b * 2);
+    }
+
+    this.blocks[b] = new char[size];
+    this.filled[b] = 0;
+    this.used[b]   = 0;
+    this.first[b]  = -1;
+
+    return b;
+  }
+
+
+  /**
+   * Wipe a secret and advance the generation of its slot. The slot is
+   * taken off the list of its block if it is the head, else when the
+   * block is compacted. Must hold the write lock.
+   *
+   * @param handle The slot.
+   */
+  private void release(int handle) {
+    final int b = this.position[handle] >>> SHIFT;
+    final int o = this.position[handle] & (BLOCK - 1);
+    final int l = this.length[handle];
+
+    Arrays.fill(this.blocks[b], o, o + l, '\0');
+
+    this.used[b]       -= l;
+    this.length[handle] = -1;
+    this.generation[handle] += 2;
+    this.live--;
+
+    if (this.first[b] == handle) {
+      this.first[b] = this.next[handle];
+      retire(handle);
+    }
+
+    /*
+     * A block of its own, or an empty one which is not the current
+     * one, can be dropped right away once no slot is left on its list;
+     * other sparse blocks are left to maintenance.
+     */
+    if (b != this.current) {
+      if ((this.used[b] == 0) && (this.first[b] < 0)) {
+        this.blocks[b] = null;
+        this.filled[b] = 0;
+      } else if (this.used[b] * 2 <= this.filled[b]) {
+        maintain(System.nanoTime() + MAINTENANCE);
+      }
+    }
+  }
+
+
+  /**
+   * Note that a slot is off the list of its block, and free it unless
+   * it is still in the heap. Must hold the write lock.
+   *
+   * @param handle The slot.
+   */
+  private void retire(int handle) {
+    this.position[handle] = -1;
+    if ((this.generation[handle] & DUE) == 0) {
+      recycle(handle);
+    }
+  }
+
+
+  /**
+   * Put a slot on the free stack. Must hold the write lock.
+   *
+   * @param handle The slot.
+   */
+  private void recycle(int handle) {
+    if (this.freeCount == this.free.length) {
+      this.free = Arrays.copyOf(this.free, this.freeCount * 2);
+    }
+
+    this.free[this.freeCount++] = handle;
+  }
+
+
+  /**
+   * Add a slot to the heap. Must hold the write lock.
+   *
+   * @param handle The slot.
+   * @param deadline The deadline, in terms of System.nanoTime().
+   */
+  private void push(int handle, long deadline) {
+    if (this.dueCount == this.due.length) {
+      this.due       = Arrays.copyOf(this.due, this.dueCount * 2);
+      this.deadlines = Arrays.copyOf(this.deadlines, this.dueCount * 2);
+    }
+
+    this.generation[handle] |= DUE;
+    up(this.dueCount++, handle, deadline);
+  }
+
+
+  /**
+   * Take the slot with the earliest deadline off the heap. Must hold
+   * the write lock.
+   *
+   * @return The slot.
+   */
+  private int pop() {
+    final int handle = this.due[0];
+
+    this.generation[handle] &= ~DUE;
+    if (--this.dueCount > 0) {
+      down(0, this.due[this.dueCount], this.deadlines[this.dueCount]);
+    }
+
+    return handle;
+  }
+
+
+  /**
+   * Move a slot up the heap, from the given index, to where it
+   * belongs. Must hold the write lock.
+   *
+   * @param i The index.
+   * @param handle The slot.
+   * @param deadline Its deadline.
+   */
+  private void up(int i, int handle, long deadline) {
+    while (i > 0) {
+      final int p = (i - 1) >>> 1;
+      if (deadline - this.deadlines[p] >= 0) {
+        break;
+      }
+
+      this.due[i]       = this.due[p];
+      this.deadlines[i] = this.deadlines[p];
+      i                 = p;
+    }
+
+    this.due[i]       = handle;
+    this.deadlines[i] = deadline;
+  }
+
+
+  /**
+   * Move a slot down the heap, from the given index, to where it
+   * belongs. Must hold the write lock.
+   *
+   * @param i The index.
+   * @param handle The slot.
+   * @param deadline Its deadline.
+   */
+  private void down(int i, int handle, long deadline) {
+    while (true) {
+      int c = 2 * i + 1;
+      if (c >= this.dueCount) {
+        break;
+      }
+
+      if ((c + 1 < this.dueCount) && (this.deadlines[c + 1] - this.deadlines[c] < 0)) {
+        c++;
+      }
+
+      if (this.deadlines[c] - deadline >= 0) {
+        break;
+      }
+
+      this.due[i]       = this.due[c];
+      this.deadlines[i] = this.deadlines[c];
+      i                 = c;
+    }
+
+    this.due[i]       = handle;
+    this.deadlines[i] = deadline;
+  }
+
+
+  /**
+   * Maintenance: wipe expired secrets and compact sparse blocks. Each
+   * run takes at most STEP slots off the heap and compacts at most one
+   * block; if that left work behind, the next run follows right away,
+   * else it is scheduled for the next deadline, if any, but not within
+   * MAINTENANCE, so that expired secrets are wiped in batches.
+   */
+  private class Maintenance extends ExpiryScheduler.Task {
+    protected void expire() {
+      lock.writeLock().lock();
+      try {
+        final long now = System.nanoTime();
+        maintained = false;
+
+        SecureStringSlab.this.expire(now);
+        boolean more = due(now);
+
+        for (int i = 0; i < blocks.length; i++) {
+          sweep = (sweep + 1) % blocks.length;
+          if (compact(sweep)) {
+            more = true;
+            break;
+          }
+        }
+
+        if (more) {
+          maintain(now + BUSY);
+        } else if (dueCount > 0) {
+          maintain((deadlines[0] - now < MAINTENANCE) ? now + MAINTENANCE : deadlines[0]);
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+}
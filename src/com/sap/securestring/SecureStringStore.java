@@ -0,0 +1,560 @@
+package com.sap.securestring;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import java.nio.file.Path;
+
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * SecureStrings loaded from a secrets file.
+ *
+ * The file holds one record per line, as name=value; empty lines and
+ * lines starting with # are skipped. Everything after the first = is
+ * the value, including blanks. The file is read into a direct buffer of
+ * the store, outside of the Java heap, and the values are hashed or
+ * decoded straight from there, so they never become a String; the
+ * buffer is wiped as soon as the file is processed.
+ *
+ * On reload, every record of the file is compared with what the store
+ * holds, whatever the modification time and size of the file say, and
+ * only the records which were added or changed get a new SecureString;
+ * the strings of changed and removed records are destroyed. Plain
+ * values are compared with what the store holds; for hashed ones, the
+ * hashes are compared. Values are hashed with the default hash
+ * algorithm at the time the store is loaded. Unchanged records are
+ * checked without allocating anything.
+ *
+ * Lookups do not lock; reloads are serialized.
+ */
+public final class SecureStringStore {
+  /**
+   * The file.
+   */
+  private final Path                                path;
+
+  /**
+   * The character set of the values.
+   */
+  private final Charset                             charset;
+
+  /**
+   * Whether to keep the values hashed.
+   */
+  private final boolean                             hashed;
+
+  /**
+   * The records, by name.
+   */
+  private final ConcurrentHashMap<String, Record>   records    = new ConcurrentHashMap<String, Record>();
+
+  /**
+   * The records, in the order of the file as it was last read.
+   */
+  private Record[]                                  order      = new Record[0];
+
+  /**
+   * Number of the current reload.
+   */
+  private int                                       generation = 0;
+
+  /**
+   * The hash algorithm of hashed values.
+   */
+  private final SecureHashAlgorithm                 algorithm;
+
+  /**
+   * Hash of a hashed value.
+   */
+  private byte[]                                    hash       = new byte[0];
+
+  /**
+   * Decodes plain values.
+   */
+  private final CharsetDecoder                      decoder;
+
+  /**
+   * Decoded chars of a plain value; wiped after each use.
+   */
+  private CharBuffer                                chars      = CharBuffer.allocate(64);
+
+  /**
+   * The bytes of the file while it is processed; wiped after each
+   * reload.
+   */
+  private ByteBuffer                                buffer     = ByteBuffer.allocateDirect(0);
+
+
+  /**
+   * Create a store; see load.
+   *
+   * @param path The file.
+   * @param charset The character set of the values.
+   * @param hashed Whether to keep the values hashed.
+   */
+  private SecureStringStore(Path path, Charset charset, boolean hashed) {
+    this.path      = path;
+    this.charset   = charset;
+    this.hashed    = hashed;
+    this.algorithm = SecureString.getDefaultHashAlgorithm();
+    this.decoder   = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  }
+
+
+  /**
+   * Load a UTF-8 secrets file, keeping the values hashed.
+   *
+   * @param path The file.
+   * @return The store.
+   * @throws IOException If the file cannot be read.
+   */
+  public static SecureStringStore load(Path path) throws IOException {
+    return load(path, Charset.forName("UTF-8"), true);
+  }
+
+
+  /**
+   * Load a secrets file.
+   *
+   * @param path The file.
+   * @param charset The character set of the values.
+   * @param hashed Whether to keep the values hashed.
+   * @return The store.
+   * @throws IOException If the file cannot be read.
+   */
+  public static SecureStringStore load(Path path, Charset charset, boolean hashed) throws IOException {
+    final SecureStringStore store = new SecureStringStore(path, charset, hashed);
+
+    store.reload();
+
+    return store;
+  }
+
+
+  /**
+   * Get a secret.
+   *
+   * @param name The name of the record.
+   * @return The secret, or null if there is no such record.
+   */
+  public SecureString get(String name) {
+    final Record record = this.records.get(name);
+
+    return (record == null) ? null : record.value;
+  }
+
+
+  /**
+   * Get the names of the records.
+   *
+   * @return The names.
+   */
+  public Set<String> names() {
+    return Collections.unmodifiableSet(this.records.keySet());
+  }
+
+
+  /**
+   * Get the number of records.
+   *
+   * @return The number of records.
+   */
+  public int size() {
+    return this.records.size();
+  }
+
+
+  /**
+   * Read the file again, and update the records which were added,
+   * changed or removed.
+   *
+   * @return The number of records added, changed or removed.
+   * @throws IOException If the file cannot be read.
+   */
+  public synchronized int reload() throws IOException {
+    if (this.hashed && (this.hash.length == 0)) {
+      try {
+        this.hash = new byte[DigestEngine.get(this.algorithm).length()];
+      } catch (NoSuchAlgorithmException e) {
+        System.err.println("! Caught Exception: " + e.getMessage());
+      }
+    }
+
+    final int generation = ++this.generation;
+    Record[]  order      = new Record[Math.max(this.order.length, 16)];
+    int       count      = 0;
+    int       changed    = 0;
+
+    final int end = read();
+    try {
+      final ByteBuffer map  = this.buffer;
+      final ByteBuffer view = map.duplicate();
+      int              pos  = 0;
+
+      while (pos < end) {
+        int eol = pos;
+        while ((eol < end) && (map.get(eol) != '\n')) {
+          eol++;
+        }
+
+        int last = eol;
+        if ((last > pos) && (map.get(last - 1) == '\r')) {
+          last--;
+        }
+
+        int eq = pos;
+        while ((eq < last) && (map.get(eq) != '=')) {
+          eq++;
+        }
+
+        if ((last > pos) && (map.get(pos) != '#') && (eq < last)) {
+          /*
+           * Usually, the record is where it was last time,
+           * and we can do without decoding its name.
+           */
+          final Record hint = (count < this.order.length) ? this.order[count] : null;
+          final String name = ((hint != null) && sameName(map, pos, eq, hint.key)) ? hint.name : name(map, pos, eq);
+
+          Record record = this.records.get(name);
+          if ((record == null) || (record.generation != generation)) {
+            if ((record == null) || changed(record, slice(view, eq + 1, last))) {
+              record = create(name, key(map, pos, eq), record, slice(view, eq + 1, last));
+              changed++;
+            }
+
+            record.generation = generation;
+            if (count == order.length) {
+              order = Arrays.copyOf(order, count * 2);
+            }
+
+            order[count++] = record;
+          }
+        }
+
+        pos = eol + 1;
+      }
+    } finally {
+      for (int i = 0; i < end; i++) {
+        this.buffer.put(i, (byte) 0);
+      }
+    }
+
+    for (Record record : this.records.values()) {
+      if (record.generation != generation) {
+        this.records.remove(record.name, record);
+        record.value.destroy();
+        changed++;
+      }
+    }
+
+    this.order = Arrays.copyOf(order, count);
+
+    return changed;
+  }
+
+
+  /**
+   * Destroy all secrets, and empty the store.
+   */
+  public synchronized void destroy() {
+    for (Record record : this.records.values()) {
+      this.records.remove(record.name, record);
+      record.value.destroy();
+    }
+
+    this.order  = new Record[0];
+    this.buffer = ByteBuffer.allocateDirect(0);
+  }
+
+
+  /**
+   * Read the file into the buffer, which grows as needed.
+   *
+   * @return The number of bytes read.
+   * @throws IOException If the file cannot be read.
+   */
+  private int read() throws IOException {
+    final FileChannel channel = FileChannel.open(this.path);
+    try {
+      final long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Secrets file too large: " + this.path);
+      }
+
+      if (this.buffer.capacity() < size) {
+        this.buffer = ByteBuffer.allocateDirect((int) Math.max(size, Math.min(this.buffer.capacity() * 2L, Integer.MAX_VALUE)));
+      }
+
+      this.buffer.clear().limit((int) size);
+
+      int n = 0;
+      while (this.buffer.hasRemaining() && (n >= 0)) {
+        n = channel.read(this.buffer);
+      }
+
+      return this.buffer.position();
+    } finally {
+      channel.close();
+    }
+  }
+
+
+  /**
+   * Check whether a record has changed.
+   *
+   * @param record The record.
+   * @param value The bytes of the value in the file.
+   * @return True if the value in the file is different, or the string
+   * of the record was destroyed meanwhile.
+   */
+  private boolean changed(Record record, ByteBuffer value) {
+    if (record.value.isDestroyed()) {
+      return true;
+    }
+
+    if (this.hashed) {
+      /*
+       * Compared through the string, which holds the only copy of
+       * the hash; the scratch hash is wiped right after.
+       */
+      try {
+        digest(value, this.hash);
+
+        return !record.value.equalsConstantTime(this.hash);
+      } finally {
+        Arrays.fill(this.hash, (byte) 0);
+      }
+    }
+
+    try {
+      return !record.storage.contentEquals(decode(value));
+    } finally {
+      wipe();
+    }
+  }
+
+
+  /**
+   * Create a record, and replace the old one.
+   *
+   * @param name The name.
+   * @param key The bytes of the name.
+   * @param old The old record; null if none.
+   * @param value The bytes of the value in the file.
+   * @return The record.
+   */
+  private Record create(String name, byte[] key, Record old, ByteBuffer value) {
+    final Record record;
+    if (this.hashed) {
+      final byte[] hash = new byte[this.hash.length];
+      digest(value, hash);
+      record = new Record(name, key, null, new SecureString(hash, this.algorithm, this.charset, -1));
+    } else {
+      final Storage storage = Storage.of(decode(value), SecureString.getDefaultStorageMode());
+      wipe();
+      record = new Record(name, key, storage, new SecureString(storage, this.charset, -1));
+    }
+
+    this.records.put(name, record);
+    if (old != null) {
+      old.value.destroy();
+    }
+
+    return record;
+  }
+
+
+  /**
+   * Decode a value into the char buffer; wipe it after use.
+   *
+   * @param value The bytes of the value.
+   * @return The chars, ready to be read.
+   */
+  private CharBuffer decode(ByteBuffer value) {
+    final int max = (int) Math.ceil(value.remaining() * (double) this.decoder.maxCharsPerByte());
+    if (this.chars.capacity() < max) {
+      this.chars = CharBuffer.allocate(Math.max(max, this.chars.capacity() * 2));
+    }
+
+    this.chars.clear();
+    this.decoder.reset();
+    this.decoder.decode(value, this.chars, true);
+    this.decoder.flush(this.chars);
+    this.chars.flip();
+
+    return this.chars;
+  }
+
+
+  /**
+   * Wipe the char buffer.
+   */
+  private void wipe() {
+    Arrays.fill(this.chars.array(), 0, this.chars.limit(), '\0');
+    this.chars.clear();
+  }
+
+
+  /**
+   * Hash a value.
+   *
+   * @param value The bytes of the value.
+   * @param into Where to put the hash.
+   */
+  private void digest(ByteBuffer value, byte[] into) {
+    try {
+      DigestEngine.get(this.algorithm).digest(value, into);
+    } catch (NoSuchAlgorithmException e) {
+      System.err.println("! Caught Exception: " + e.getMessage());
+    }
+  }
+
+
+  /**
+   * Point a view of the file at a part of it.
+   *
+   * @param view The view.
+   * @param from The first byte.
+   * @param to After the last byte.
+   * @return The view.
+   */
+  private static ByteBuffer slice(ByteBuffer view, int from, int to) {
+    view.limit(to).position(from);
+
+    return view;
+  }
+
+
+  /**
+   * Get the bytes of the name of a record, without surrounding blanks.
+   *
+   * @param map The file.
+   * @param from The first byte.
+   * @param to After the last byte.
+   * @return The bytes.
+   */
+  private static byte[] key(ByteBuffer map, int from, int to) {
+    while ((from < to) && ((map.get(from) & 0xFF) <= ' ')) {
+      from++;
+    }
+
+    while ((to > from) && ((map.get(to - 1) & 0xFF) <= ' ')) {
+      to--;
+    }
+
+    final byte[] key = new byte[to - from];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = map.get(from + i);
+    }
+
+    return key;
+  }
+
+
+  /**
+   * Check whether the name of a record is the given one.
+   *
+   * @param map The file.
+   * @param from The first byte.
+   * @param to After the last byte.
+   * @param key The bytes of the name.
+   * @return True if same.
+   */
+  private static boolean sameName(ByteBuffer map, int from, int to, byte[] key) {
+    while ((from < to) && ((map.get(from) & 0xFF) <= ' ')) {
+      from++;
+    }
+
+    while ((to > from) && ((map.get(to - 1) & 0xFF) <= ' ')) {
+      to--;
+    }
+
+    if (to - from != key.length) {
+      return false;
+    }
+
+    for (int i = 0; i < key.length; i++) {
+      if (map.get(from + i) != key[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  /**
+   * Decode the name of a record, without surrounding blanks.
+   *
+   * @param map The file.
+   * @param from The first byte.
+   * @param to After the last byte.
+   * @return The name.
+   */
+  private String name(ByteBuffer map, int from, int to) {
+    return new String(key(map, from, to), this.charset);
+  }
+
+
+  /**
+   * A record of the file.
+   */
+  private static final class Record {
+    /**
+     * The name.
+     */
+    private final String       name;
+
+    /**
+     * The bytes of the name in the file.
+     */
+    private final byte[]       key;
+
+    /**
+     * Storage of the value, if plain.
+     */
+    private final Storage      storage;
+
+    /**
+     * The secret.
+     */
+    private final SecureString value;
+
+    /**
+     * Number of the reload which last saw the record.
+     */
+    private int                generation;
+
+
+    /**
+     * Create a record.
+     *
+     * @param name The name.
+     * @param key The bytes of the name in the file.
+     * @param storage Storage of the value, if plain.
+     * @param value The secret.
+     */
+    Record(String name, byte[] key, Storage storage, SecureString value) {
+      this.name    = name;
+      this.key     = key;
+      this.storage = storage;
+      this.value   = value;
+    }
+  }
+}
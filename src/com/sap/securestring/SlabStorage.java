@@ -0,0 +1,63 @@
+package com.sap.securestring;
+
+/**
+ * Storage in a SecureStringSlab.
+ */
+final class SlabStorage extends Storage {
+  /**
+   * The slab.
+   */
+  private final SecureStringSlab slab;
+
+  /**
+   * Handle of the chars in the slab.
+   */
+  private final long             handle;
+
+
+  /**
+   * Create the storage, copying the string into the slab.
+   *
+   * @param str The string, or any other chars.
+   * @param slab The slab.
+   */
+  SlabStorage(CharSequence str, SecureStringSlab slab) {
+    this.slab   = slab;
+    this.handle = slab.put(str);
+  }
+
+
+  int length() {
+    return this.slab.length(this.handle);
+  }
+
+
+  char charAt(int index) {
+    return this.slab.charAt(this.handle, index);
+  }
+
+
+  void getChars(char[] into, int length) {
+    this.slab.getChars(this.handle, into, length);
+  }
+
+
+  boolean contentEquals(CharSequence with) {
+    return this.slab.equals(this.handle, with);
+  }
+
+
+  boolean contentEquals(char[] with) {
+    return this.slab.equals(this.handle, with);
+  }
+
+
+  public String toString() {
+    return this.slab.toString(this.handle);
+  }
+
+
+  void wipe() {
+    this.slab.free(this.handle);
+  }
+}
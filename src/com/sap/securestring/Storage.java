@@ -0,0 +1,130 @@
+package com.sap.securestring;
+
+/**
+ * Where the chars of a plain (not hashed) SecureString live.
+ *
+ * Readers do not lock; they may race with wipe, and rely on the
+ * SecureString lifecycle state to discard what they read in that case.
+ * A storage therefore has to stay safe to read after it was wiped.
+ */
+abstract class Storage {
+  /**
+   * Get the number of chars.
+   *
+   * @return The length.
+   */
+  abstract int length();
+
+
+  /**
+   * Get a char.
+   *
+   * @param index The index.
+   * @return The char.
+   */
+  abstract char charAt(int index);
+
+
+  /**
+   * Copy the first chars into an array. Readers pass the length they
+   * read before, so that a wipe in between cannot change it.
+   *
+   * @param into The array.
+   * @param length The number of chars.
+   */
+  void getChars(char[] into, int length) {
+    for (int i = 0; i < length; i++) {
+      into[i] = charAt(i);
+    }
+  }
+
+
+  /**
+   * Compare the chars with a string, or any other chars, in constant
+   * time.
+   *
+   * @param with To compare with.
+   * @return True if equals, else false.
+   */
+  boolean contentEquals(CharSequence with) {
+    final int l = length();
+    if (l != with.length()) {
+      return false;
+    }
+
+    int d = 0;
+    for (int i = 0; i < l; i++) {
+      d |= charAt(i) ^ with.charAt(i);
+    }
+
+    return d == 0;
+  }
+
+
+  /**
+   * Compare the chars with an array of chars, in constant time.
+   *
+   * @param with To compare with.
+   * @return True if equals, else false.
+   */
+  boolean contentEquals(char[] with) {
+    final int l = length();
+    if (l != with.length) {
+      return false;
+    }
+
+    int d = 0;
+    for (int i = 0; i < l; i++) {
+      d |= charAt(i) ^ with[i];
+    }
+
+    return d == 0;
+  }
+
+
+  /**
+   * Copy the chars into a String.
+   *
+   * @return The String.
+   */
+  public abstract String toString();
+
+
+  /**
+   * Overwrite the chars with zeros.
+   */
+  abstract void wipe();
+
+
+  /**
+   * Create a storage for a string.
+   *
+   * @param str The string, or any other chars.
+   * @param mode Where to store it.
+   * @return The storage.
+   */
+  static Storage of(CharSequence str, StorageMode mode) {
+    switch (mode) {
+      case OFF_HEAP:
+        return new OffHeapStorage(str);
+
+      case SLAB:
+        return new SlabStorage(str, SecureStringSlab.getDefault());
+
+      case ENCRYPTED:
+        return new EncryptedStorage(str);
+
+      default:
+        if (str instanceof String) {
+          return new HeapStorage(((String) str).toCharArray());
+        }
+
+        final char[] chars = new char[str.length()];
+        for (int i = 0; i < chars.length; i++) {
+          chars[i] = str.charAt(i);
+        }
+
+        return new HeapStorage(chars);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package com.sap.securestring;
+
+/**
+ * Where plain SecureStrings keep their chars.
+ */
+public enum StorageMode {
+  /**
+   * In a char[] on the heap.
+   */
+  HEAP,
+
+  /**
+   * In direct memory, outside of the heap, where the garbage collector
+   * cannot copy it around.
+   */
+  OFF_HEAP,
+
+  /**
+   * Packed into the blocks of the default SecureStringSlab, which saves
+   * most of the per string overhead.
+   */
+  SLAB,
+
+  /**
+   * Encrypted with AES/GCM, under a key of the process; the chars are
+   * only decrypted for the length of a read.
+   */
+  ENCRYPTED
+}
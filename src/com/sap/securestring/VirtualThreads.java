@@ -0,0 +1,84 @@
+package com.sap.securestring;
+
+import java.lang.reflect.Method;
+
+
+/**
+ * Creates virtual threads where the runtime has them, and daemon
+ * platform threads otherwise.
+ *
+ * The project does not require a runtime with virtual threads, so they
+ * are looked up reflectively.
+ */
+final class VirtualThreads {
+  /**
+   * Thread.ofVirtual(), or null if not available.
+   */
+  private static final Method OF_VIRTUAL;
+
+  /**
+   * Thread.Builder.unstarted(Runnable), or null if not available.
+   */
+  private static final Method UNSTARTED;
+
+  static {
+    Method ofVirtual = null;
+    Method unstarted = null;
+    try {
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      unstarted = ofVirtual.getReturnType().getMethod("unstarted", Runnable.class);
+
+      /*
+       * Preview releases have the methods, but refuse to run them.
+       */
+      unstarted.invoke(ofVirtual.invoke(null), new Runnable() {
+        public void run() {}
+      });
+    } catch (Exception e) {
+      ofVirtual = null;
+      unstarted = null;
+    }
+
+    OF_VIRTUAL = ofVirtual;
+    UNSTARTED  = unstarted;
+  }
+
+
+  /**
+   * Not to be instantiated.
+   */
+  private VirtualThreads() {}
+
+
+  /**
+   * Check whether the runtime has virtual threads.
+   *
+   * @return True if virtual threads are available.
+   */
+  static boolean isAvailable() {
+    return OF_VIRTUAL != null;
+  }
+
+
+  /**
+   * Create, but don't start, a thread.
+   *
+   * @param runnable What to run.
+   * @param name Name for platform threads.
+   * @return The thread.
+   */
+  static Thread newThread(Runnable runnable, String name) {
+    if (OF_VIRTUAL != null) {
+      try {
+        return (Thread) UNSTARTED.invoke(OF_VIRTUAL.invoke(null), runnable);
+      } catch (Exception e) {
+        System.err.println("! Caught Exception: " + e.getMessage());
+      }
+    }
+
+    final Thread thread = new Thread(runnable, name);
+    thread.setDaemon(true);
+
+    return thread;
+  }
+}
@@ -0,0 +1,89 @@
+package com.sap.securestring.benchmarks;
+
+import com.sap.securestring.ExpiryMode;
+import com.sap.securestring.SecureString;
+
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * Create many timed credentials in each expiry mode, and record the
+ * heap they use and the number of threads; see ExpiryModeBenchmark for
+ * the time it takes.
+ *
+ * The number of credentials is set with benchmark.count (default 100k);
+ * the modes to run can be given as arguments. With platform threads
+ * (before virtual threads are available), THREAD mode needs a process
+ * limit which allows that many threads.
+ */
+public class BenchExpiryModes {
+  /**
+   * Keeps the credentials alive.
+   */
+  private static SecureString[] live;
+
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Expiry modes to run; all if none are given.
+   * @throws Exception If anything goes wrong.
+   */
+  public static void main(String[] args) throws Exception {
+    final Benchmark benchmark = new Benchmark();
+    final int       count     = Integer.getInteger("benchmark.count", 100000);
+    ExpiryMode[]    modes     = ExpiryMode.values();
+
+    if (args.length > 0) {
+      modes = new ExpiryMode[args.length];
+      for (int i = 0; i < args.length; i++) {
+        modes[i] = ExpiryMode.valueOf(args[i]);
+      }
+    }
+
+    for (ExpiryMode mode : modes) {
+      final String[] params = { "mode", mode.name(), "count", "" + count };
+
+      SecureString.setDefaultExpiryMode(mode);
+
+      final long heap    = heapUsed();
+      final int  threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+      live = new SecureString[count];
+      for (int i = 0; i < count; i++) {
+        live[i] = new SecureString(Payloads.ascii(24), 3600000, false);
+      }
+
+      benchmark.record("expiry.threads", params, ManagementFactory.getThreadMXBean().getThreadCount() - threads, "threads");
+      benchmark.record("expiry.heapPerSecret", params, (double) (heapUsed() - heap) / count, "bytes");
+
+      for (int i = 0; i < count; i++) {
+        live[i].destroy();
+      }
+
+      /*
+       * Drops the destroyed LAZY strings from the sweep queue.
+       */
+      SecureString.sweepExpired();
+
+      live = null;
+    }
+
+    SecureString.setDefaultExpiryMode(ExpiryMode.SHARED);
+
+    benchmark.write();
+  }
+
+
+  /**
+   * Heap in use after a collection.
+   *
+   * @return The heap used, in bytes.
+   */
+  private static long heapUsed() {
+    System.gc();
+    System.gc();
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
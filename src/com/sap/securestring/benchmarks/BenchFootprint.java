@@ -0,0 +1,156 @@
+package com.sap.securestring.benchmarks;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.StorageMode;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import java.util.List;
+
+
+/**
+ * Keep many plain credentials alive in each storage mode, and record
+ * heap occupancy, direct memory and the time the collector spends with
+ * that live set.
+ *
+ * The number of credentials is set with benchmark.count (default 1M);
+ * the modes to run can be given as arguments. For clean numbers, run
+ * one mode per JVM.
+ */
+public class BenchFootprint {
+  /**
+   * Keeps the credentials alive.
+   */
+  private static SecureString[] live;
+
+  /**
+   * Sink for the churn.
+   */
+  private static volatile Object sink;
+
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Storage modes to run; all if none are given.
+   * @throws Exception If anything goes wrong.
+   */
+  public static void main(String[] args) throws Exception {
+    final Benchmark benchmark = new Benchmark();
+    final int       count     = Integer.getInteger("benchmark.count", 1000000);
+    final String[]  modes     = (args.length > 0) ? args : names(StorageMode.values());
+
+    for (String mode : modes) {
+      final StorageMode storage = StorageMode.valueOf(mode);
+      final String[]    params  = { "storage", mode, "count", "" + count };
+
+      SecureString.setDefaultStorageMode(storage);
+
+      final long heap   = heapUsed();
+      final long direct = directUsed();
+
+      live = new SecureString[count];
+      for (int i = 0; i < count; i++) {
+        live[i] = new SecureString(Payloads.ascii(24) + i, false);
+      }
+
+      benchmark.record("footprint.heapPerSecret", params, (double) (heapUsed() - heap) / count, "bytes");
+      benchmark.record("footprint.directPerSecret", params, (double) (directUsed() - direct) / count, "bytes");
+
+      /*
+       * Time for full collections with the live set.
+       */
+      final long fullStart = System.nanoTime();
+      for (int i = 0; i < 3; i++) {
+        System.gc();
+      }
+
+      benchmark.record("footprint.fullGcPause", params, (System.nanoTime() - fullStart) / 3e6, "ms");
+
+      /*
+       * Collector time while the application allocates garbage.
+       */
+      final long gcTime = gcTime();
+      final long end    = System.nanoTime() + 2000000000L;
+      while (System.nanoTime() < end) {
+        sink = new byte[256];
+      }
+
+      benchmark.record("footprint.churnGcTime", params, gcTime() - gcTime, "ms");
+
+      for (int i = 0; i < count; i++) {
+        live[i].destroy();
+      }
+
+      live = null;
+      System.gc();
+    }
+
+    SecureString.setDefaultStorageMode(StorageMode.HEAP);
+
+    benchmark.write();
+  }
+
+
+  /**
+   * Heap in use after a collection.
+   *
+   * @return The heap used, in bytes.
+   */
+  private static long heapUsed() {
+    System.gc();
+    System.gc();
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+
+  /**
+   * Direct memory in use.
+   *
+   * @return The direct memory used, in bytes.
+   */
+  private static long directUsed() {
+    final List<BufferPoolMXBean> pools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+    for (BufferPoolMXBean pool : pools) {
+      if ("direct".equals(pool.getName())) {
+        return pool.getMemoryUsed();
+      }
+    }
+
+    return 0;
+  }
+
+
+  /**
+   * Accumulated collection time of all collectors.
+   *
+   * @return The time, in milliseconds.
+   */
+  private static long gcTime() {
+    long time = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      time += Math.max(0, gc.getCollectionTime());
+    }
+
+    return time;
+  }
+
+
+  /**
+   * Names of the storage modes.
+   *
+   * @param modes The modes.
+   * @return The names.
+   */
+  private static String[] names(StorageMode[] modes) {
+    final String[] names = new String[modes.length];
+    for (int i = 0; i < modes.length; i++) {
+      names[i] = modes[i].name();
+    }
+
+    return names;
+  }
+}
@@ -0,0 +1,87 @@
+package com.sap.securestring.benchmarks;
+
+import com.sap.securestring.SecureHashAlgorithm;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringSet;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.charset.Charset;
+
+
+/**
+ * Record the heap a SecureStringSet takes per key; and, for a
+ * revocation list of a thousand keys and for the full count, the rate
+ * of false positives a filter of 10 bits per key reports, and its
+ * bytes per key. See SetBenchmark for the time lookups take.
+ *
+ * The number of keys is set with benchmark.count (default 1M).
+ */
+public class BenchSet {
+  /**
+   * Keeps the set alive.
+   */
+  private static SecureStringSet set;
+
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Not used.
+   * @throws Exception If anything goes wrong.
+   */
+  public static void main(String[] args) throws Exception {
+    final Benchmark benchmark = new Benchmark();
+    final int       count     = Integer.getInteger("benchmark.count", 1000000);
+    final Charset   charset   = Charset.forName("UTF-8");
+
+    for (final SecureHashAlgorithm algorithm : new SecureHashAlgorithm[] { SecureHashAlgorithm.SHA_256, SecureHashAlgorithm.SHA_512 }) {
+      final String[] params = { "algorithm", algorithm.getName(), "count", "" + count };
+
+      set = null;
+
+      final long heap = heapUsed();
+
+      set = new SecureStringSet(algorithm, charset);
+      for (int i = 0; i < count; i++) {
+        set.addDigest(SecureString.digest("key" + i, charset, algorithm));
+      }
+
+      benchmark.record("set.bytesPerKey", params, (double) (heapUsed() - heap) / count, "bytes");
+    }
+
+    /*
+     * The filter.
+     */
+    final SecureHashAlgorithm algorithm = SecureHashAlgorithm.SHA_512;
+    final int                 bits      = 10;
+
+    for (final int revoked : new int[] { 1000, count }) {
+      final String[] params = { "algorithm", algorithm.getName(), "count", "" + revoked, "filterBits", "" + bits };
+
+      set = null;
+      set = new SecureStringSet(algorithm, charset, bits);
+      for (int i = 0; i < revoked; i++) {
+        set.addDigest(SecureString.digest("key" + i, charset, algorithm));
+      }
+
+      benchmark.record("filter.falsePositiveRate", params, set.getFilterFalsePositiveRate() * 100, "%");
+      benchmark.record("filter.bytesPerKey", params, (double) set.getFilterBytes() / revoked, "bytes");
+    }
+
+    benchmark.write();
+  }
+
+
+  /**
+   * Heap in use after a collection.
+   *
+   * @return The heap used, in bytes.
+   */
+  private static long heapUsed() {
+    System.gc();
+    System.gc();
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
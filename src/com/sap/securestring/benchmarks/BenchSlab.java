@@ -0,0 +1,73 @@
+package com.sap.securestring.benchmarks;
+
+import com.sap.securestring.SecureStringSlab;
+
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * Measure the memory overhead per secret of a SecureStringSlab, i.e.
+ * the heap it takes beyond the chars of the secrets themselves, for
+ * secrets of 16 to 128 chars which live forever, and for ones with a
+ * deadline. See SlabBenchmark for the time a lookup takes.
+ *
+ * The number of secrets is set with benchmark.count (default 1M).
+ */
+public class BenchSlab {
+  /**
+   * Keeps the slab alive.
+   */
+  private static SecureStringSlab slab;
+
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Not used.
+   * @throws Exception If anything goes wrong.
+   */
+  public static void main(String[] args) throws Exception {
+    final Benchmark benchmark = new Benchmark();
+    final int       count     = Integer.getInteger("benchmark.count", 1000000);
+    final String[]  secrets   = new String[113];
+
+    for (int i = 0; i < secrets.length; i++) {
+      secrets[i] = Payloads.ascii(16 + i);
+    }
+
+    for (long lifetime : new long[] { -1, 3600000 }) {
+      slab = null;
+
+      final long heap  = heapUsed();
+      long       chars = 0;
+
+      slab = new SecureStringSlab();
+      for (int i = 0; i < count; i++) {
+        final String secret = secrets[i % secrets.length];
+        slab.put(secret, lifetime);
+        chars += secret.length();
+      }
+
+      final double   total  = heapUsed() - heap;
+      final String[] params = { "count", "" + count, "lifetime", "" + lifetime };
+
+      benchmark.record("slab.bytesPerSecret", params, total / count, "bytes");
+      benchmark.record("slab.overheadPerSecret", params, (total - chars * 2) / count, "bytes");
+    }
+
+    benchmark.write();
+  }
+
+
+  /**
+   * Heap in use after a collection.
+   *
+   * @return The heap used, in bytes.
+   */
+  private static long heapUsed() {
+    System.gc();
+    System.gc();
+
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+}
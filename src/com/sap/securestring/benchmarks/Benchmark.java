@@ -0,0 +1,98 @@
+package com.sap.securestring.benchmarks;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A small harness for what JMH cannot measure, such as heap occupancy,
+ * direct memory and collector time.
+ *
+ * Each value is recorded with its parameters and unit. The results can
+ * be written as JSON, with the same basic layout as JMH uses, so that
+ * they can be compared between releases.
+ */
+public final class Benchmark {
+  /**
+   * The results, as JSON objects.
+   */
+  private final List<String> results = new ArrayList<String>();
+
+
+  /**
+   * Record a single value, e.g. a memory footprint.
+   *
+   * @param name Name of the benchmark.
+   * @param params Parameters, as alternating names and values.
+   * @param value The value.
+   * @param unit The unit of the value.
+   */
+  public void record(String name, String[] params, double value, String unit) {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("{\"benchmark\":\"").append(name).append("\",\"mode\":\"ss\",\"threads\":1,\"params\":{");
+    for (int i = 0; i + 1 < params.length; i += 2) {
+      sb.append((i > 0) ? "," : "").append('"').append(params[i]).append("\":\"").append(params[i + 1]).append('"');
+    }
+
+    sb.append("},\"primaryMetric\":{\"score\":").append(value).append(",\"scoreUnit\":\"").append(unit).append("\"}}");
+    this.results.add(sb.toString());
+
+    System.out.println(String.format("%-40s %-40s %,16.1f %s", name, join(params), value, unit));
+  }
+
+
+  /**
+   * Get the results as a JSON array.
+   *
+   * @return The results.
+   */
+  public String toJson() {
+    final StringBuilder sb = new StringBuilder("[\n");
+    for (int i = 0; i < this.results.size(); i++) {
+      sb.append("  ").append(this.results.get(i)).append((i + 1 < this.results.size()) ? ",\n" : "\n");
+    }
+
+    return sb.append("]\n").toString();
+  }
+
+
+  /**
+   * Write the results as JSON to the file given by the system property
+   * benchmark.output, if set.
+   *
+   * @throws IOException If the file cannot be written.
+   */
+  public void write() throws IOException {
+    final String file = System.getProperty("benchmark.output");
+    if (file == null) {
+      return;
+    }
+
+    final Writer writer = new FileWriter(file);
+    try {
+      writer.write(toJson());
+    } finally {
+      writer.close();
+    }
+  }
+
+
+  /**
+   * Join the parameters for printing.
+   *
+   * @param params The parameters.
+   * @return The parameters as a string.
+   */
+  private static String join(String[] params) {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i + 1 < params.length; i += 2) {
+      sb.append((i > 0) ? " " : "").append(params[i]).append('=').append(params[i + 1]);
+    }
+
+    return sb.toString();
+  }
+}
@@ -0,0 +1,57 @@
+package com.sap.securestring.benchmarks;
+
+/**
+ * Payloads for the benchmarks, here and in the jmh module.
+ */
+public final class Payloads {
+  /**
+   * Not to be instantiated.
+   */
+  private Payloads() {}
+
+
+  /**
+   * An ASCII string of the given length.
+   *
+   * @param size The length.
+   * @return The string.
+   */
+  public static String ascii(int size) {
+    final char[] chars = new char[size];
+    for (int i = 0; i < size; i++) {
+      chars[i] = (char) ('a' + (i * 7) % 26);
+    }
+
+    return new String(chars);
+  }
+
+
+  /**
+   * A string of the given length which mixes ASCII, Latin-1 and CJK
+   * characters.
+   *
+   * @param size The length.
+   * @return The string.
+   */
+  public static String mixed(int size) {
+    final char[] chars = new char[size];
+    for (int i = 0; i < size; i++) {
+      switch (i % 3) {
+        case 0:
+          chars[i] = (char) ('a' + (i * 7) % 26);
+
+          break;
+
+        case 1:
+          chars[i] = (char) (0xe0 + (i % 16));
+
+          break;
+
+        default:
+          chars[i] = (char) (0x65e5 + (i % 64));
+      }
+    }
+
+    return new String(chars);
+  }
+}
@@ -0,0 +1,365 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.ByteBufferConsumer;
+import com.sap.securestring.CharConsumer;
+import com.sap.securestring.ExpiryMode;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringSlab;
+import com.sap.securestring.StorageMode;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class TestExpiryScheduler {
+  /**
+   * Test
+   *
+   * Many expiring strings must not need more than the one shared
+   * scheduler thread, and all of them must be gone after their lifetime.
+   */
+  @Test public void testManyExpiringStrings() throws Exception {
+    final int            count   = 5000;
+    final SecureString[] strings = new SecureString[count];
+
+    /*
+     * Create a first one so that the scheduler thread is running
+     */
+    new SecureString("warmup", 10, false);
+
+    final int threads = Thread.activeCount();
+
+    for (int i = 0; i < count; i++) {
+      strings[i] = new SecureString("s" + i, 200 + (i % 100), false);
+    }
+
+    /*
+     * No thread per string anymore.
+     */
+    assertTrue(Thread.activeCount() <= threads + 1);
+
+    /*
+     * Nothing has expired yet.
+     */
+    for (int i = 0; i < count; i++) {
+      assertTrue(strings[i].equals("s" + i));
+    }
+
+    /*
+     * Now we wait, again with some margin.
+     */
+    try {
+      Thread.sleep(300 + 1000 /* Some margin */);
+    } catch (InterruptedException ie) {}
+
+    for (int i = 0; i < count; i++) {
+      assertFalse(strings[i].equals("s" + i));
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A destroyed string must be removed from the scheduler, and a string
+   * with a long lifetime must not expire early.
+   */
+  @Test public void testDestroyAndLongLifetime() throws Exception {
+    final SecureString destroyed = new SecureString("gone", 100, false);
+    final SecureString kept      = new SecureString("kept", 60000, false);
+
+    destroyed.destroy();
+
+    try {
+      Thread.sleep(300);
+    } catch (InterruptedException ie) {}
+
+    assertFalse(destroyed.equals("gone"));
+    assertTrue(kept.equals("kept"));
+
+    kept.destroy();
+    assertFalse(kept.equals("kept"));
+  }
+
+
+  /**
+   * Test
+   *
+   * Strings created in a batch hash like single ones, and expire
+   * together.
+   */
+  @Test public void testBatch() throws Exception {
+    final List<String> input = new ArrayList<String>();
+    for (int i = 0; i < 10000; i++) {
+      input.add("batch" + i);
+    }
+
+    /*
+     * Check the expiring strings before any slow work, and give them
+     * time enough for a loaded machine.
+     */
+    final Charset        charset = Charset.forName("UTF-8");
+    final SecureString[] plain   = SecureString.ofAll(input.stream(), charset, 2000, false);
+    assertEquals(input.size(), plain.length);
+    for (int i = 0; i < input.size(); i++) {
+      assertTrue(plain[i].equals(input.get(i)));
+    }
+
+    final SecureString[] hashed = SecureString.ofAll(input, charset, -1, true);
+    assertEquals(input.size(), hashed.length);
+    for (int i = 0; i < input.size(); i++) {
+      assertTrue(hashed[i].equals(new SecureString(input.get(i)).toString()));
+    }
+
+    try {
+      Thread.sleep(2000 + 1000 /* Some margin */);
+    } catch (InterruptedException ie) {}
+
+    for (int i = 0; i < input.size(); i++) {
+      assertFalse(plain[i].equals(input.get(i)));
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Strings with an updater thread of their own expire, too, and their
+   * thread goes away when they are destroyed.
+   */
+  @Test public void testThreadMode() throws Exception {
+    final ExpiryMode previous = SecureString.getDefaultExpiryMode();
+
+    try {
+      SecureString.setDefaultExpiryMode(ExpiryMode.THREAD);
+
+      final SecureString[] strings = new SecureString[50];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = new SecureString("t" + i, 200, false);
+      }
+
+      final SecureString destroyed = new SecureString("gone", 60000, false);
+      destroyed.destroy();
+
+      for (int i = 0; i < strings.length; i++) {
+        assertTrue(strings[i].equals("t" + i));
+      }
+
+      try {
+        Thread.sleep(200 + 1000 /* Some margin */);
+      } catch (InterruptedException ie) {}
+
+      for (int i = 0; i < strings.length; i++) {
+        assertFalse(strings[i].equals("t" + i));
+      }
+
+      assertFalse(destroyed.equals("gone"));
+    } finally {
+      SecureString.setDefaultExpiryMode(previous);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A sliding string lives as long as it is used, and expires once it
+   * is left alone for its lifetime.
+   */
+  @Test public void testSliding() throws Exception {
+    final SecureString s = new SecureString("session", 300, false);
+    s.setSliding(true);
+
+    assertTrue(s.isSliding());
+
+    for (int i = 0; i < 10; i++) {
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException ie) {}
+
+      assertTrue(s.equals("session"));
+    }
+
+    try {
+      Thread.sleep(300 + 1000 /* Some margin */);
+    } catch (InterruptedException ie) {}
+
+    assertFalse(s.equals("session"));
+    assertTrue(s.isDestroyed());
+  }
+
+
+  /**
+   * Test
+   *
+   * Lazy strings start no thread; they are wiped on the first access
+   * after their lifetime, or by a sweep if they are not read again.
+   */
+  @Test public void testLazyMode() throws Exception {
+    final ExpiryMode previous = SecureString.getDefaultExpiryMode();
+
+    try {
+      SecureString.setDefaultExpiryMode(ExpiryMode.LAZY);
+      SecureString.sweepExpired();
+
+      final int            threads = Thread.activeCount();
+      final SecureString[] read    = new SecureString[50];
+      final SecureString[] unread  = new SecureString[50];
+      for (int i = 0; i < read.length; i++) {
+        read[i]   = new SecureString("r" + i, 200, false);
+        unread[i] = new SecureString("u" + i, 200, true);
+      }
+
+      final SecureString[] batch = SecureString.ofAll(java.util.Arrays.asList("b0", "b1"), Charset.forName("UTF-8"), 200, false);
+      final SecureString   kept  = new SecureString("kept", 60000, false);
+
+      assertTrue(Thread.activeCount() <= threads);
+
+      for (int i = 0; i < read.length; i++) {
+        assertTrue(read[i].equals("r" + i));
+        assertTrue(unread[i].equalsPlain("u" + i));
+      }
+
+      try {
+        Thread.sleep(300);
+      } catch (InterruptedException ie) {}
+
+      /*
+       * Nothing wiped them yet, but none can be read.
+       */
+      for (int i = 0; i < read.length; i++) {
+        assertFalse(read[i].equals("r" + i));
+        assertEquals("", read[i].toString());
+      }
+
+      assertFalse(batch[0].equals("b0"));
+
+      /*
+       * The ones not read again are wiped by the sweep.
+       */
+      assertEquals(unread.length + 1, SecureString.sweepExpired());
+      for (int i = 0; i < unread.length; i++) {
+        assertTrue(unread[i].isDestroyed());
+      }
+
+      assertTrue(kept.equals("kept"));
+      assertFalse(kept.isDestroyed());
+      kept.destroy();
+    } finally {
+      SecureString.setDefaultExpiryMode(previous);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A long-lived lazy string at the head of the queue does not hold up
+   * the sweep done by creating lazy strings.
+   */
+  @Test public void testLazySweepPastLiveHead() throws Exception {
+    final ExpiryMode previous = SecureString.getDefaultExpiryMode();
+
+    try {
+      SecureString.setDefaultExpiryMode(ExpiryMode.LAZY);
+      SecureString.sweepExpired();
+
+      final SecureString   head     = new SecureString("head", 60000, false);
+      final SecureString[] unread   = new SecureString[20];
+      final SecureString[] creators = new SecureString[40];
+      for (int i = 0; i < unread.length; i++) {
+        unread[i] = new SecureString("u" + i, 50, true);
+      }
+
+      try {
+        Thread.sleep(150);
+      } catch (InterruptedException ie) {}
+
+      for (int i = 0; i < creators.length; i++) {
+        creators[i] = new SecureString("c" + i, 60000, false);
+      }
+
+      /*
+       * Nothing left for the full sweep.
+       */
+      assertEquals(0, SecureString.sweepExpired());
+      assertTrue(head.equals("head"));
+
+      head.destroy();
+      for (SecureString c : creators) {
+        c.destroy();
+      }
+    } finally {
+      SecureString.setDefaultExpiryMode(previous);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * The first access to a lazy string past its deadline wipes it before
+   * anything is read, even a compare which does not match; the slab
+   * shows the wipe without going through the string.
+   */
+  @Test public void testLazyReadPastDeadline() throws Exception {
+    final ExpiryMode  previous = SecureString.getDefaultExpiryMode();
+    final StorageMode storage  = SecureString.getDefaultStorageMode();
+
+    try {
+      SecureString.setDefaultExpiryMode(ExpiryMode.LAZY);
+      SecureString.setDefaultStorageMode(StorageMode.SLAB);
+
+      final SecureStringSlab slab    = SecureStringSlab.getDefault();
+      final SecureString[]   strings = new SecureString[5];
+      for (int i = 0; i < strings.length; i++) {
+        strings[i] = new SecureString("lazy" + i, 50, false);
+      }
+
+      try {
+        Thread.sleep(150);
+      } catch (InterruptedException ie) {}
+
+      final int before = slab.size();
+
+      assertFalse(strings[0].equals("wrong"));
+      assertEquals(before - 1, slab.size());
+
+      assertFalse(strings[1].equalsConstantTime("wrong".toCharArray()));
+      assertEquals(before - 2, slab.size());
+
+      assertEquals("", strings[2].toString());
+      assertEquals(before - 3, slab.size());
+
+      assertFalse(strings[3].withChars(new CharConsumer<RuntimeException>() {
+        public void accept(CharBuffer chars) {
+          fail("Expired chars lent out");
+        }
+      }));
+      assertEquals(before - 4, slab.size());
+
+      assertFalse(strings[4].withBytes(new ByteBufferConsumer<RuntimeException>() {
+        public void accept(ByteBuffer bytes) {
+          fail("Expired bytes lent out");
+        }
+      }));
+      assertEquals(before - 5, slab.size());
+
+      for (SecureString s : strings) {
+        assertTrue(s.isDestroyed());
+      }
+    } finally {
+      SecureString.setDefaultExpiryMode(previous);
+      SecureString.setDefaultStorageMode(storage);
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.ExpiryMode;
+import com.sap.securestring.SecureHashAlgorithm;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringBuilder;
+import com.sap.securestring.StorageMode;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class TestSecureStringBuilder {
+  /**
+   * Test
+   *
+   * By default, strings are hashed with the default algorithm, in
+   * UTF-8, and live forever.
+   */
+  @Test public void testDefaults() throws Exception {
+    final SecureString s = SecureString.builder().build("p\u00e4ssword");
+
+    assertTrue(s.isHashed());
+    assertSame(SecureString.getDefaultHashAlgorithm(), s.getHashAlgorithm());
+    assertTrue(s.equalsPlain("p\u00e4ssword"));
+    assertTrue(s.equals(new SecureString("p\u00e4ssword").toString()));
+    assertFalse(s.isDestroyed());
+  }
+
+
+  /**
+   * Test
+   *
+   * All options end up in the strings, for Strings and chars alike.
+   */
+  @Test public void testOptions() throws Exception {
+    final SecureStringBuilder plain = SecureString.builder()
+      .hashed(false)
+      .storageMode(StorageMode.OFF_HEAP)
+      .charset(StandardCharsets.ISO_8859_1);
+
+    final SecureString a = plain.build("secret");
+    final SecureString b = plain.build("secret".toCharArray());
+
+    assertFalse(a.isHashed());
+    assertEquals("secret", a.toString());
+    assertTrue(b.equals("secret"));
+
+    final SecureStringBuilder sha256 = SecureString.builder().algorithm(SecureHashAlgorithm.SHA_256);
+    final SecureString        c      = sha256.build("secret".toCharArray());
+
+    assertSame(SecureHashAlgorithm.SHA_256, c.getHashAlgorithm());
+    assertTrue(c.equalsPlain("secret"));
+    assertTrue(c.equalsConstantTime(SecureString.digest("secret", StandardCharsets.UTF_8, SecureHashAlgorithm.SHA_256)));
+
+    final SecureString d = SecureString.builder()
+      .lifetime(Duration.ofMillis(200))
+      .expiryMode(ExpiryMode.THREAD)
+      .sliding(true)
+      .build("token");
+
+    assertTrue(d.isSliding());
+    assertTrue(d.equalsPlain("token"));
+
+    final SecureString e = SecureString.builder().lifetime(Duration.ofMillis(200)).build("token");
+
+    try {
+      Thread.sleep(200 + 1000 /* Some margin */);
+    } catch (InterruptedException ie) {}
+
+    assertTrue(d.isDestroyed());
+    assertTrue(e.isDestroyed());
+  }
+
+
+  /**
+   * Test
+   *
+   * Changing a builder does not change the strings built before, and
+   * one builder can be used by many threads at once.
+   */
+  @Test public void testReuse() throws Exception {
+    final SecureStringBuilder builder = SecureString.builder().hashed(false);
+    final SecureString        before  = builder.build("one");
+
+    builder.hashed(true);
+
+    assertFalse(before.isHashed());
+    assertTrue(builder.build("two").isHashed());
+
+    final List<Thread>    threads = new ArrayList<Thread>();
+    final List<Throwable> errors  = new ArrayList<Throwable>();
+    for (int t = 0; t < 4; t++) {
+      final int n = t;
+      threads.add(new Thread(new Runnable() {
+        public void run() {
+          try {
+            for (int i = 0; i < 1000; i++) {
+              assertTrue(builder.build("s" + n + i).equalsPlain("s" + n + i));
+            }
+          } catch (Throwable e) {
+            synchronized (errors) {
+              errors.add(e);
+            }
+          }
+        }
+      }));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(errors.isEmpty());
+  }
+
+
+  /**
+   * Test
+   *
+   * The constructors with a lifetime and no hashed flag take the
+   * lifetime in milliseconds, like all others.
+   */
+  @Test public void testLifetimeConstructors() throws Exception {
+    final SecureString a = new SecureString("x", 60000);
+    final SecureString b = new SecureString("x", "UTF-8", 60000);
+
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException ie) {}
+
+    assertFalse(a.isDestroyed());
+    assertFalse(b.isDestroyed());
+    assertTrue(a.getExpiryTime().getTime() - a.getCreationTime().getTime() >= 59000);
+
+    a.destroy();
+    b.destroy();
+  }
+
+
+  /**
+   * Test
+   *
+   * Every constructor with a lifetime, and the builder, take a
+   * negative lifetime as living forever.
+   */
+  @Test public void testNegativeLifetime() throws Exception {
+    final SecureString[] strings = {
+      new SecureString("x", -1),
+      new SecureString("x", "UTF-8", -1),
+      new SecureString("x", -1, false),
+      new SecureString("x", -1, true),
+      new SecureString("x", "UTF-8", -1, false),
+      new SecureString("x", "UTF-8", -1, true),
+      new SecureString("x", "UTF-8", -1, SecureHashAlgorithm.SHA_256),
+      SecureString.builder().lifetime(Duration.ofMillis(-1)).build("x"),
+      SecureString.builder().lifetime(null).hashed(false).build("x")
+    };
+
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException ie) {}
+
+    for (SecureString s : strings) {
+      assertFalse(s.isDestroyed());
+      assertTrue(s.isHashed() ? s.equalsPlain("x") : s.equals("x"));
+      assertFalse(s.status().contains("Expired: true"));
+    }
+  }
+}
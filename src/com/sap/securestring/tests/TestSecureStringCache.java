@@ -0,0 +1,150 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringCache;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class TestSecureStringCache {
+  /**
+   * Test
+   *
+   * A cache bounded by entries evicts and destroys the least recently
+   * used entries, and counts hits and misses.
+   */
+  @Test public void testEntryBound() throws Exception {
+    final SecureStringCache<String> cache   = new SecureStringCache<String>(100, 0);
+    final SecureString[]            strings = new SecureString[200];
+
+    for (int i = 0; i < 100; i++) {
+      strings[i] = new SecureString("v" + i, false);
+      cache.put("k" + i, strings[i]);
+    }
+
+    /*
+     * Use the first ten, so that they get a second chance.
+     */
+    for (int i = 0; i < 10; i++) {
+      assertSame(strings[i], cache.get("k" + i));
+    }
+
+    for (int i = 100; i < 150; i++) {
+      strings[i] = new SecureString("v" + i, false);
+      cache.put("k" + i, strings[i]);
+    }
+
+    assertEquals(100, cache.size());
+    assertEquals(50, cache.getEvictionCount());
+
+    for (int i = 0; i < 10; i++) {
+      assertNotNull(cache.get("k" + i));
+    }
+
+    for (int i = 10; i < 60; i++) {
+      assertNull(cache.get("k" + i));
+      assertTrue(strings[i].isDestroyed());
+    }
+
+    assertEquals(20, cache.getHitCount());
+    assertEquals(50, cache.getMissCount());
+  }
+
+
+  /**
+   * Test
+   *
+   * A cache bounded by bytes stays within them.
+   */
+  @Test public void testByteBound() throws Exception {
+    final SecureStringCache<Integer> cache = new SecureStringCache<Integer>(0, 64 * 100);
+
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, new SecureString("hashed" + i));
+    }
+
+    assertEquals(100, cache.size());
+    assertEquals(64 * 100, cache.getBytes());
+  }
+
+
+  /**
+   * Test
+   *
+   * A string heavier than the whole cache is turned away, without
+   * destroying it or anything in the cache.
+   */
+  @Test public void testTooLarge() throws Exception {
+    final SecureStringCache<String> cache = new SecureStringCache<String>(0, 64);
+    final SecureString              small = new SecureString("small");
+    final SecureString              large = new SecureString("large, much larger than the cache allows", false);
+
+    assertTrue(cache.put("key", small));
+    assertFalse(cache.put("key", large));
+
+    assertEquals(1, cache.size());
+    assertEquals(64, cache.getBytes());
+    assertSame(small, cache.get("key"));
+    assertFalse(small.isDestroyed());
+    assertFalse(large.isDestroyed());
+    assertTrue(large.equals("large, much larger than the cache allows"));
+  }
+
+
+  /**
+   * Test
+   *
+   * Entries expire with their strings; replaced and removed entries are
+   * destroyed.
+   */
+  @Test public void testExpiryAndReplace() throws Exception {
+    final SecureStringCache<String> cache  = new SecureStringCache<String>(10, 0);
+    final SecureString              short1 = new SecureString("short", 100, false);
+    final SecureString              first  = new SecureString("first", false);
+    final SecureString              second = new SecureString("second", false);
+
+    cache.put("short", short1);
+    cache.put("key", first);
+    cache.put("key", second);
+
+    assertTrue(first.isDestroyed());
+    assertSame(second, cache.get("key"));
+
+    Thread.sleep(100 + 500 /* Some margin */);
+
+    assertNull(cache.get("short"));
+    assertEquals(1, cache.getExpirationCount());
+
+    cache.remove("key");
+    assertTrue(second.isDestroyed());
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+  }
+
+
+  /**
+   * Test
+   *
+   * Entries with a negative lifetime live forever, and stay in the
+   * cache.
+   */
+  @Test public void testForever() throws Exception {
+    final SecureStringCache<String> cache   = new SecureStringCache<String>(10, 0);
+    final SecureString              forever = new SecureString("forever", -1, false);
+    final SecureString              hashed  = new SecureString("forever", "UTF-8", -1, true);
+
+    cache.put("forever", forever);
+    cache.put("hashed", hashed);
+
+    Thread.sleep(100);
+
+    assertSame(forever, cache.get("forever"));
+    assertSame(hashed, cache.get("hashed"));
+    assertEquals(0, cache.cleanUp());
+    assertFalse(forever.isDestroyed());
+    assertFalse(hashed.isDestroyed());
+    assertEquals("forever", forever.toString());
+  }
+}
@@ -0,0 +1,93 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureString;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class TestSecureStringConcurrency {
+  /**
+   * Test
+   *
+   * Readers racing with destroy must either see the whole string or
+   * nothing, never a partly wiped one.
+   */
+  @Test public void testReadersDuringDestroy() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 4096; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+
+    final String value = sb.toString();
+
+    for (final boolean hashed : new boolean[] { false, true }) {
+      for (int round = 0; round < 50; round++) {
+        final SecureString  s        = new SecureString(value, hashed);
+        final String        expected = s.toString();
+        final AtomicBoolean stop     = new AtomicBoolean();
+        final AtomicInteger torn     = new AtomicInteger();
+        final Thread[]      readers  = new Thread[4];
+
+        for (int t = 0; t < readers.length; t++) {
+          readers[t] = new Thread() {
+            public void run() {
+              while (!stop.get()) {
+                final String read = s.toString();
+                if (!read.equals(expected) && !read.isEmpty()) {
+                  torn.incrementAndGet();
+                }
+
+                s.equals(expected);
+              }
+            }
+          };
+          readers[t].start();
+        }
+
+        Thread.sleep(2);
+        s.destroy();
+        stop.set(true);
+
+        for (int t = 0; t < readers.length; t++) {
+          readers[t].join();
+        }
+
+        assertEquals(0, torn.get());
+        assertFalse(s.equals(expected));
+        assertEquals("", s.toString());
+      }
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Destroying more than once, also concurrently, is harmless.
+   */
+  @Test public void testConcurrentDestroy() throws Exception {
+    final SecureString s          = new SecureString("secret", 60000, false);
+    final Thread[]     destroyers = new Thread[8];
+
+    for (int t = 0; t < destroyers.length; t++) {
+      destroyers[t] = new Thread() {
+        public void run() {
+          s.destroy();
+        }
+      };
+      destroyers[t].start();
+    }
+
+    for (int t = 0; t < destroyers.length; t++) {
+      destroyers[t].join();
+    }
+
+    s.destroy();
+    assertFalse(s.equals("secret"));
+  }
+}
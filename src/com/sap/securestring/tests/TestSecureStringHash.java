@@ -0,0 +1,519 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureHashAlgorithm;
+import com.sap.securestring.SecureString;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.CharBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+
+import java.util.Arrays;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKeyFactory;
+
+import javax.crypto.spec.PBEKeySpec;
+
+
+public class TestSecureStringHash {
+  /**
+   * Some inputs, including an empty one and some which do not fit into
+   * a single byte per char.
+   */
+  private static final String[] INPUTS = { "", "x", "password", "Gr\u00fc\u00dfe aus Walldorf", "\u65e5\u672c\u8a9e", "\ud83d\udd12 locked" };
+
+
+  /**
+   * Reference hex form, as toString used to build it.
+   *
+   * @param str The string.
+   * @param charset The character set.
+   * @return The hex form.
+   */
+  private static String reference(String str, Charset charset) throws Exception {
+    final MessageDigest md        = MessageDigest.getInstance("SHA-512");
+    final byte[]        hash      = md.digest(str.getBytes(charset));
+    final StringBuffer  hexString = new StringBuffer();
+    for (int i = 0; i < hash.length; i++) {
+      if ((0xff & hash[i]) < 0x10) {
+        hexString.append("0" + Integer.toHexString((0xFF & hash[i])));
+      } else {
+        hexString.append(Integer.toHexString(0xFF & hash[i]));
+      }
+    }
+
+    return hexString.toString();
+  }
+
+
+  /**
+   * Test
+   *
+   * The hex form of hashed strings must not change, and equals must
+   * accept exactly that form.
+   */
+  @Test public void testHexForm() throws Exception {
+    for (String charset : new String[] { "UTF-8", "ISO-8859-1", "UTF-16" }) {
+      for (String input : INPUTS) {
+        final SecureString s   = new SecureString(input, charset, true);
+        final String       hex = reference(input, Charset.forName(charset));
+
+        assertEquals(hex, s.toString());
+        assertTrue(s.equals(hex));
+        assertFalse(s.equals(hex.toUpperCase().equals(hex) ? hex + "0" : hex.toUpperCase()));
+        assertFalse(s.equals(hex.substring(1)));
+        assertFalse(s.equals(input));
+      }
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * The compact digest and the one-byte-per-char hash must agree.
+   */
+  @Test public void testDigestAndHash() throws Exception {
+    final Charset charset = Charset.forName("UTF-8");
+
+    for (String input : INPUTS) {
+      final byte[] digest = SecureString.digest(input, charset);
+      final char[] hash   = SecureString.hash(input, charset);
+
+      assertEquals(64, digest.length);
+      assertEquals(digest.length, hash.length);
+      for (int i = 0; i < digest.length; i++) {
+        assertEquals((char) digest[i], hash[i]);
+      }
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Long strings are encoded in chunks; surrogate pairs which straddle
+   * a chunk boundary, and broken surrogates, must be handled just like
+   * String.getBytes does.
+   */
+  @Test public void testLongStrings() throws Exception {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      sb.append((i % 7 == 0) ? "\ud83d\udd12" : ((i % 11 == 0) ? "\ud83d" : "a\u00e4"));
+    }
+
+    for (String charset : new String[] { "UTF-8", "ISO-8859-1", "UTF-16" }) {
+      for (int offset = 0; offset < 4; offset++) {
+        final String input = sb.substring(offset);
+        assertEquals(reference(input, Charset.forName(charset)), new SecureString(input, charset, true).toString());
+      }
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Hashing from many threads at once gives the same results.
+   */
+  @Test public void testConcurrentHashing() throws Exception {
+    final Charset   charset  = Charset.forName("UTF-8");
+    final String    expected = reference("concurrent", charset);
+    final boolean[] ok       = new boolean[16];
+    final Thread[]  threads  = new Thread[ok.length];
+
+    for (int t = 0; t < threads.length; t++) {
+      final int index = t;
+      threads[t] = new Thread() {
+        public void run() {
+          boolean result = true;
+          for (int i = 0; i < 1000; i++) {
+            result &= new SecureString("concurrent").equals(expected);
+          }
+
+          ok[index] = result;
+        }
+      };
+      threads[t].start();
+    }
+
+    for (int t = 0; t < threads.length; t++) {
+      threads[t].join();
+      assertTrue(ok[t]);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A destroyed hashed string no longer matches its hash.
+   */
+  @Test public void testDestroy() throws Exception {
+    final SecureString s   = new SecureString("secret");
+    final String       hex = s.toString();
+
+    s.destroy();
+
+    assertFalse(s.equals(hex));
+    assertEquals("", s.toString());
+  }
+
+
+  /**
+   * Test
+   *
+   * Hashing chars, from an array or a buffer, gives the same result as
+   * hashing the String of them.
+   */
+  @Test public void testFromChars() throws Exception {
+    for (String charset : new String[] { "UTF-8", "ISO-8859-1", "UTF-16" }) {
+      for (String input : INPUTS) {
+        final Charset      cs     = Charset.forName(charset);
+        final String       hex    = reference(input, cs);
+        final CharBuffer   buffer = CharBuffer.wrap("[" + input + "]");
+
+        buffer.position(1).limit(1 + input.length());
+
+        assertEquals(hex, SecureString.fromChars(input.toCharArray(), cs, -1).toString());
+        assertEquals(hex, SecureString.fromChars(buffer, cs, -1).toString());
+        assertEquals(1, buffer.position());
+      }
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Multi-MB key material is hashed from a stream and from a channel
+   * without being read into memory as a whole.
+   */
+  @Test public void testFromStreamAndChannel() throws Exception {
+    final long          size = 8L * 1024 * 1024 + 17;
+    final MessageDigest md   = MessageDigest.getInstance("SHA-512");
+    final Path          file = Files.createTempFile("securestring", ".key");
+
+    try {
+      final OutputStream out = Files.newOutputStream(file);
+      try {
+        final InputStream in  = new KeyStream(size);
+        final byte[]      buf = new byte[65536];
+        int               n;
+        while ((n = in.read(buf, 0, buf.length)) >= 0) {
+          md.update(buf, 0, n);
+          out.write(buf, 0, n);
+        }
+      } finally {
+        out.close();
+      }
+
+      final byte[]       expected = md.digest();
+      final Charset      charset  = Charset.forName("UTF-8");
+      final SecureString streamed = SecureString.fromStream(new KeyStream(size), charset, -1);
+
+      final FileChannel  channel  = FileChannel.open(file);
+      final SecureString fromFile;
+      try {
+        fromFile = SecureString.fromChannel(channel, charset, 60000);
+      } finally {
+        channel.close();
+      }
+
+      assertEquals(streamed.toString(), fromFile.toString());
+      assertEquals(128, streamed.toString().length());
+      for (int i = 0; i < expected.length; i++) {
+        assertEquals(expected[i], (byte) Integer.parseInt(streamed.toString().substring(2 * i, 2 * i + 2), 16));
+      }
+
+      fromFile.destroy();
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * The constant time comparisons agree with equals, for digests, hex
+   * forms and plain chars, and a destroyed string equals nothing.
+   */
+  @Test public void testConstantTimeEquals() throws Exception {
+    final Charset charset = Charset.forName("UTF-8");
+
+    for (String input : INPUTS) {
+      final SecureString hashed = new SecureString(input);
+      final SecureString plain  = new SecureString(input, false);
+      final byte[]       digest = SecureString.digest(input, charset);
+      final String       hex    = hashed.toString();
+
+      assertTrue(hashed.equalsConstantTime(digest));
+      assertTrue(hashed.equalsConstantTime(hex.toCharArray()));
+      assertTrue(plain.equalsConstantTime(input.toCharArray()));
+      assertFalse(plain.equalsConstantTime(digest));
+
+      for (int i : new int[] { 0, digest.length - 1 }) {
+        final byte[] other = digest.clone();
+        other[i] ^= 0x10;
+        assertFalse(hashed.equalsConstantTime(other));
+
+        final char[] otherHex = hex.toCharArray();
+        otherHex[2 * i] = (otherHex[2 * i] == 'a') ? 'b' : 'a';
+        assertFalse(hashed.equalsConstantTime(otherHex));
+        assertFalse(hashed.equals(new String(otherHex)));
+      }
+
+      assertFalse(hashed.equalsConstantTime(new byte[digest.length - 1]));
+      assertFalse(plain.equalsConstantTime((input + "x").toCharArray()));
+      if (input.length() > 0) {
+        final char[] other = input.toCharArray();
+        other[other.length - 1]++;
+        assertFalse(plain.equalsConstantTime(other));
+      }
+
+      hashed.destroy();
+      plain.destroy();
+      assertFalse(hashed.equalsConstantTime(digest));
+      assertFalse(plain.equalsConstantTime(input.toCharArray()));
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A plain candidate matches a hashed string without going through
+   * the hex form, for each character set, and the check allocates
+   * nothing.
+   */
+  @Test public void testEqualsPlain() throws Exception {
+    for (String charset : new String[] { "UTF-8", "ISO-8859-1", "UTF-16" }) {
+      for (String input : INPUTS) {
+        final SecureString hashed = new SecureString(input, charset, true);
+        final SecureString plain  = new SecureString(input, charset, false);
+
+        assertTrue(hashed.equalsPlain(input));
+        assertTrue(hashed.equalsPlain(input.toCharArray()));
+        assertTrue(plain.equalsPlain(input));
+        assertTrue(plain.equalsPlain(input.toCharArray()));
+        assertFalse(hashed.equalsPlain(input + "x"));
+        assertFalse(hashed.equalsPlain(hashed.toString()));
+        assertFalse(plain.equalsPlain((input + "x").toCharArray()));
+
+        hashed.destroy();
+        assertFalse(hashed.equalsPlain(input));
+      }
+    }
+
+    final SecureString                    s       = new SecureString("password");
+    final char[]                          chars   = "password".toCharArray();
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    final long                            id      = Thread.currentThread().getId();
+    final int                             count   = 10000;
+
+    for (int i = 0; i < count; i++) {
+      s.equalsPlain("password");
+      s.equalsPlain(chars);
+    }
+
+    final long before = threads.getThreadAllocatedBytes(id);
+    for (int i = 0; i < count; i++) {
+      assertTrue(s.equalsPlain("password"));
+      assertTrue(s.equalsPlain(chars));
+    }
+
+    /*
+     * Less than a single small object per call.
+     */
+    assertTrue(threads.getThreadAllocatedBytes(id) - before < 16 * count);
+  }
+
+
+  /**
+   * Test
+   *
+   * Fresh salts differ, so the same password hashes differently per
+   * credential, and each one still checks against its own salt.
+   */
+  @Test public void testSalt() throws Exception {
+    final byte[] salt1 = SecureHashAlgorithm.newSalt();
+    final byte[] salt2 = SecureHashAlgorithm.newSalt();
+
+    assertEquals(16, salt1.length);
+    assertFalse(Arrays.equals(salt1, salt2));
+
+    final SecureString password1 = new SecureString("password", "UTF-8", -1, SecureHashAlgorithm.pbkdf2(10, salt1));
+    final SecureString password2 = new SecureString("password", "UTF-8", -1, SecureHashAlgorithm.pbkdf2(10, salt2));
+
+    assertFalse(password1.toString().equals(password2.toString()));
+    assertTrue(new SecureString("password", "UTF-8", -1, SecureHashAlgorithm.pbkdf2(10, salt1.clone())).toString().equals(password1.toString()));
+    assertTrue(password1.equalsPlain("password"));
+    assertTrue(password2.equalsPlain("password"));
+
+    try {
+      SecureHashAlgorithm.pbkdf2(10, new byte[0]);
+      fail("Empty salt accepted");
+    } catch (IllegalArgumentException e) {}
+  }
+
+
+  /**
+   * Test
+   *
+   * Strings hashed with SHA-256 or PBKDF2 give the standard results,
+   * remember their algorithm, and keep comparing with it when the
+   * default changes.
+   */
+  @Test public void testHashAlgorithms() throws Exception {
+    final Charset charset = Charset.forName("UTF-8");
+    final byte[]  salt    = "NaCl and pepper".getBytes("UTF-8");
+
+    for (String input : new String[] { "", "password", "a long passphrase, longer than a block of SHA-256, to be hashed first" }) {
+      final SecureString sha256 = new SecureString(input, "UTF-8", -1, SecureHashAlgorithm.SHA_256);
+
+      assertSame(SecureHashAlgorithm.SHA_256, sha256.getHashAlgorithm());
+      assertTrue(sha256.equalsConstantTime(MessageDigest.getInstance("SHA-256").digest(input.getBytes(charset))));
+      assertTrue(sha256.equalsPlain(input));
+      assertFalse(sha256.equalsPlain(input + "x"));
+
+      for (int iterations : new int[] { 1, 2, 1000 }) {
+        final SecureHashAlgorithm pbkdf2   = SecureHashAlgorithm.pbkdf2(iterations, salt);
+        final SecureString        password = new SecureString(input, "UTF-8", -1, pbkdf2);
+        final byte[]              expected = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(new PBEKeySpec(input.toCharArray(), salt, iterations, 256)).getEncoded();
+
+        assertTrue(password.equalsConstantTime(expected));
+        assertTrue(password.equalsPlain(input));
+        assertTrue(password.equalsPlain(input.toCharArray()));
+        assertFalse(password.equalsPlain(input + "x"));
+        assertFalse(new SecureString(input, "UTF-8", -1, SecureHashAlgorithm.pbkdf2(iterations + 1, salt)).equalsConstantTime(expected));
+      }
+    }
+
+    final SecureHashAlgorithm previous = SecureString.getDefaultHashAlgorithm();
+    final SecureString        sha512   = new SecureString("default");
+
+    try {
+      SecureString.setDefaultHashAlgorithm(SecureHashAlgorithm.SHA_256);
+
+      final SecureString sha256 = new SecureString("default");
+
+      assertEquals(64, sha256.toString().length());
+      assertEquals(128, sha512.toString().length());
+      assertTrue(sha256.equalsPlain("default"));
+      assertTrue(sha512.equalsPlain("default"));
+      assertSame(SecureHashAlgorithm.SHA_512, sha512.getHashAlgorithm());
+      assertNull(new SecureString("plain", false).getHashAlgorithm());
+    } finally {
+      SecureString.setDefaultHashAlgorithm(previous);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Hashing on the hash executor gives the same results as hashing
+   * right away, and a saturated executor fails the future instead of
+   * blocking the caller.
+   */
+  @Test public void testHashAsync() throws Exception {
+    final Charset charset = Charset.forName("UTF-8");
+    final byte[]  salt    = "salt".getBytes("UTF-8");
+
+    for (String input : INPUTS) {
+      final CompletableFuture<SecureString> str   = SecureString.hashAsync(input, charset, -1);
+      final CompletableFuture<SecureString> chars = SecureString.hashAsync(input.toCharArray(), charset, 60000, SecureHashAlgorithm.pbkdf2(10, salt));
+
+      assertEquals(new SecureString(input).toString(), str.get().toString());
+      assertTrue(chars.get().equalsPlain(input));
+      chars.get().destroy();
+    }
+
+    final CountDownLatch     release  = new CountDownLatch(1);
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+    try {
+      SecureString.setHashExecutor(executor);
+
+      executor.execute(new Runnable() {
+        public void run() {
+          try {
+            release.await();
+          } catch (InterruptedException ie) {}
+        }
+      });
+
+      final CompletableFuture<SecureString> rejected = SecureString.hashAsync("busy", charset, -1);
+
+      assertTrue(rejected.isCompletedExceptionally());
+      try {
+        rejected.get();
+        fail();
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RejectedExecutionException);
+      }
+    } finally {
+      release.countDown();
+      SecureString.setHashExecutor(null);
+      executor.shutdown();
+    }
+  }
+
+
+  /**
+   * Some key material which is generated as it is read.
+   */
+  private static class KeyStream extends InputStream {
+    /**
+     * Bytes still to be read.
+     */
+    private long remaining;
+
+
+    /**
+     * Create a stream.
+     *
+     * @param size The number of bytes.
+     */
+    KeyStream(long size) {
+      this.remaining = size;
+    }
+
+
+    /**
+     * Read a byte.
+     *
+     * @return The byte, or -1 at the end.
+     */
+    public int read() throws IOException {
+      if (this.remaining <= 0) {
+        return -1;
+      }
+
+      return (int) (this.remaining-- * 31 & 0xFF);
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringMetrics;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
+
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+
+public class TestSecureStringMetrics {
+  /**
+   * Test
+   *
+   * Unless switched on, nothing is recorded.
+   */
+  @Test public void testDisabled() throws Exception {
+    assumeFalse(SecureStringMetrics.isEnabled());
+
+    final SecureStringMetrics metrics = SecureStringMetrics.getInstance();
+    final SecureString        s       = new SecureString("password", true);
+
+    assertTrue(s.equalsPlain("password"));
+    s.destroy();
+
+    assertEquals(0, metrics.getCreated());
+    assertEquals(0, metrics.getDestroyed());
+    assertEquals(0, metrics.getHashes());
+    assertEquals(0, metrics.getCompares());
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(SecureStringMetrics.OBJECT_NAME)));
+  }
+
+
+  /**
+   * Test
+   *
+   * With -Dcom.sap.securestring.metrics=true, the lifecycle of strings
+   * is counted, and the metrics are visible through JMX.
+   */
+  @Test public void testEnabled() throws Exception {
+    assumeTrue(SecureStringMetrics.isEnabled());
+
+    final SecureStringMetrics metrics   = SecureStringMetrics.getInstance();
+    final long                created   = metrics.getCreated();
+    final long                destroyed = metrics.getDestroyed();
+    final long                expired   = metrics.getExpired();
+    final long                hashes    = metrics.getHashes();
+    final long                compares  = metrics.getCompares();
+
+    final SecureString s = new SecureString("password", true);
+    final SecureString t = new SecureString("token", 50, false);
+
+    assertTrue(s.equalsPlain("password"));
+    assertFalse(s.equalsPlain("wrong"));
+    s.destroy();
+    s.destroy();
+
+    try {
+      Thread.sleep(50 + 1000 /* Some margin */);
+    } catch (InterruptedException ie) {}
+
+    assertTrue(t.isDestroyed());
+
+    assertEquals(created + 2, metrics.getCreated());
+    assertEquals(destroyed + 1, metrics.getDestroyed());
+    assertEquals(expired + 1, metrics.getExpired());
+    assertEquals(hashes + 3, metrics.getHashes());
+    assertEquals(compares + 2, metrics.getCompares());
+    assertTrue(metrics.getCompareMeanNanos() > 0);
+    assertTrue(metrics.getHashP99Nanos() > 0);
+
+    /*
+     * The MBean is registered in the background.
+     */
+    final ObjectName name = new ObjectName(SecureStringMetrics.OBJECT_NAME);
+    for (int i = 0; (i < 100) && !ManagementFactory.getPlatformMBeanServer().isRegistered(name); i++) {
+      Thread.sleep(50);
+    }
+
+    assertEquals(metrics.getCreated(), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Created"));
+  }
+
+
+  /**
+   * Test
+   *
+   * Hash and compare events, once switched on in a recording, carry
+   * the time the work took.
+   */
+  @Test public void testEvents() throws Exception {
+    assumeTrue(SecureStringMetrics.isEnabled());
+
+    final Path file = Files.createTempFile("securestring", ".jfr");
+
+    try {
+      final SecureString s = new SecureString("password", true);
+
+      try (Recording recording = new Recording()) {
+        recording.enable("com.sap.securestring.Hash");
+        recording.enable("com.sap.securestring.Compare");
+        recording.start();
+
+        assertTrue(s.equalsPlain("password"));
+
+        recording.stop();
+        recording.dump(file);
+      }
+
+      final List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+      int                       found  = 0;
+      for (RecordedEvent event : events) {
+        if (event.getEventType().getName().startsWith("com.sap.securestring.")) {
+          assertTrue(event.getLong("time") > 0);
+          found++;
+        }
+      }
+
+      assertEquals(2, found);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
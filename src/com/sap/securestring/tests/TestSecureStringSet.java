@@ -0,0 +1,181 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureHashAlgorithm;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringSet;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+public class TestSecureStringSet {
+  /**
+   * Test
+   *
+   * Secrets can be added, found and removed as Strings, chars or
+   * hashes, also after the tables grew and secrets were removed.
+   */
+  @Test public void testAddContainsRemove() throws Exception {
+    final Charset         charset = Charset.forName("UTF-8");
+    final SecureStringSet set     = new SecureStringSet(SecureHashAlgorithm.SHA_256, charset);
+
+    assertTrue(set.add("key"));
+    assertFalse(set.add("key"));
+    assertTrue(set.add("other".toCharArray()));
+    assertTrue(set.contains("key"));
+    assertTrue(set.contains("other"));
+    assertTrue(set.contains("key".toCharArray()));
+    assertTrue(set.containsDigest(SecureString.digest("key", charset, SecureHashAlgorithm.SHA_256)));
+    assertFalse(set.contains("nope"));
+    assertFalse(set.containsDigest(SecureString.digest("key", charset, SecureHashAlgorithm.SHA_512)));
+    assertEquals(2, set.size());
+
+    for (int i = 0; i < 20000; i++) {
+      assertTrue(set.addDigest(SecureString.digest("k" + i, charset, SecureHashAlgorithm.SHA_256)));
+    }
+
+    for (int i = 0; i < 20000; i += 2) {
+      assertTrue(set.remove("k" + i));
+      assertFalse(set.remove("k" + i));
+    }
+
+    for (int i = 0; i < 20000; i++) {
+      assertEquals(i % 2 == 1, set.contains("k" + i));
+    }
+
+    assertEquals(10002, set.size());
+
+    /*
+     * Removed secrets can be added again.
+     */
+    assertTrue(set.add("k0"));
+    assertTrue(set.contains("k0"));
+
+    set.clear();
+    assertEquals(0, set.size());
+    assertFalse(set.contains("key"));
+
+    try {
+      set.addDigest(new byte[16]);
+      fail();
+    } catch (IllegalArgumentException e) {}
+  }
+
+
+  /**
+   * Test
+   *
+   * Readers find the secrets which stay in the set while writers add
+   * and remove others, and grow the tables.
+   */
+  @Test public void testConcurrent() throws Exception {
+    final SecureStringSet set     = new SecureStringSet();
+    final AtomicBoolean   failed  = new AtomicBoolean();
+    final AtomicBoolean   done    = new AtomicBoolean();
+    final List<Thread>    threads = new ArrayList<Thread>();
+
+    for (int i = 0; i < 1000; i++) {
+      set.add("stays" + i);
+    }
+
+    for (int t = 0; t < 2; t++) {
+      final int n = t;
+      threads.add(new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            set.add("w" + n + "-" + i);
+            if (i % 3 == 0) {
+              set.remove("w" + n + "-" + (i / 2));
+            }
+          }
+
+          done.set(true);
+        }
+      }));
+    }
+
+    for (int t = 0; t < 2; t++) {
+      threads.add(new Thread(new Runnable() {
+        public void run() {
+          while (!done.get()) {
+            for (int i = 0; i < 1000; i += 7) {
+              if (!set.contains("stays" + i) || set.contains("never" + i)) {
+                failed.set(true);
+              }
+            }
+          }
+        }
+      }));
+    }
+
+    for (Thread thread : threads) {
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertFalse(failed.get());
+    assertTrue(set.contains("w0-19999"));
+    assertTrue(set.contains("w1-19999"));
+  }
+
+
+  /**
+   * Test
+   *
+   * A set with a filter never misses a secret it holds, also after
+   * most were removed and the segments were rebuilt; and the filter
+   * tells most of the others.
+   */
+  @Test public void testFilter() throws Exception {
+    final Charset         charset = Charset.forName("UTF-8");
+    final SecureStringSet plain   = new SecureStringSet(SecureHashAlgorithm.SHA_256, charset);
+    final SecureStringSet set     = new SecureStringSet(SecureHashAlgorithm.SHA_256, charset, 10);
+
+    assertEquals(0, plain.getFilterBytes());
+    assertEquals(1, plain.getFilterFalsePositiveRate(), 0);
+
+    for (int i = 0; i < 20000; i++) {
+      assertTrue(set.add("key" + i));
+    }
+
+    for (int i = 0; i < 20000; i++) {
+      assertTrue(set.contains("key" + i));
+    }
+
+    assertTrue(set.getFilterBytes() > 0);
+    assertTrue(set.getFilterFalsePositiveRate() < 0.05);
+
+    for (int i = 0; i < 20000; i++) {
+      if (i % 4 != 0) {
+        assertTrue(set.remove("key" + i));
+      }
+    }
+
+    assertEquals(5000, set.size());
+    for (int i = 0; i < 20000; i++) {
+      assertEquals(i % 4 == 0, set.contains("key" + i));
+    }
+
+    assertTrue(set.getFilterFalsePositiveRate() < 0.05);
+
+    set.clear();
+    assertFalse(set.contains("key0"));
+    assertTrue(set.add("key0"));
+    assertTrue(set.contains("key0"));
+
+    try {
+      new SecureStringSet(SecureHashAlgorithm.SHA_256, charset, -1);
+      fail();
+    } catch (IllegalArgumentException e) {}
+  }
+}
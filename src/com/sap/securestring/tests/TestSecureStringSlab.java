@@ -0,0 +1,223 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringSlab;
+import com.sap.securestring.StorageMode;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+
+public class TestSecureStringSlab {
+  /**
+   * Test
+   *
+   * Secrets survive freeing their neighbours and compaction, and freed
+   * handles are reused.
+   */
+  @Test public void testPutFreeCompact() throws Exception {
+    final SecureStringSlab slab    = new SecureStringSlab();
+    final int              count   = 20000;
+    final long[]           handles = new long[count];
+
+    for (int i = 0; i < count; i++) {
+      handles[i] = slab.put("secret-" + i);
+    }
+
+    assertEquals(count, slab.size());
+
+    /*
+     * Free most of them, so that the blocks become sparse.
+     */
+    for (int i = 0; i < count; i++) {
+      if (i % 5 != 0) {
+        slab.free(handles[i]);
+      }
+    }
+
+    slab.compact();
+
+    for (int i = 0; i < count; i++) {
+      assertEquals(i % 5 == 0, slab.equals(handles[i], "secret-" + i));
+      assertEquals(i % 5 == 0, slab.equals(handles[i], ("secret-" + i).toCharArray()));
+      assertEquals((i % 5 == 0) ? "secret-" + i : "", slab.toString(handles[i]));
+    }
+
+    assertEquals(count / 5, slab.size());
+
+    final long reused = slab.put("again");
+    assertTrue((int) reused < count);
+    assertEquals("again", slab.toString(reused));
+
+    /*
+     * Large secrets get a block of their own.
+     */
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+
+    final long large = slab.put(sb);
+    assertTrue(slab.equals(large, sb.toString()));
+    slab.free(large);
+    assertEquals(0, slab.length(large));
+  }
+
+
+  /**
+   * Test
+   *
+   * A stale handle does not reach the secret which took over its slot.
+   */
+  @Test public void testStaleHandle() throws Exception {
+    final SecureStringSlab slab  = new SecureStringSlab();
+    final long             stale = slab.put("first");
+
+    slab.free(stale);
+
+    final long fresh = slab.put("second");
+    assertEquals((int) stale, (int) fresh);
+    assertNotEquals(stale, fresh);
+
+    assertEquals(0, slab.length(stale));
+    assertEquals('\0', slab.charAt(stale, 0));
+    assertFalse(slab.equals(stale, "second"));
+    assertFalse(slab.equals(stale, "second".toCharArray()));
+    assertEquals("", slab.toString(stale));
+
+    final char[] chars = { 'x' };
+    slab.getChars(stale, chars, 1);
+    assertEquals('\0', chars[0]);
+
+    slab.free(stale);
+    assertEquals("second", slab.toString(fresh));
+    assertEquals(1, slab.size());
+  }
+
+
+  /**
+   * Test
+   *
+   * Expired secrets are wiped in bulk.
+   */
+  @Test public void testExpire() throws Exception {
+    final SecureStringSlab slab   = new SecureStringSlab();
+    final long             short1 = slab.put("short", 50);
+    final long             long1  = slab.put("long", 60000);
+    final long             never  = slab.put("never");
+
+    Thread.sleep(100);
+
+    assertEquals(1, slab.expire());
+    assertFalse(slab.equals(short1, "short"));
+    assertTrue(slab.equals(long1, "long"));
+    assertTrue(slab.equals(never, "never"));
+  }
+
+
+  /**
+   * Test
+   *
+   * Expiry goes by deadline, in steps, and skips secrets freed before;
+   * compaction still finds every secret of a block.
+   */
+  @Test public void testExpireMany() throws Exception {
+    final SecureStringSlab slab    = new SecureStringSlab();
+    final int              count   = 5000;
+    final long[]           handles = new long[count];
+
+    for (int i = 0; i < count; i++) {
+      handles[i] = slab.put("secret-" + i, (i % 2 == 0) ? (i % 7) * 10 : 60000);
+    }
+
+    for (int i = 0; i < count; i += 3) {
+      slab.free(handles[i]);
+    }
+
+    Thread.sleep(150);
+
+    int expected = 0;
+    for (int i = 0; i < count; i++) {
+      if ((i % 2 == 0) && (i % 3 != 0)) {
+        expected++;
+      }
+    }
+
+    assertEquals(expected, slab.expire());
+    assertEquals(0, slab.expire());
+
+    slab.compact();
+
+    for (int i = 0; i < count; i++) {
+      assertEquals((i % 2 != 0) && (i % 3 != 0), slab.equals(handles[i], "secret-" + i));
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Expired secrets are wiped in the background, and their slots, as
+   * well as those freed before their deadline, are reused once their
+   * block is compacted.
+   */
+  @Test public void testExpireInBackground() throws Exception {
+    final SecureStringSlab slab    = new SecureStringSlab();
+    final long             expired = slab.put("expired", 50);
+    final long             freed   = slab.put("freed", 50);
+    final long             never   = slab.put("never");
+
+    slab.free(freed);
+    assertEquals(2, slab.size());
+
+    Thread.sleep(1000 + 500 /* Some margin */);
+
+    assertEquals(1, slab.size());
+    assertFalse(slab.equals(expired, "expired"));
+    assertTrue(slab.equals(never, "never"));
+    assertEquals(0, slab.expire());
+
+    /*
+     * Their slots come back once their block is no longer the current
+     * one, and is compacted.
+     */
+    final char[] filler = new char[(1 << 15) - 1];
+    slab.put(new String(filler));
+    slab.compact();
+
+    final long reused = slab.put("reused");
+    assertTrue(((int) reused == (int) expired) || ((int) reused == (int) freed));
+    assertEquals("reused", slab.toString(reused));
+    assertEquals("", slab.toString(expired));
+    assertEquals("", slab.toString(freed));
+  }
+
+
+  /**
+   * Test
+   *
+   * Plain SecureStrings can live in the default slab.
+   */
+  @Test public void testSlabStorage() throws Exception {
+    final StorageMode previous = SecureString.getDefaultStorageMode();
+
+    try {
+      SecureString.setDefaultStorageMode(StorageMode.SLAB);
+
+      final int          before = SecureStringSlab.getDefault().size();
+      final SecureString s      = new SecureString("in the slab", false);
+
+      assertEquals(before + 1, SecureStringSlab.getDefault().size());
+      assertEquals("in the slab", s.toString());
+      assertTrue(s.equals("in the slab"));
+
+      s.destroy();
+
+      assertEquals(before, SecureStringSlab.getDefault().size());
+      assertFalse(s.equals("in the slab"));
+    } finally {
+      SecureString.setDefaultStorageMode(previous);
+    }
+  }
+}
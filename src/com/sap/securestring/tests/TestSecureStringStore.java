@@ -0,0 +1,171 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.SecureString;
+import com.sap.securestring.SecureStringStore;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+
+public class TestSecureStringStore {
+  /**
+   * Write a secrets file.
+   *
+   * @param file The file.
+   * @param content The content.
+   * @param time The modification time to set, in milliseconds.
+   */
+  private static void write(Path file, String content, long time) throws Exception {
+    Files.write(file, content.getBytes("UTF-8"));
+    Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+  }
+
+
+  /**
+   * Test
+   *
+   * Records are read with comments, blank lines and CRLF line ends, and
+   * values keep their blanks and any further = signs.
+   */
+  @Test public void testLoad() throws Exception {
+    final Path file = Files.createTempFile("securestring", ".secrets");
+
+    try {
+      write(file, "# Credentials\n\ndb = s3cret\r\napi=key=with=equals\nspaced=  two blanks \nnoeq\numlaut=Gr\u00fc\u00dfe", 1000000);
+
+      final SecureStringStore hashed = SecureStringStore.load(file);
+      final SecureStringStore plain  = SecureStringStore.load(file, Charset.forName("UTF-8"), false);
+
+      assertEquals(4, hashed.size());
+      assertEquals(4, plain.size());
+
+      final String[][] expected = { { "db", " s3cret" }, { "api", "key=with=equals" }, { "spaced", "  two blanks " }, { "umlaut", "Gr\u00fc\u00dfe" } };
+      for (String[] record : expected) {
+        assertEquals(new SecureString(record[1]).toString(), hashed.get(record[0]).toString());
+        assertTrue(plain.get(record[0]).equals(record[1]));
+      }
+
+      assertNull(hashed.get("noeq"));
+
+      hashed.destroy();
+      plain.destroy();
+      assertEquals(0, plain.size());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * On reload, only added, changed and removed records are touched; the
+   * strings of changed and removed ones are destroyed.
+   */
+  @Test public void testReload() throws Exception {
+    final Path file = Files.createTempFile("securestring", ".secrets");
+
+    try {
+      write(file, "a=1\nb=2\nc=3\n", 1000000);
+
+      final SecureStringStore store = SecureStringStore.load(file, Charset.forName("UTF-8"), false);
+      final SecureString      a     = store.get("a");
+      final SecureString      b     = store.get("b");
+      final SecureString      c     = store.get("c");
+
+      assertEquals(0, store.reload());
+
+      write(file, "a=1\nb=22\nd=4\n", 2000000);
+
+      assertEquals(3, store.reload());
+      assertSame(a, store.get("a"));
+      assertTrue(store.get("b").equals("22"));
+      assertTrue(store.get("d").equals("4"));
+      assertNull(store.get("c"));
+      assertTrue(b.isDestroyed());
+      assertTrue(c.isDestroyed());
+      assertFalse(a.isDestroyed());
+
+      store.destroy();
+      assertTrue(a.isDestroyed());
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A rewrite which keeps the size and the modification time of the
+   * file is still found.
+   */
+  @Test public void testReloadSameSizeAndTime() throws Exception {
+    final Path file = Files.createTempFile("securestring", ".secrets");
+
+    try {
+      write(file, "a=1\nb=2\n", 1000000);
+
+      final SecureStringStore plain  = SecureStringStore.load(file, Charset.forName("UTF-8"), false);
+      final SecureStringStore hashed = SecureStringStore.load(file, Charset.forName("UTF-8"), true);
+      final SecureString      b      = plain.get("b");
+
+      write(file, "a=1\nb=3\n", 1000000);
+
+      assertEquals(1, plain.reload());
+      assertEquals(1, hashed.reload());
+      assertTrue(plain.get("b").equals("3"));
+      assertEquals(new SecureString("3").toString(), hashed.get("b").toString());
+      assertTrue(b.isDestroyed());
+
+      assertEquals(0, plain.reload());
+      assertEquals(0, hashed.reload());
+
+      plain.destroy();
+      hashed.destroy();
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * A hashed store tells changed records by their strings alone; the
+   * strings of changed ones are destroyed.
+   */
+  @Test public void testReloadHashed() throws Exception {
+    final Path file = Files.createTempFile("securestring", ".secrets");
+
+    try {
+      write(file, "a=1\nb=2\n", 1000000);
+
+      final SecureStringStore store = SecureStringStore.load(file, Charset.forName("UTF-8"), true);
+      final SecureString      a     = store.get("a");
+      final SecureString      b     = store.get("b");
+
+      assertEquals(0, store.reload());
+
+      write(file, "a=1\nb=22\n", 2000000);
+
+      assertEquals(1, store.reload());
+      assertSame(a, store.get("a"));
+      assertEquals(new SecureString("22").toString(), store.get("b").toString());
+      assertTrue(b.isDestroyed());
+      assertFalse(a.isDestroyed());
+
+      store.destroy();
+      assertTrue(a.isDestroyed());
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
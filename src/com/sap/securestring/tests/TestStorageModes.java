@@ -0,0 +1,237 @@
+package com.sap.securestring.tests;
+
+import com.sap.securestring.ByteBufferConsumer;
+import com.sap.securestring.CharConsumer;
+import com.sap.securestring.SecureString;
+import com.sap.securestring.StorageMode;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+public class TestStorageModes {
+  /**
+   * Test
+   *
+   * Plain strings behave the same whatever storage they use.
+   */
+  @Test public void testOffHeap() throws Exception {
+    final StorageMode previous = SecureString.getDefaultStorageMode();
+
+    try {
+      SecureString.setDefaultStorageMode(StorageMode.OFF_HEAP);
+
+      for (String value : new String[] { "", "x", "password", "Gr\u00fc\u00dfe \ud83d\udd12" }) {
+        final SecureString s = new SecureString(value, false);
+
+        assertEquals(value, s.toString());
+        assertTrue(s.equals(value));
+        assertFalse(s.equals(value + "x"));
+
+        s.destroy();
+
+        assertEquals("", s.toString());
+        assertFalse(s.equals(value));
+      }
+    } finally {
+      SecureString.setDefaultStorageMode(previous);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * Encrypted strings behave the same as plain ones, with and without
+   * the decrypted cache; also while the cache comes and goes under
+   * readers on several threads.
+   */
+  @Test public void testEncrypted() throws Exception {
+    final long previous = SecureString.getEncryptedCacheTime();
+
+    try {
+      for (long cache : new long[] { 0, 1, 60000 }) {
+        SecureString.setEncryptedCacheTime(cache);
+        assertEquals(cache, SecureString.getEncryptedCacheTime());
+
+        for (String value : new String[] { "", "x", "password", "Gr\u00fc\u00dfe \ud83d\udd12" }) {
+          final SecureString s = SecureString.builder().hashed(false).storageMode(StorageMode.ENCRYPTED).build(value);
+
+          for (int i = 0; i < 3; i++) {
+            assertEquals(value, s.toString());
+            assertTrue(s.equals(value));
+            assertTrue(s.equalsConstantTime(value.toCharArray()));
+            assertFalse(s.equals(value + "x"));
+            assertFalse(s.equalsConstantTime((value + "x").toCharArray()));
+          }
+
+          s.destroy();
+
+          assertEquals("", s.toString());
+          assertFalse(s.equals(value));
+        }
+      }
+
+      SecureString.setEncryptedCacheTime(1);
+
+      final SecureString  s       = SecureString.builder().hashed(false).storageMode(StorageMode.ENCRYPTED).build("token");
+      final AtomicBoolean failed  = new AtomicBoolean();
+      final long          end     = System.nanoTime() + 500000000L;
+      final Thread[]      threads = new Thread[3];
+
+      for (int t = 0; t < threads.length; t++) {
+        threads[t] = new Thread(new Runnable() {
+          public void run() {
+            while (System.nanoTime() < end) {
+              if (!s.equals("token") || s.equals("tokem") || !"token".equals(s.toString())) {
+                failed.set(true);
+              }
+            }
+          }
+        });
+        threads[t].start();
+      }
+
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertFalse(failed.get());
+    } finally {
+      SecureString.setEncryptedCacheTime(previous);
+    }
+  }
+
+
+  /**
+   * Test
+   *
+   * withChars and withBytes lend the content of plain strings in every
+   * storage, and the hash of hashed ones, through read-only views which
+   * are empty once the consumer returns, even after the next borrow;
+   * and they allocate nothing but the views.
+   */
+  @Test public void testBorrow() throws Exception {
+    final String         value = "Gr\u00fc\u00dfe \ud83d\udd12";
+    final CharBuffer[]   chars = new CharBuffer[1];
+    final ByteBuffer[]   bytes = new ByteBuffer[1];
+    final StringBuilder  seen  = new StringBuilder();
+    final byte[][]       read  = new byte[1][];
+
+    final CharConsumer<RuntimeException> charConsumer = new CharConsumer<RuntimeException>() {
+      public void accept(CharBuffer c) {
+        chars[0] = c;
+        seen.setLength(0);
+        seen.append(c);
+
+        try {
+          c.put(0, 'x');
+          fail();
+        } catch (ReadOnlyBufferException e) {}
+      }
+    };
+
+    final ByteBufferConsumer<RuntimeException> byteConsumer = new ByteBufferConsumer<RuntimeException>() {
+      public void accept(ByteBuffer b) {
+        bytes[0] = b;
+        read[0]  = new byte[b.remaining()];
+        b.duplicate().get(read[0]);
+      }
+    };
+
+    for (StorageMode mode : StorageMode.values()) {
+      final SecureString s = SecureString.builder().hashed(false).storageMode(mode).build(value);
+
+      assertTrue(s.withChars(charConsumer));
+      assertEquals(value, seen.toString());
+      assertEquals(0, chars[0].remaining());
+
+      assertTrue(s.withBytes(byteConsumer));
+      assertTrue(Arrays.equals(value.getBytes(StandardCharsets.UTF_8), read[0]));
+      assertEquals(0, bytes[0].remaining());
+
+      s.destroy();
+
+      seen.setLength(0);
+      assertFalse(s.withChars(charConsumer));
+      assertFalse(s.withBytes(byteConsumer));
+      assertEquals(0, seen.length());
+    }
+
+    final SecureString hashed = new SecureString(value);
+
+    assertTrue(hashed.withChars(charConsumer));
+    assertEquals(hashed.toString(), seen.toString());
+    assertTrue(hashed.withBytes(byteConsumer));
+    assertTrue(Arrays.equals(SecureString.digest(value, StandardCharsets.UTF_8, hashed.getHashAlgorithm()), read[0]));
+
+    final CharConsumer<RuntimeException> nothing = new CharConsumer<RuntimeException>() {
+      public void accept(CharBuffer c) {}
+    };
+
+    final ByteBufferConsumer<RuntimeException> nothingBytes = new ByteBufferConsumer<RuntimeException>() {
+      public void accept(ByteBuffer b) {}
+    };
+
+    /*
+     * A borrow within another one, on the same thread.
+     */
+    final SecureString outer = new SecureString("outer", false);
+    final SecureString inner = new SecureString("inner", false);
+    assertTrue(outer.withChars(new CharConsumer<RuntimeException>() {
+      public void accept(CharBuffer c) {
+        assertTrue(inner.withChars(charConsumer));
+        assertEquals("outer", c.toString());
+      }
+    }));
+    assertEquals("inner", seen.toString());
+
+    /*
+     * A view kept past the borrow does not show the next one.
+     */
+    final SecureString first  = new SecureString("first", false);
+    final SecureString second = new SecureString("second", false);
+    assertTrue(first.withChars(charConsumer));
+    final CharBuffer kept = chars[0];
+    assertTrue(second.withChars(nothing));
+    assertEquals(0, kept.remaining());
+    assertEquals("", kept.toString());
+
+    assertTrue(first.withBytes(byteConsumer));
+    final ByteBuffer keptBytes = bytes[0];
+    assertTrue(second.withBytes(nothingBytes));
+    assertEquals(0, keptBytes.remaining());
+
+    final SecureString                    p       = new SecureString("password", false);
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+    final long                            id      = Thread.currentThread().getId();
+    final int                             count   = 10000;
+
+    for (int i = 0; i < count; i++) {
+      p.withChars(nothing);
+      p.withBytes(nothingBytes);
+    }
+
+    final long before = threads.getThreadAllocatedBytes(id);
+    for (int i = 0; i < count; i++) {
+      assertTrue(p.withChars(nothing));
+      assertTrue(p.withBytes(nothingBytes));
+    }
+
+    /*
+     * Nothing but the views.
+     */
+    assertTrue(threads.getThreadAllocatedBytes(id) - before < 2 * 128 * count);
+  }
+}